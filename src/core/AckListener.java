@@ -0,0 +1,23 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+/**
+ * Interface for classes that want to be informed about acknowledgements
+ * (IDs of delivered messages) that routers send to each other. Message
+ * listeners that implement this interface are informed by the routers.
+ */
+public interface AckListener {
+
+	/**
+	 * Method is called when a host sends acknowledgements to another host
+	 * @param from Host that sent the acknowledgements
+	 * @param to Host that received the acknowledgements
+	 * @param nrofAcks Number of acknowledgements sent
+	 * @param bytes Number of bytes the acknowledgements took
+	 */
+	public void acksTransferred(DTNHost from, DTNHost to, int nrofAcks,
+			int bytes);
+}
@@ -12,6 +12,8 @@ import routing.MessageRouter;
 public class CBRConnection extends Connection {
 	private int speed;
 	private double transferDoneTime;
+	/** sim time when the control data sent so far is transferred */
+	private double controlDoneTime;
 
 	/**
 	 * Creates a new connection between nodes and sets the connection
@@ -28,7 +30,7 @@ public class CBRConnection extends Connection {
 		super(fromNode, fromInterface, toNode, toInterface);
 		this.speed = connectionSpeed;
 		this.transferDoneTime = 0;
-
+		this.controlDoneTime = 0;
 	}
 
 	/**
@@ -54,8 +56,8 @@ public class CBRConnection extends Connection {
 
 		if (retVal == MessageRouter.RCV_OK) {
 			this.msgOnFly = newMessage;
-			this.transferDoneTime = SimClock.getTime() +
-			(1.0*m.getSize()) / this.speed;
+			this.transferDoneTime = Math.max(SimClock.getTime(),
+					this.controlDoneTime) + (1.0*m.getSize()) / this.speed;
 		}
 
 		return retVal;
@@ -72,9 +74,22 @@ public class CBRConnection extends Connection {
 		this.transferDoneTime = 0;
 	}
 
+	/**
+	 * Charges control data to the connection. Messages whose transfer is
+	 * started before the control data is sent are transferred after it.
+	 * @param bytes Number of bytes of control data
+	 */
+	@Override
+	public void addControlData(int bytes) {
+		super.addControlData(bytes);
+		this.controlDoneTime = Math.max(SimClock.getTime(),
+				this.controlDoneTime) + (1.0*bytes) / this.speed;
+	}
+
 	/**
 	 * Gets the transferdonetime
 	 */
+	@Override
 	public double getTransferDoneTime() {
 		return transferDoneTime;
 	}
@@ -109,6 +124,8 @@ public class CBRConnection extends Connection {
 
 		remaining = (int)((this.transferDoneTime - SimClock.getTime())
 				* this.speed);
+		/* the message waits while control data is sent */
+		remaining = Math.min(remaining, msgOnFly.getSize());
 
 		return (remaining > 0 ? remaining : 0);
 	}
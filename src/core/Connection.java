@@ -115,6 +115,17 @@ public abstract class Connection {
 	 */
 	public abstract int getRemainingByteCount();
 
+	/**
+	 * Charges control data (e.g., acknowledgements exchanged by the routers)
+	 * to the connection. The bytes are counted in the total bytes
+	 * transferred. Subclasses also delay the following message transfers
+	 * until the control data is sent.
+	 * @param bytes Number of bytes of control data
+	 */
+	public void addControlData(int bytes) {
+		this.bytesTransferred += bytes;
+	}
+
 	/**
 	 * Clears the message that is currently being transferred.
 	 * Calls to {@link #getMessage()} will return null after this.
@@ -141,6 +152,15 @@ public abstract class Connection {
 		clearMsgOnFly();
 	}
 
+	/**
+	 * Returns the sim time when the current message transfer is done if the
+	 * connection can tell it in advance
+	 * @return The time or a negative value if the time is not known
+	 */
+	public double getTransferDoneTime() {
+		return -1;
+	}
+
 	/**
 	 * Returns true if the current message transfer is done
 	 * @return True if the transfer is done, false if not
@@ -5,12 +5,16 @@
 package core;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
+import input.TransferDoneQueue;
 import movement.MovementModel;
 import movement.Path;
 import routing.MessageRouter;
+import routing.util.EnergyModel;
 import routing.util.RoutingInfo;
 
 import static core.Constants.DEBUG;
@@ -32,11 +36,24 @@ public class DTNHost implements Comparable<DTNHost> {
 	private Path path;
 	private double speed;
 	private double nextTimeToMove;
+	private double locationTime; // sim time that the location is for
 	private String name;
 	private List<MessageListener> msgListeners;
 	private List<MovementListener> movListeners;
 	private List<NetworkInterface> net;
 	private ModuleCommunicationBus comBus;
+	/** read-only list of the connections of all the interfaces (null if
+	 * the connections have changed since the list was built) */
+	private List<Connection> connectionView;
+	/** the first connection of the view to each host by host's address */
+	private Connection[] connectionTo;
+	/** the number of connections in the view to each host by address */
+	private int[] nrofConnectionsTo;
+	/** can the radio of the host change its activeness (or range); the
+	 * interfaces and the router don't change after the construction */
+	private boolean staticRadio;
+	/** queue of the transfer completions (null if they're not scheduled) */
+	private TransferDoneQueue transfersDone;
 
 	static {
 		DTNSim.registerForReset(DTNHost.class.getCanonicalName());
@@ -85,6 +102,7 @@ public class DTNHost implements Comparable<DTNHost> {
 
 		this.nextTimeToMove = movement.nextPathAvailable();
 		this.path = null;
+		this.staticRadio = checkStaticRadio();
 
 		if (movLs != null) { // inform movement listeners about the location
 			for (MovementListener l : movLs) {
@@ -175,17 +193,98 @@ public class DTNHost implements Comparable<DTNHost> {
 	}
 
 	/**
-	 * Returns a copy of the list of connections this host has with other hosts
-	 * @return a copy of the list of connections this host has with other hosts
+	 * Returns a read-only list of connections this host has with other hosts.
+	 * The list is not changed when the connections change (a new list is
+	 * returned after that), so it can be iterated while connections are
+	 * created or removed.
+	 * @return a list of connections this host has with other hosts
 	 */
 	public List<Connection> getConnections() {
+		if (this.connectionView == null) {
+			buildConnectionView();
+		}
+		return this.connectionView;
+	}
+
+	/**
+	 * Returns the first connection (in the order of
+	 * {@link #getConnections()}) this host has with another host
+	 * @param other The other host
+	 * @return The connection or null if the hosts are not connected
+	 */
+	public Connection getConnectionTo(DTNHost other) {
+		if (this.connectionView == null) {
+			buildConnectionView();
+		}
+		int address = other.getAddress();
+		return address < connectionTo.length ? connectionTo[address] : null;
+	}
+
+	/**
+	 * Returns the number of connections this host has with another host
+	 * @param other The other host
+	 * @return The number of connections
+	 */
+	public int getNrofConnectionsTo(DTNHost other) {
+		if (this.connectionView == null) {
+			buildConnectionView();
+		}
+		int address = other.getAddress();
+		return address < nrofConnectionsTo.length ?
+				nrofConnectionsTo[address] : 0;
+	}
+
+	/**
+	 * Marks that the connections of the interfaces have changed so that the
+	 * list of connections is built again when it is needed next time
+	 */
+	void connectionsChanged() {
+		if (this.connectionView == null) {
+			return;
+		}
+		/* clear the peer index entries of the old view */
+		for (int i=0, n=connectionView.size(); i<n; i++) {
+			int address = connectionView.get(i).getOtherNode(this).
+				getAddress();
+			connectionTo[address] = null;
+			nrofConnectionsTo[address] = 0;
+		}
+		this.connectionView = null;
+	}
+
+	/**
+	 * Builds the list of connections and the index of the connections by
+	 * the other host
+	 */
+	private void buildConnectionView() {
 		List<Connection> lc = new ArrayList<Connection>();
+		int maxAddress = -1;
 
-		for (NetworkInterface i : net) {
-			lc.addAll(i.getConnections());
+		for (int i=0, n=net.size(); i<n; i++) {
+			lc.addAll(net.get(i).getConnections());
+		}
+		for (int i=0, n=lc.size(); i<n; i++) {
+			maxAddress = Math.max(maxAddress,
+					lc.get(i).getOtherNode(this).getAddress());
+		}
+
+		if (connectionTo == null || maxAddress >= connectionTo.length) {
+			int size = Math.max(maxAddress + 1,
+					connectionTo == null ? 0 : connectionTo.length * 2);
+			connectionTo = (connectionTo == null ? new Connection[size] :
+				Arrays.copyOf(connectionTo, size));
+			nrofConnectionsTo = (nrofConnectionsTo == null ? new int[size] :
+				Arrays.copyOf(nrofConnectionsTo, size));
+		}
+		for (int i=0, n=lc.size(); i<n; i++) {
+			Connection con = lc.get(i);
+			int address = con.getOtherNode(this).getAddress();
+			if (nrofConnectionsTo[address]++ == 0) {
+				connectionTo[address] = con;
+			}
 		}
 
-		return lc;
+		this.connectionView = Collections.unmodifiableList(lc);
 	}
 
 	/**
@@ -206,6 +305,77 @@ public class DTNHost implements Comparable<DTNHost> {
 	}
 
 
+	/**
+	 * Returns the sim time until which this node's location is known in
+	 * advance. Until that time the node either waits for its next path at
+	 * the current location or moves with the velocity returned by
+	 * {@link #getVelocity()} towards its current destination.
+	 * @return The time until the movement is known, or the current time if
+	 * the location after the next move isn't known
+	 */
+	public double getMovementKnownUntil() {
+		double now = SimClock.getTime();
+
+		if (!movement.isPredictable()) {
+			return now;
+		}
+		if (now < this.nextTimeToMove) {
+			return this.nextTimeToMove; /* waiting for the next path */
+		}
+		if (this.destination == null) {
+			return now;
+		}
+
+		double distance = this.location.distance(this.destination);
+		if (distance == 0) {
+			return now; /* next waypoint isn't known yet */
+		}
+		if (this.speed == 0) {
+			return Double.MAX_VALUE;
+		}
+		return this.locationTime + distance / this.speed;
+	}
+
+	/**
+	 * Returns the sim time that the current location is for. Between the
+	 * update intervals (e.g., when external events are processed) the
+	 * location is the one of the previous interval.
+	 * @return The time of the location
+	 */
+	public double getLocationTime() {
+		return this.locationTime;
+	}
+
+	/**
+	 * Sets the sim time that the current location is for
+	 * (see {@link #getLocationTime()})
+	 * @param time The time of the location
+	 */
+	public void setLocationTime(double time) {
+		this.locationTime = time;
+	}
+
+	/**
+	 * Returns the current velocity of the node
+	 * (see {@link #getMovementKnownUntil()})
+	 * @return The distance the node moves in one second along both axes
+	 */
+	public Coord getVelocity() {
+		if (SimClock.getTime() < this.nextTimeToMove ||
+				this.destination == null || this.speed == 0) {
+			return new Coord(0, 0);
+		}
+		double distance = this.location.distance(this.destination);
+		if (distance == 0) {
+			return new Coord(0, 0);
+		}
+		return new Coord(
+				(this.destination.getX() - this.location.getX()) *
+					this.speed / distance,
+				(this.destination.getY() - this.location.getY()) *
+					this.speed / distance);
+	}
+
 	/**
 	 * Sets the Node's location overriding any location set by movement model
 	 * @param location The location to set
@@ -329,6 +499,45 @@ public class DTNHost implements Comparable<DTNHost> {
 		forceConnection(h,null,true);
 	}
 
+	/**
+	 * Prepares the node's network layer for the next update. This is called
+	 * by the World for all nodes (possibly in parallel) before any of them
+	 * is updated and must not change any state that other nodes can see.
+	 * @see NetworkInterface#prepareUpdate(boolean)
+	 */
+	public void prepareUpdate() {
+		for (int i=0, n=net.size(); i<n; i++) {
+			net.get(i).prepareUpdate(this.staticRadio);
+		}
+	}
+
+	/**
+	 * Returns true if the host's radio can't change its activeness (or
+	 * range), i.e., all the interfaces are always active and the host has
+	 * no energy model
+	 * @return true if the host's radio is static
+	 */
+	public boolean hasStaticRadio() {
+		return this.staticRadio;
+	}
+
+	/**
+	 * Checks if the host's radio is static (see {@link #hasStaticRadio()})
+	 * @return true if the host's radio is static
+	 */
+	private boolean checkStaticRadio() {
+		if (this.router.hasEnergyModel() || (comBus != null &&
+				comBus.containsProperty(EnergyModel.ENERGY_VALUE_ID))) {
+			return false;
+		}
+		for (int i=0, n=net.size(); i<n; i++) {
+			if (!net.get(i).isAlwaysActive()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	/**
 	 * Updates node's network layer and router.
 	 * @param simulateConnections Should network layer be updated too
@@ -348,6 +557,30 @@ public class DTNHost implements Comparable<DTNHost> {
 		this.router.update();
 	}
 
+	/**
+	 * Updates the host like {@link #update(boolean)}, but skips the parts
+	 * that can't change anything: the router is updated only if it needs an
+	 * update (see {@link MessageRouter#needsUpdate()}), and if the host's
+	 * radio is static (see {@link #hasStaticRadio()}), the activeness of the
+	 * interfaces is not checked.
+	 * @param simulateConnections Should network layer be updated too
+	 */
+	public void updateIfNeeded(boolean simulateConnections) {
+		if (!this.staticRadio) {
+			update(simulateConnections); // radio may turn off at any time
+			return;
+		}
+
+		if (simulateConnections) {
+			for (int i=0, n=net.size(); i<n; i++) {
+				net.get(i).update();
+			}
+		}
+		if (this.router.needsUpdate()) {
+			this.router.update();
+		}
+	}
+
 	/**
 	 * Tears down all connections for this host.
 	 */
@@ -369,6 +602,25 @@ public class DTNHost implements Comparable<DTNHost> {
 		}
 	}
 
+	/**
+	 * Sets the queue where the completions of the message transfers of
+	 * this host are scheduled
+	 * @param transfersDone The queue or null if the completions are not
+	 * scheduled
+	 */
+	public void setTransferDoneQueue(TransferDoneQueue transfersDone) {
+		this.transfersDone = transfersDone;
+	}
+
+	/**
+	 * Returns the queue where the completions of the message transfers of
+	 * this host are scheduled
+	 * @return The queue or null if the completions are not scheduled
+	 */
+	public TransferDoneQueue getTransferDoneQueue() {
+		return this.transfersDone;
+	}
+
 	/**
 	 * Moves the node towards the next waypoint or waits if it is
 	 * not time to move yet
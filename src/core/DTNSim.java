@@ -5,9 +5,13 @@
 package core;
 import gui.DTNSimGUI;
 
+import java.io.File;
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import ui.DTNSimTextUI;
 
@@ -20,6 +24,13 @@ public class DTNSim {
 	public static final String BATCH_MODE_FLAG = "-b";
 	/** Delimiter for batch mode index range values (colon) */
 	public static final String RANGE_DELIMETER = ":";
+	/** If this option ({@value}) follows the batch mode's number of runs,
+	 * the runs are performed in parallel. The option must be followed by
+	 * the maximum number of concurrent runs. */
+	public static final String PARALLEL_RUNS_FLAG = "-p";
+	/** How often (milliseconds) the parallel runs are checked for the
+	 * ones that have finished */
+	private static final long RUN_POLL_INTERVAL = 100;
 
 	/** Name of the static method that all resettable classes must have
 	 * @see #registerForReset(String) */
@@ -45,6 +56,7 @@ public class DTNSim {
 		String confFiles[];
 		int firstConfIndex = 0;
 		int guiIndex = 0;
+		int nrofParallelRuns = 1;
 
 		/* set US locale to parse decimals in consistent way */
 		java.util.Locale.setDefault(java.util.Locale.US);
@@ -59,6 +71,10 @@ public class DTNSim {
                     nrofRuns = parseNrofRuns(args[1]);
                     firstConfIndex = 2;
                 }
+				if (args.length > 3 && args[2].equals(PARALLEL_RUNS_FLAG)) {
+					nrofParallelRuns = parseNrofParallelRuns(args[3]);
+					firstConfIndex = 4;
+				}
 			}
 			else { /* GUI mode */
 				try { /* is there a run index for the GUI mode ? */
@@ -74,6 +90,21 @@ public class DTNSim {
 			confFiles = new String[] {null};
 		}
 
+		if (batchMode && nrofParallelRuns > 1 &&
+				nrofRuns[1] - nrofRuns[0] > 1) {
+			/* each run gets its own JVM and thus its own static state */
+			long startTime = System.currentTimeMillis();
+			int nrofFailed = runInParallel(nrofRuns, nrofParallelRuns,
+					confFiles, firstConfIndex);
+			double duration = (System.currentTimeMillis() - startTime)/1000.0;
+			print("---\nAll done in " + String.format("%.2f", duration) + "s");
+			if (nrofFailed > 0) {
+				System.err.println(nrofFailed + " run(s) failed");
+				System.exit(-1);
+			}
+			return;
+		}
+
 		initSettings(confFiles, firstConfIndex);
 
 		if (batchMode) {
@@ -93,6 +124,98 @@ public class DTNSim {
 		}
 	}
 
+	/**
+	 * Performs the batch runs in parallel. Every run is performed in a
+	 * separate child JVM that is started with the same JVM options,
+	 * class path and configuration files as this JVM, but with a batch
+	 * run range of only that run. At most the given number of runs are
+	 * executed concurrently.
+	 * @param nrofRuns The first and (last_run_index - 1) to run
+	 * @param nrofParallel Maximum number of concurrent runs
+	 * @param confFiles The command line arguments
+	 * @param firstConfIndex Index of the first config file name
+	 * @return Number of runs that failed
+	 */
+	private static int runInParallel(int[] nrofRuns, int nrofParallel,
+			String[] confFiles, int firstConfIndex) {
+		String java = System.getProperty("java.home") + File.separator +
+			"bin" + File.separator + "java";
+		List<String> jvmArgs =
+			ManagementFactory.getRuntimeMXBean().getInputArguments();
+		LinkedList<Process> running = new LinkedList<Process>();
+		LinkedList<Integer> runIndexes = new LinkedList<Integer>();
+		int nrofFailed = 0;
+
+		for (int i=nrofRuns[0]; i<nrofRuns[1] || !running.isEmpty(); ) {
+			if (i < nrofRuns[1] && running.size() < nrofParallel) {
+				List<String> cmd = new ArrayList<String>();
+				cmd.add(java);
+				cmd.addAll(jvmArgs);
+				cmd.add("-cp");
+				cmd.add(System.getProperty("java.class.path"));
+				cmd.add(DTNSim.class.getName());
+				cmd.add(BATCH_MODE_FLAG);
+				cmd.add((i+1) + RANGE_DELIMETER + (i+1));
+				for (int j=firstConfIndex; j<confFiles.length; j++) {
+					cmd.add(confFiles[j]);
+				}
+
+				print("Run " + (i+1) + "/" + nrofRuns[1] + " started");
+				try {
+					running.add(new ProcessBuilder(cmd).inheritIO().start());
+					runIndexes.add(i);
+				} catch (java.io.IOException e) {
+					System.err.println("Failed to start run " + (i+1) +
+							": " + e.getMessage());
+					nrofFailed++;
+				}
+				i++;
+				continue;
+			}
+
+			/* wait for any run to finish and refill its slot right away */
+			int finished;
+			try {
+				finished = waitForAny(running);
+			} catch (InterruptedException e) {
+				for (Process other : running) {
+					other.destroy();
+				}
+				throw new SimError("Interrupted while waiting for the runs",
+						e);
+			}
+			Process p = running.remove(finished);
+			int runIndex = runIndexes.remove(finished);
+			int exitValue = p.exitValue();
+			if (exitValue != 0) {
+				System.err.println("Run " + (runIndex+1) + " failed with " +
+						"exit value " + exitValue);
+				nrofFailed++;
+			}
+		}
+
+		return nrofFailed;
+	}
+
+	/**
+	 * Waits until any of the given processes has finished
+	 * @param processes The processes (at least one)
+	 * @return Index of a finished process in the list
+	 * @throws InterruptedException if the waiting was interrupted
+	 */
+	private static int waitForAny(List<Process> processes)
+			throws InterruptedException {
+		while (true) {
+			for (int i=0, n=processes.size(); i<n; i++) {
+				if (!processes.get(i).isAlive()) {
+					return i;
+				}
+			}
+			/* the oldest run is the most likely to finish next */
+			processes.get(0).waitFor(RUN_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+		}
+	}
+
 	/**
 	 * Initializes Settings
 	 * @param confFiles File name paths where to read additional settings
@@ -216,6 +339,30 @@ public class DTNSim {
 		return val;
 	}
 
+	/**
+	 * Parses the maximum number of concurrent batch runs from a command
+	 * line argument
+	 * @param arg The argument to parse
+	 * @return The number of concurrent runs
+	 */
+	private static int parseNrofParallelRuns(String arg) {
+		int val = 0;
+		try {
+			val = Integer.parseInt(arg);
+		} catch (NumberFormatException e) {
+			System.err.println("Invalid argument '" + arg + "' for" +
+					" number of parallel runs");
+			System.exit(-1);
+		}
+
+		if (val < 1) {
+			System.err.println("Number of parallel runs must be at least 1");
+			System.exit(-1);
+		}
+
+		return val;
+	}
+
 	/**
 	 * Prints text to stdout
 	 * @param txt Text to print
@@ -5,49 +5,76 @@
 package core;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 /**
  * A message that is created at a node or passed between nodes.
+ * Replicates of a message share the data that is the same for all of them
+ * (the header), the common beginning of their paths and, until either one
+ * changes them, their properties.
+ * <P>Properties that are updated often (e.g. number of copies left) should
+ * be registered as typed slot properties (see
+ * {@link #registerIntProperty(String)}). Their values are kept in small
+ * arrays indexed with the slot instead of the string keyed map, and ints and
+ * doubles aren't boxed. The string keyed methods work for slot properties
+ * too.</P>
  */
 public class Message implements Comparable<Message> {
 	/** Value for infinite TTL of message */
 	public static final int INFINITE_TTL = -1;
-	private DTNHost from;
-	private DTNHost to;
-	/** Identifier of the message */
-	private String id;
-	/** Size of the message (bytes) */
-	private int size;
-	/** List of nodes this message has passed */
-	private List<DTNHost> path;
+	/** The data of the message that is shared by the replicates */
+	private Header header;
+	/** true if the header may be shared with other replicates (and must be
+	 * copied before changing it) */
+	private boolean headerShared;
+	/** Last node of the path of nodes this message has passed */
+	private PathNode path;
 	/** Next unique identifier to be given */
 	private static int nextUniqueId;
 	/** Unique ID of this message */
 	private int uniqueId;
+	/** Handles of the message IDs */
+	private static HashMap<String, Integer> handles;
+	/** Message IDs by their handle */
+	private static List<String> handleIds;
 	/** The time this message was received */
 	private double timeReceived;
-	/** The time when this message was created */
-	private double timeCreated;
-	/** Initial TTL of the message */
-	private int initTtl;
-
-	/** if a response to this message is required, this is the size of the
-	 * response message (or 0 if no response is requested) */
-	private int responseSize;
-	/** if this message is a response message, this is set to the request msg*/
-	private Message requestMsg;
 
 	/** Container for generic message properties. Note that all values
 	 * stored in the properties should be immutable because only a shallow
 	 * copy of the properties is made when replicating messages */
 	private Map<String, Object> properties;
-
-	/** Application ID of the application that created the message */
-	private String	appID;
+	/** true if the properties may be shared with other replicates (and
+	 * must be copied before changing them) */
+	private boolean propertiesShared;
+
+	/** Maximum number of slot properties */
+	public static final int MAX_SLOTS = 64;
+	/** slot property types */
+	private static final int SLOT_INT = 1;
+	private static final int SLOT_DOUBLE = 2;
+	private static final int SLOT_OBJECT = 3;
+	/** slots of the registered properties by their keys */
+	private static HashMap<String, Integer> slotsByKey =
+		new HashMap<String, Integer>();
+	/** types of the registered slot properties */
+	private static int[] slotTypes = new int[MAX_SLOTS];
+	/** number of registered slot properties */
+	private static int nrofSlots = 0;
+
+	/** values of the int and double (as raw long bits) slot properties */
+	private long[] slotValues;
+	/** values of the object slot properties */
+	private Object[] slotObjects;
+	/** bit mask of the slot properties that have a value */
+	private long slotsSet;
+	/** true if the slot arrays may be shared with other replicates (and
+	 * must be copied before changing them) */
+	private boolean slotsShared;
 
 	static {
 		reset();
@@ -63,31 +90,45 @@ public class Message implements Comparable<Message> {
 	 * @param size Size of the message (in bytes)
 	 */
 	public Message(DTNHost from, DTNHost to, String id, int size) {
-		this.from = from;
-		this.to = to;
-		this.id = id;
-		this.size = size;
-		this.path = new ArrayList<DTNHost>();
+		this.header = new Header();
+		this.header.from = from;
+		this.header.to = to;
+		this.header.id = id;
+		this.header.size = size;
+		this.header.handle = handleOf(id);
+		this.header.timeCreated = SimClock.getTime();
+		this.header.initTtl = INFINITE_TTL;
+		this.header.responseSize = 0;
+		this.header.requestMsg = null;
+		this.header.appID = null;
+		this.headerShared = false;
+
+		this.path = null;
 		this.uniqueId = nextUniqueId;
-
-		this.timeCreated = SimClock.getTime();
-		this.timeReceived = this.timeCreated;
-		this.initTtl = INFINITE_TTL;
-		this.responseSize = 0;
-		this.requestMsg = null;
+		this.timeReceived = this.header.timeCreated;
 		this.properties = null;
-		this.appID = null;
 
 		Message.nextUniqueId++;
 		addNodeOnPath(from);
 	}
 
+	/**
+	 * Creates a new replicate of a message
+	 * @param m The message to replicate
+	 */
+	private Message(Message m) {
+		this.uniqueId = nextUniqueId;
+		this.timeReceived = SimClock.getTime();
+		Message.nextUniqueId++;
+		copyFrom(m);
+	}
+
 	/**
 	 * Returns the node this message is originally from
 	 * @return the node this message is originally from
 	 */
 	public DTNHost getFrom() {
-		return this.from;
+		return this.header.from;
 	}
 
 	/**
@@ -95,7 +136,7 @@ public class Message implements Comparable<Message> {
 	 * @return the node this message is originally to
 	 */
 	public DTNHost getTo() {
-		return this.to;
+		return this.header.to;
 	}
 
 	/**
@@ -103,7 +144,7 @@ public class Message implements Comparable<Message> {
 	 * @return The message id
 	 */
 	public String getId() {
-		return this.id;
+		return this.header.id;
 	}
 
 	/**
@@ -115,12 +156,58 @@ public class Message implements Comparable<Message> {
 		return this.uniqueId;
 	}
 
+	/**
+	 * Returns the handle of the message ID. Handles are small integers
+	 * (given in the order the IDs are first seen) that identify the message
+	 * and all its replicates, so they can be used instead of the ID in
+	 * lookups.
+	 * @return The handle
+	 */
+	public int getHandle() {
+		return this.header.handle;
+	}
+
+	/**
+	 * Returns the handle of a message ID. A new handle is given for IDs
+	 * that haven't been seen before.
+	 * @param id The message ID
+	 * @return The handle of the ID
+	 */
+	public static int handleOf(String id) {
+		Integer handle = handles.get(id);
+		if (handle == null) {
+			handle = handleIds.size();
+			handles.put(id, handle);
+			handleIds.add(id);
+		}
+		return handle;
+	}
+
+	/**
+	 * Returns the handle of a message ID without giving new handles
+	 * @param id The message ID
+	 * @return The handle of the ID or -1 if no message has had the ID
+	 */
+	public static int findHandle(String id) {
+		Integer handle = handles.get(id);
+		return handle == null ? -1 : handle;
+	}
+
+	/**
+	 * Returns the message ID of a handle
+	 * @param handle The handle
+	 * @return The message ID of the handle
+	 */
+	public static String idOf(int handle) {
+		return handleIds.get(handle);
+	}
+
 	/**
 	 * Returns the size of the message (in bytes)
 	 * @return the size of the message
 	 */
 	public int getSize() {
-		return this.size;
+		return this.header.size;
 	}
 
 	/**
@@ -128,15 +215,38 @@ public class Message implements Comparable<Message> {
 	 * @param node The node to add
 	 */
 	public void addNodeOnPath(DTNHost node) {
-		this.path.add(node);
+		this.path = new PathNode(node, this.path);
 	}
 
 	/**
-	 * Returns a list of nodes this message has passed so far
-	 * @return The list as vector
+	 * Returns a list of nodes this message has passed so far. The path is
+	 * shared with the replicates of the message, so the list is a new copy
+	 * on every call; use {@link #getHopCount()} and
+	 * {@link #isOnPath(DTNHost)} when the whole list isn't needed.
+	 * @return The list
 	 */
 	public List<DTNHost> getHops() {
-		return this.path;
+		DTNHost[] nodes = new DTNHost[this.path.length];
+		for (PathNode n = this.path; n != null; n = n.previous) {
+			nodes[n.length - 1] = n.node;
+		}
+		List<DTNHost> list = new ArrayList<DTNHost>(nodes.length);
+		Collections.addAll(list, nodes);
+		return list;
+	}
+
+	/**
+	 * Returns true if the message has passed the given node
+	 * @param node The node
+	 * @return true if the node is on the path of the message
+	 */
+	public boolean isOnPath(DTNHost node) {
+		for (PathNode n = this.path; n != null; n = n.previous) {
+			if (n.node == node) {
+				return true;
+			}
+		}
+		return false;
 	}
 
 	/**
@@ -144,7 +254,7 @@ public class Message implements Comparable<Message> {
 	 * @return the amount of hops this message has passed
 	 */
 	public int getHopCount() {
-		return this.path.size() -1;
+		return this.path.length -1;
 	}
 
 	/**
@@ -154,13 +264,24 @@ public class Message implements Comparable<Message> {
 	 * @return The TTL (minutes)
 	 */
 	public int getTtl() {
-		if (this.initTtl == INFINITE_TTL) {
+		if (this.header.initTtl == INFINITE_TTL) {
 			return Integer.MAX_VALUE;
 		}
 		else {
-			return (int)( ((this.initTtl * 60) -
-					(SimClock.getTime()-this.timeCreated)) /60.0 );
+			return (int)( ((this.header.initTtl * 60) -
+					(SimClock.getTime()-this.header.timeCreated)) /60.0 );
+		}
+	}
+
+	/**
+	 * Returns the simulation time when the TTL of the message expires
+	 * @return The expiry time or Double.MAX_VALUE if the TTL is infinite
+	 */
+	public double getExpiryTime() {
+		if (this.header.initTtl == INFINITE_TTL) {
+			return Double.MAX_VALUE;
 		}
+		return this.header.timeCreated + this.header.initTtl * 60;
 	}
 
 
@@ -171,7 +292,7 @@ public class Message implements Comparable<Message> {
 	 * @param ttl The time-to-live to set
 	 */
 	public void setTtl(int ttl) {
-		this.initTtl = ttl;
+		ownHeader().initTtl = ttl;
 	}
 
 	/**
@@ -195,7 +316,7 @@ public class Message implements Comparable<Message> {
 	 * @return the time when this message was created
 	 */
 	public double getCreationTime() {
-		return this.timeCreated;
+		return this.header.timeCreated;
 	}
 
 	/**
@@ -203,7 +324,7 @@ public class Message implements Comparable<Message> {
 	 * @param request The request message
 	 */
 	public void setRequest(Message request) {
-		this.requestMsg = request;
+		ownHeader().requestMsg = request;
 	}
 
 	/**
@@ -212,7 +333,7 @@ public class Message implements Comparable<Message> {
 	 * @return the message this message is response to
 	 */
 	public Message getRequest() {
-		return this.requestMsg;
+		return this.header.requestMsg;
 	}
 
 	/**
@@ -220,7 +341,7 @@ public class Message implements Comparable<Message> {
 	 * @return true if this message is a response message
 	 */
 	public boolean isResponse() {
-		return this.requestMsg != null;
+		return this.header.requestMsg != null;
 	}
 
 	/**
@@ -229,7 +350,7 @@ public class Message implements Comparable<Message> {
 	 * @param size Size of the response message
 	 */
 	public void setResponseSize(int size) {
-		this.responseSize = size;
+		ownHeader().responseSize = size;
 	}
 
 	/**
@@ -238,7 +359,7 @@ public class Message implements Comparable<Message> {
 	 * @return the size of the requested response message
 	 */
 	public int getResponseSize() {
-		return responseSize;
+		return this.header.responseSize;
 	}
 
 	/**
@@ -246,29 +367,46 @@ public class Message implements Comparable<Message> {
 	 * @return a string representation of the message
 	 */
 	public String toString () {
-		return id;
+		return this.header.id;
 	}
 
 	/**
-	 * Deep copies message data from other message. If new fields are
-	 * introduced to this class, most likely they should be copied here too
-	 * (unless done in constructor).
+	 * Copies message data from other message. The header, path and
+	 * properties are shared with the other message and copied only when
+	 * either message changes them. If new fields are introduced to this
+	 * class, most likely they should be copied here too (unless done in
+	 * constructor).
 	 * @param m The message where the data is copied
 	 */
 	protected void copyFrom(Message m) {
-		this.path = new ArrayList<DTNHost>(m.path);
-		this.timeCreated = m.timeCreated;
-		this.responseSize = m.responseSize;
-		this.requestMsg  = m.requestMsg;
-		this.initTtl = m.initTtl;
-		this.appID = m.appID;
+		this.header = m.header;
+		this.headerShared = m.headerShared = true;
+		this.path = m.path;
 
+		this.properties = m.properties;
 		if (m.properties != null) {
-			Set<String> keys = m.properties.keySet();
-			for (String key : keys) {
-				updateProperty(key, m.getProperty(key));
-			}
+			this.propertiesShared = m.propertiesShared = true;
+		}
+
+		this.slotValues = m.slotValues;
+		this.slotObjects = m.slotObjects;
+		this.slotsSet = m.slotsSet;
+		if (m.slotsSet != 0) {
+			this.slotsShared = m.slotsShared = true;
+		}
+	}
+
+	/**
+	 * Returns the header of this message for changing it. If the header is
+	 * shared with other replicates, this message gets a copy of its own.
+	 * @return The header that can be changed
+	 */
+	private Header ownHeader() {
+		if (this.headerShared) {
+			this.header = this.header.copy();
+			this.headerShared = false;
 		}
+		return this.header;
 	}
 
 	/**
@@ -282,7 +420,9 @@ public class Message implements Comparable<Message> {
 	 * @throws SimError if the message already has a value for the given key
 	 */
 	public void addProperty(String key, Object value) throws SimError {
-		if (this.properties != null && this.properties.containsKey(key)) {
+		Integer slot = slotsByKey.get(key);
+		if ((slot != null && hasProperty(slot)) ||
+				(this.properties != null && this.properties.containsKey(key))) {
 			/* check to prevent accidental name space collisions */
 			throw new SimError("Message " + this + " already contains value " +
 					"for a key " + key);
@@ -298,6 +438,21 @@ public class Message implements Comparable<Message> {
 	 * @return The stored object or null if it isn't found
 	 */
 	public Object getProperty(String key) {
+		Integer slot = slotsByKey.get(key);
+		if (slot != null) {
+			if (!hasProperty(slot)) {
+				return null;
+			}
+			switch (slotTypes[slot]) {
+			case SLOT_INT:
+				return getIntProperty(slot);
+			case SLOT_DOUBLE:
+				return getDoubleProperty(slot);
+			default:
+				return getObjectProperty(slot);
+			}
+		}
+
 		if (this.properties == null) {
 			return null;
 		}
@@ -312,23 +467,224 @@ public class Message implements Comparable<Message> {
 	 * @param value The new value to store
 	 */
 	public void updateProperty(String key, Object value) throws SimError {
+		Integer slot = slotsByKey.get(key);
+		if (slot != null) {
+			if (slotTypes[slot] == SLOT_OBJECT) {
+				setObjectProperty(slot, value);
+			} else if (value == null) {
+				clearProperty(slot);
+			} else if (slotTypes[slot] == SLOT_INT) {
+				setIntProperty(slot, ((Number)value).intValue());
+			} else {
+				setDoubleProperty(slot, ((Number)value).doubleValue());
+			}
+			return;
+		}
+
 		if (this.properties == null) {
 			/* lazy creation to prevent performance overhead for classes
 			   that don't use the property feature  */
 			this.properties = new HashMap<String, Object>();
 		}
+		else if (this.propertiesShared) {
+			/* copy on write; the replicates keep the old values */
+			this.properties = new HashMap<String, Object>(this.properties);
+			this.propertiesShared = false;
+		}
 
 		this.properties.put(key, value);
 	}
 
+	/**
+	 * Registers an int valued slot property. Registering the same key again
+	 * returns the same slot. The registrations are not reset between runs.
+	 * @param key The key of the property (as with
+	 * {@link #addProperty(String, Object)})
+	 * @return The slot of the property
+	 * @throws SimError if the key is already registered with other type or
+	 * there are too many slot properties
+	 */
+	public static int registerIntProperty(String key) throws SimError {
+		return registerProperty(key, SLOT_INT);
+	}
+
+	/**
+	 * Registers a double valued slot property.
+	 * @param key The key of the property
+	 * @return The slot of the property
+	 * @throws SimError if the key is already registered with other type or
+	 * there are too many slot properties
+	 * @see #registerIntProperty(String)
+	 */
+	public static int registerDoubleProperty(String key) throws SimError {
+		return registerProperty(key, SLOT_DOUBLE);
+	}
+
+	/**
+	 * Registers an object valued slot property.
+	 * @param key The key of the property
+	 * @return The slot of the property
+	 * @throws SimError if the key is already registered with other type or
+	 * there are too many slot properties
+	 * @see #registerIntProperty(String)
+	 */
+	public static int registerObjectProperty(String key) throws SimError {
+		return registerProperty(key, SLOT_OBJECT);
+	}
+
+	/**
+	 * Registers a slot property of the given type
+	 * @param key The key of the property
+	 * @param type The type of the property
+	 * @return The slot of the property
+	 */
+	private static int registerProperty(String key, int type) {
+		Integer slot = slotsByKey.get(key);
+		if (slot != null) {
+			if (slotTypes[slot] != type) {
+				throw new SimError("Message property " + key + " is " +
+						"already registered with another type");
+			}
+			return slot;
+		}
+		if (nrofSlots == MAX_SLOTS) {
+			throw new SimError("Can't register message property " + key +
+					"; there are already " + MAX_SLOTS + " slot properties");
+		}
+		slotTypes[nrofSlots] = type;
+		slotsByKey.put(key, nrofSlots);
+		return nrofSlots++;
+	}
+
+	/**
+	 * Returns true if the message has a value for a slot property
+	 * @param slot The slot of the property
+	 * @return true if the property has been set
+	 */
+	public boolean hasProperty(int slot) {
+		return (this.slotsSet & (1L << slot)) != 0;
+	}
+
+	/**
+	 * Returns the value of an int slot property
+	 * @param slot The slot of the property
+	 * @return The value or 0 if the property isn't set
+	 */
+	public int getIntProperty(int slot) {
+		assert slotTypes[slot] == SLOT_INT : "Not an int property " + slot;
+		return hasProperty(slot) ? (int)this.slotValues[slot] : 0;
+	}
+
+	/**
+	 * Sets the value of an int slot property
+	 * @param slot The slot of the property
+	 * @param value The new value
+	 */
+	public void setIntProperty(int slot, int value) {
+		assert slotTypes[slot] == SLOT_INT : "Not an int property " + slot;
+		writableSlots(slot, false)[slot] = value;
+		this.slotsSet |= 1L << slot;
+	}
+
+	/**
+	 * Returns the value of a double slot property
+	 * @param slot The slot of the property
+	 * @return The value or 0 if the property isn't set
+	 */
+	public double getDoubleProperty(int slot) {
+		assert slotTypes[slot] == SLOT_DOUBLE : "Not a double property " + slot;
+		return hasProperty(slot) ?
+				Double.longBitsToDouble(this.slotValues[slot]) : 0;
+	}
+
+	/**
+	 * Sets the value of a double slot property
+	 * @param slot The slot of the property
+	 * @param value The new value
+	 */
+	public void setDoubleProperty(int slot, double value) {
+		assert slotTypes[slot] == SLOT_DOUBLE : "Not a double property " + slot;
+		writableSlots(slot, false)[slot] = Double.doubleToRawLongBits(value);
+		this.slotsSet |= 1L << slot;
+	}
+
+	/**
+	 * Returns the value of an object slot property
+	 * @param slot The slot of the property
+	 * @return The value or null if the property isn't set
+	 */
+	public Object getObjectProperty(int slot) {
+		assert slotTypes[slot] == SLOT_OBJECT :
+			"Not an object property " + slot;
+		return hasProperty(slot) ? this.slotObjects[slot] : null;
+	}
+
+	/**
+	 * Sets the value of an object slot property. The value should be
+	 * immutable (see {@link #addProperty(String, Object)}).
+	 * @param slot The slot of the property
+	 * @param value The new value (may be null)
+	 */
+	public void setObjectProperty(int slot, Object value) {
+		assert slotTypes[slot] == SLOT_OBJECT :
+			"Not an object property " + slot;
+		writableSlots(slot, true);
+		this.slotObjects[slot] = value;
+		this.slotsSet |= 1L << slot;
+	}
+
+	/**
+	 * Removes the value of a slot property
+	 * @param slot The slot of the property
+	 */
+	public void clearProperty(int slot) {
+		if (hasProperty(slot)) {
+			writableSlots(slot, slotTypes[slot] == SLOT_OBJECT);
+			if (slotTypes[slot] == SLOT_OBJECT) {
+				this.slotObjects[slot] = null;
+			}
+			this.slotsSet &= ~(1L << slot);
+		}
+	}
+
+	/**
+	 * Makes sure the slot arrays of this message have room for a slot and
+	 * aren't shared with other replicates
+	 * @param slot The slot
+	 * @param objects If true, the object array is needed, if false the
+	 * value array
+	 * @return The value array (null if not needed and not created)
+	 */
+	private long[] writableSlots(int slot, boolean objects) {
+		if (this.slotsShared) {
+			/* copy on write; the replicates keep the old values */
+			if (this.slotValues != null) {
+				this.slotValues = this.slotValues.clone();
+			}
+			if (this.slotObjects != null) {
+				this.slotObjects = this.slotObjects.clone();
+			}
+			this.slotsShared = false;
+		}
+		if (objects) {
+			if (this.slotObjects == null || this.slotObjects.length <= slot) {
+				this.slotObjects = this.slotObjects == null ?
+						new Object[nrofSlots] :
+						Arrays.copyOf(this.slotObjects, nrofSlots);
+			}
+		} else if (this.slotValues == null || this.slotValues.length <= slot) {
+			this.slotValues = this.slotValues == null ? new long[nrofSlots] :
+				Arrays.copyOf(this.slotValues, nrofSlots);
+		}
+		return this.slotValues;
+	}
+
 	/**
 	 * Returns a replicate of this message (identical except for the unique id)
 	 * @return A replicate of the message
 	 */
 	public Message replicate() {
-		Message m = new Message(from, to, id, size);
-		m.copyFrom(this);
-		return m;
+		return new Message(this);
 	}
 
 	/**
@@ -344,20 +700,84 @@ public class Message implements Comparable<Message> {
 	 */
 	public static void reset() {
 		nextUniqueId = 0;
+		handles = new HashMap<String, Integer>();
+		handleIds = new ArrayList<String>();
 	}
 
 	/**
 	 * @return the appID
 	 */
 	public String getAppID() {
-		return appID;
+		return this.header.appID;
 	}
 
 	/**
 	 * @param appID the appID to set
 	 */
 	public void setAppID(String appID) {
-		this.appID = appID;
+		ownHeader().appID = appID;
+	}
+
+	/**
+	 * The data of a message that is the same for all its replicates
+	 */
+	private static class Header {
+		private DTNHost from;
+		private DTNHost to;
+		/** Identifier of the message */
+		private String id;
+		/** Size of the message (bytes) */
+		private int size;
+		/** Handle of the ID of the message */
+		private int handle;
+		/** The time when the message was created */
+		private double timeCreated;
+		/** Initial TTL of the message */
+		private int initTtl;
+		/** if a response to the message is required, this is the size of
+		 * the response message (or 0 if no response is requested) */
+		private int responseSize;
+		/** if the message is a response message, this is set to the
+		 * request msg */
+		private Message requestMsg;
+		/** Application ID of the application that created the message */
+		private String appID;
+
+		/**
+		 * Returns a copy of this header
+		 * @return The copy
+		 */
+		private Header copy() {
+			Header h = new Header();
+			h.from = from;
+			h.to = to;
+			h.id = id;
+			h.size = size;
+			h.handle = handle;
+			h.timeCreated = timeCreated;
+			h.initTtl = initTtl;
+			h.responseSize = responseSize;
+			h.requestMsg = requestMsg;
+			h.appID = appID;
+			return h;
+		}
+	}
+
+	/**
+	 * Node of a message path. Each node points to the previous one so the
+	 * replicates of a message share the beginning of their paths.
+	 */
+	private static class PathNode {
+		private final DTNHost node;
+		private final PathNode previous;
+		/** number of nodes in the path up to (and including) this node */
+		private final int length;
+
+		private PathNode(DTNHost node, PathNode previous) {
+			this.node = node;
+			this.previous = previous;
+			this.length = previous == null ? 1 : previous.length + 1;
+		}
 	}
 
 }
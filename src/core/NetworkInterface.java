@@ -4,11 +4,15 @@
  */
 package core;
 
+import interfaces.CompactConnectivityGrid;
 import interfaces.ConnectivityGrid;
 import interfaces.ConnectivityOptimizer;
+import interfaces.ConnectivityOptimizer.InterfaceVisitor;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 import routing.util.EnergyModel;
@@ -54,6 +58,8 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 
 	protected String interfacetype;
 	protected List<Connection> connections; // connected hosts
+	/** the connections keyed by the interface of the other host */
+	private Map<NetworkInterface, Connection> connectionsByPeer;
 	private List<ConnectionListener> cListeners = null; // list of listeners
 	private int address; // network interface address
 	protected double transmitRange;
@@ -71,6 +77,33 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	/** this interface's activeness jitter value */
 	private int activenessJitterValue;
 
+	/** the connect candidates found in the last preparation, in the order
+	 * the optimizer visits them */
+	private final List<NetworkInterface> preparedCandidates =
+		new ArrayList<NetworkInterface>();
+	/** did the optimizer visit any interfaces in the last preparation */
+	private boolean preparedVisits;
+	/** sim time of the last preparation (or -1 if not prepared) */
+	private double preparedTime = -1;
+
+	/** tries to connect to the visited interfaces */
+	private final InterfaceVisitor nearConnector = new InterfaceVisitor() {
+		public void visit(NetworkInterface ni) {
+			connect(ni);
+		}
+	};
+	/** collects the visited interfaces that connect() may connect to */
+	private final InterfaceVisitor candidateCollector =
+		new InterfaceVisitor() {
+		public void visit(NetworkInterface ni) {
+			preparedVisits = true;
+			if (ni != NetworkInterface.this &&
+					(!ni.getHost().hasStaticRadio() || isWithinRange(ni))) {
+				preparedCandidates.add(ni);
+			}
+		}
+	};
+
 	static {
 		DTNSim.registerForReset(NetworkInterface.class.getCanonicalName());
 		reset();
@@ -89,6 +122,7 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	public NetworkInterface(Settings s) {
 		this.interfacetype = s.getNameSpace();
 		this.connections = new ArrayList<Connection>();
+		this.connectionsByPeer = new HashMap<NetworkInterface, Connection>();
 
 		this.transmitRange = s.getDouble(TRANSMIT_RANGE_S);
 		this.transmitSpeed = s.getInt(TRANSMIT_SPEED_S);
@@ -102,6 +136,7 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	public NetworkInterface() {
 		this.interfacetype = "Default";
 		this.connections = new ArrayList<Connection>();
+		this.connectionsByPeer = new HashMap<NetworkInterface, Connection>();
 	}
 
 	/**
@@ -109,6 +144,7 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	 */
 	public NetworkInterface(NetworkInterface ni) {
 		this.connections = new ArrayList<Connection>();
+		this.connectionsByPeer = new HashMap<NetworkInterface, Connection>();
 		this.host = ni.host;
 		this.cListeners = ni.cListeners;
 		this.interfacetype = ni.interfacetype;
@@ -155,8 +191,14 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		}
 
 		if (transmitRange > 0) {
-			optimizer = ConnectivityGrid.ConnectivityGridFactory(
-					this.interfacetype.hashCode(), transmitRange);
+			if (CompactConnectivityGrid.isEnabled()) {
+				optimizer = CompactConnectivityGrid.
+					CompactConnectivityGridFactory(
+							this.interfacetype.hashCode(), transmitRange);
+			} else {
+				optimizer = ConnectivityGrid.ConnectivityGridFactory(
+						this.interfacetype.hashCode(), transmitRange);
+			}
 			optimizer.addInterface(this);
 		} else {
 			optimizer = null;
@@ -256,6 +298,24 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		return active;
 	}
 
+	/**
+	 * Returns true if this interface is active all the time, i.e., there
+	 * are no active times or periods defined for it
+	 * @return true if the interface is always active
+	 */
+	public boolean isAlwaysActive() {
+		return ah == null || ah.isAlwaysActive();
+	}
+
+	/**
+	 * Returns true if this interface scans all the time, i.e., its scanning
+	 * interval is 0
+	 * @return true if the interface is always scanning
+	 */
+	public boolean isAlwaysScanning() {
+		return this.scanInterval == 0;
+	}
+
 	/**
 	 * Checks if this interface is currently in the scanning mode
 	 * @return True if the interface is scanning; false if not
@@ -317,10 +377,15 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	 */
 	protected void connect(Connection con, NetworkInterface anotherInterface) {
 		this.connections.add(con);
+		this.connectionsByPeer.put(anotherInterface, con);
 		notifyConnectionListeners(CON_UP, anotherInterface.getHost());
 
 		// set up bidirectional connection
 		anotherInterface.getConnections().add(con);
+		anotherInterface.connectionsByPeer.put(this, con);
+		connectivityChanged(anotherInterface);
+		this.host.connectionsChanged();
+		anotherInterface.getHost().connectionsChanged();
 
 		// inform routers about the connection
 		this.host.connectionUp(con);
@@ -342,6 +407,12 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 			throw new SimError("No connection " + con + " found in " +
 					anotherInterface);
 		}
+		/* the caller removes the connection from this interface's list
+		 * (with removeConnection(int)) */
+		this.connectionsByPeer.remove(anotherInterface);
+		anotherInterface.connectionsByPeer.remove(this);
+		connectivityChanged(anotherInterface);
+		anotherInterface.getHost().connectionsChanged();
 
 		this.host.connectionDown(con);
 		anotherInterface.getHost().connectionDown(con);
@@ -364,19 +435,27 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 				anotherInterface.getHost().getLocation()) <= smallerRange;
 	}
 
+	/**
+	 * Informs the optimizers of this and another interface that a
+	 * connection between them has come up or gone down
+	 * @param anotherInterface The interface on the other end
+	 */
+	private void connectivityChanged(NetworkInterface anotherInterface) {
+		if (this.optimizer != null) {
+			this.optimizer.connectivityChanged(this);
+		}
+		if (anotherInterface.optimizer != null) {
+			anotherInterface.optimizer.connectivityChanged(anotherInterface);
+		}
+	}
+
 	/**
 	 * Returns true if the given NetworkInterface is connected to this host.
 	 * @param netinterface The other NetworkInterface to check
 	 * @return True if the two hosts are connected
 	 */
 	protected boolean isConnected(NetworkInterface netinterface) {
-		for (int i = 0; i < this.connections.size(); i++) {
-			if (this.connections.get(i).getOtherInterface(this) ==
-				netinterface) {
-				return true;
-			}
-		}
-		return false;
+		return this.connectionsByPeer.containsKey(netinterface);
 	}
 
 	/**
@@ -392,6 +471,57 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		}
 	}
 
+	/**
+	 * Prepares the interface for the next {@link #update()} call. Goes
+	 * through the connect candidates of the optimizer and keeps the ones
+	 * that are within range, or whose range can change during the update
+	 * round, so that {@link #connectNearInterfaces()} can later try to
+	 * connect only to them. This method only reads shared state and can be
+	 * called for different interfaces in parallel. The optimizer's
+	 * candidates must not change during the update round (see
+	 * {@link CompactConnectivityGrid}).
+	 * @param staticRadio True if the radio of the host can't change its
+	 * activeness (or range) during the update round
+	 */
+	public void prepareUpdate(boolean staticRadio) {
+		this.preparedTime = -1;
+		this.preparedCandidates.clear();
+		this.preparedVisits = false;
+
+		if (optimizer == null || !staticRadio) {
+			return; /* the range checks must be done in the update */
+		}
+
+		optimizer.visitConnectCandidates(this, candidateCollector);
+		this.preparedTime = SimClock.getTime();
+	}
+
+	/**
+	 * Tries to connect to all interfaces the optimizer finds near this
+	 * interface (except to those that the optimizer knows to be checked by
+	 * the other interface). If the interface was prepared for this update
+	 * round, only the prepared candidates are tried. Skipping the others
+	 * doesn't change anything: their range check would fail and checking
+	 * the activeness of their static radios has no side effects.
+	 * @see #connect(NetworkInterface)
+	 * @see #prepareUpdate(boolean)
+	 */
+	protected void connectNearInterfaces() {
+		if (this.preparedTime != SimClock.getTime()) {
+			optimizer.visitConnectCandidates(this, nearConnector);
+			return;
+		}
+
+		if (this.preparedVisits) {
+			/* connect() checks scanning first, and the check starts a new
+			 * scan round when it's time for one */
+			isScanning();
+		}
+		for (int i=0, n=this.preparedCandidates.size(); i<n; i++) {
+			connect(this.preparedCandidates.get(i));
+		}
+	}
+
 	/**
 	 * Updates the state of current connections (ie tears down connections
 	 * that are out of range, recalculates transmission speeds etc.).
@@ -483,11 +613,26 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 			throw new SimError("No connection " + con + " found in " +
 					anotherNode);
 		}
+		this.connectionsByPeer.remove(anotherInterface);
+		anotherInterface.connectionsByPeer.remove(this);
+		connectivityChanged(anotherInterface);
+		anotherNode.connectionsChanged();
 
 		this.host.connectionDown(con);
 		anotherNode.connectionDown(con);
 
-		connections.remove(index);
+		removeConnection(index);
+	}
+
+	/**
+	 * Removes a connection from the connections list of this interface.
+	 * Used for connections that were disconnected with
+	 * {@link #disconnect(Connection, NetworkInterface)}.
+	 * @param index The list index of the connection to be removed
+	 */
+	protected void removeConnection(int index) {
+		this.connections.remove(index);
+		this.host.connectionsChanged();
 	}
 
 	/**
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import java.util.List;
+
+import routing.MessageRouter;
+
+/**
+ * A connection whose transfers share the bandwidth of the interfaces with
+ * the other transfers of the same interfaces. Every transfer of an
+ * interface gets an equal share of the interface's transmit speed, and the
+ * speed of the transfer is the smaller share of the two ends. When a
+ * transfer starts, finishes or is aborted, the bytes sent so far by all the
+ * transfers of the two interfaces are added with their old speeds, and
+ * then the speeds of all of them are recalculated.
+ */
+public class SharedBandwidthConnection extends Connection {
+	private int msgsize;
+	/** bytes of the message sent so far */
+	private double msgsent;
+	private double currentspeed;
+	private double lastUpdate;
+	/** bytes of control data that are still to be sent */
+	private double controlLeft;
+
+	/**
+	 * Creates a new connection between nodes and sets the connection
+	 * state to "up".
+	 * @param fromNode The node that initiated the connection
+	 * @param fromInterface The interface that initiated the connection
+	 * @param toNode The node in the other side of the connection
+	 * @param toInterface The interface in the other side of the connection
+	 */
+	public SharedBandwidthConnection(DTNHost fromNode,
+			NetworkInterface fromInterface, DTNHost toNode,
+			NetworkInterface toInterface) {
+		super(fromNode, fromInterface, toNode, toInterface);
+		this.msgsent = 0;
+		this.lastUpdate = SimClock.getTime();
+		this.currentspeed = calculateSpeed();
+	}
+
+	/**
+	 * Sets a message that this connection is currently transferring. Only
+	 * one message at a time can be transferred using one connection, but
+	 * the other connections of the interfaces can transfer messages at the
+	 * same time.
+	 * @param from The host sending the message
+	 * @param m The message
+	 * @return The value returned by
+	 * {@link MessageRouter#receiveMessage(Message, DTNHost)}
+	 */
+	public int startTransfer(DTNHost from, Message m) {
+		assert this.msgOnFly == null : "Already transferring " +
+			this.msgOnFly + " from " + this.msgFromNode + " to " +
+			this.getOtherNode(this.msgFromNode) + ". Can't "+
+			"start transfer of " + m + " from " + from;
+
+		updateShares(); /* bytes sent so far with the old speeds */
+
+		this.msgFromNode = from;
+		Message newMessage = m.replicate();
+		int retVal = getOtherNode(from).receiveMessage(newMessage, from);
+
+		if (retVal == MessageRouter.RCV_OK) {
+			this.msgOnFly = newMessage;
+			this.msgsize = m.getSize();
+			this.msgsent = 0;
+			updateShares();
+		}
+
+		return retVal;
+	}
+
+	/**
+	 * Adds the bytes sent since the last update with the speed of that
+	 * time and calculates the speed for the next update from the current
+	 * transfers of the interfaces.
+	 */
+	public void update() {
+		double now = SimClock.getTime();
+		double sent = this.currentspeed * (now - this.lastUpdate);
+
+		if (this.controlLeft > 0) { /* control data goes first */
+			double control = Math.min(sent, this.controlLeft);
+			this.controlLeft -= control;
+			sent -= control;
+		}
+		if (this.msgOnFly != null) {
+			this.msgsent += sent;
+		}
+
+		this.lastUpdate = now;
+		this.currentspeed = calculateSpeed();
+	}
+
+	/**
+	 * Updates this connection and all the connections of its interfaces
+	 * (see {@link #update()}). Called before and after the number of
+	 * transfers changes so that the other transfers don't send the time
+	 * before the change with the new speed or the time after it with the
+	 * old speed. This connection is updated separately since it's not in
+	 * the lists of the interfaces anymore if it went down.
+	 */
+	private void updateShares() {
+		update();
+		updateShares(this.fromInterface);
+		updateShares(this.toInterface);
+	}
+
+	/**
+	 * Updates the shared bandwidth connections of an interface
+	 * @param ni The interface
+	 */
+	private void updateShares(NetworkInterface ni) {
+		List<Connection> connections = ni.getConnections();
+		for (int i=0, n=connections.size(); i<n; i++) {
+			Connection con = connections.get(i);
+			if (con instanceof SharedBandwidthConnection) {
+				con.update();
+			}
+		}
+	}
+
+	/**
+	 * Returns the speed of this connection's transfer (or of a transfer
+	 * that would start now) when the interfaces share their speed equally
+	 * between their transfers
+	 * @return The speed (Bps)
+	 */
+	private double calculateSpeed() {
+		double fromSpeed = fromInterface.getTransmitSpeed(toInterface);
+		double toSpeed = toInterface.getTransmitSpeed(fromInterface);
+
+		fromSpeed /= getNrofTransfers(fromInterface);
+		toSpeed /= getNrofTransfers(toInterface);
+
+		return Math.min(fromSpeed, toSpeed);
+	}
+
+	/**
+	 * Returns the number of transfers that an interface has, counting the
+	 * transfer of this connection even if it's not transferring yet
+	 * @param ni The interface
+	 * @return The number of transfers (at least one)
+	 */
+	private int getNrofTransfers(NetworkInterface ni) {
+		List<Connection> connections = ni.getConnections();
+		int nrof = 1;
+
+		for (int i=0, n=connections.size(); i<n; i++) {
+			Connection con = connections.get(i);
+			if (con != this && con.isTransferring()) {
+				nrof++;
+			}
+		}
+		return nrof;
+	}
+
+	/**
+	 * Charges control data to the connection. The control data is sent
+	 * before the (rest of the) message that is being transferred.
+	 * @param bytes Number of bytes of control data
+	 */
+	@Override
+	public void addControlData(int bytes) {
+		super.addControlData(bytes);
+		this.controlLeft += bytes;
+	}
+
+	/**
+	 * Finalizes the transfer of the currently transferred message and gives
+	 * its share of the bandwidth to the other transfers.
+	 */
+	@Override
+	public void finalizeTransfer() {
+		updateShares();
+		super.finalizeTransfer();
+		updateShares();
+	}
+
+	/**
+	 * Aborts the transfer of the currently transferred message and gives
+	 * its share of the bandwidth to the other transfers.
+	 */
+	@Override
+	public void abortTransfer() {
+		updateShares();
+		super.abortTransfer();
+		this.msgsent = 0;
+		updateShares();
+	}
+
+	/**
+	 * returns the current speed of the connection
+	 */
+	public double getSpeed() {
+		return this.currentspeed;
+	}
+
+	/**
+	 * Returns the amount of bytes to be transferred before ongoing transfer
+	 * is ready or 0 if there's no ongoing transfer or it has finished
+	 * already
+	 * @return the amount of bytes to be transferred
+	 */
+	public int getRemainingByteCount() {
+		if (this.msgOnFly == null) {
+			return 0;
+		}
+
+		int bytesLeft = (int)(this.msgsize - this.msgsent);
+		return (bytesLeft > 0 ? bytesLeft : 0);
+	}
+
+	/**
+	 * Returns true if the current message transfer is done.
+	 * @return True if the transfer is done, false if not
+	 */
+	public boolean isMessageTransferred() {
+		return getRemainingByteCount() == 0;
+	}
+
+}
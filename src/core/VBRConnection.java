@@ -15,6 +15,8 @@ public class VBRConnection extends Connection {
 	private int msgsent;
 	private int currentspeed = 0;
 	private double lastUpdate = 0;
+	/** bytes of control data that are still to be sent */
+	private double controlLeft = 0;
 
 
 	/**
@@ -76,10 +78,28 @@ public class VBRConnection extends Connection {
 		}
 
 
-		msgsent += currentspeed * (now - this.lastUpdate);
+		if (controlLeft > 0) { /* control data goes first */
+			double sent = currentspeed * (now - this.lastUpdate);
+			double control = Math.min(sent, controlLeft);
+			controlLeft -= control;
+			msgsent += sent - control;
+		} else {
+			msgsent += currentspeed * (now - this.lastUpdate);
+		}
 		this.lastUpdate = now;
 	}
 
+	/**
+	 * Charges control data to the connection. The control data is sent
+	 * before the (rest of the) message that is being transferred.
+	 * @param bytes Number of bytes of control data
+	 */
+	@Override
+	public void addControlData(int bytes) {
+		super.addControlData(bytes);
+		this.controlLeft += bytes;
+	}
+
 	/**
 	 * returns the current speed of the connection
 	 */
@@ -7,11 +7,15 @@ package core;
 import input.EventQueue;
 import input.ExternalEvent;
 import input.ScheduledUpdatesQueue;
+import input.TransferDoneQueue;
+import interfaces.CompactConnectivityGrid;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * World contains all the nodes and is responsible for updating their
@@ -37,6 +41,63 @@ public class World {
 	 */
 	public static final String SIMULATE_CON_ONCE_S = "simulateConnectionsOnce";
 
+	/**
+	 * Should the side-effect free part of the host updates be run in
+	 * parallel -setting id ({@value}). Boolean (true/false) variable.
+	 * Default is {@link #DEF_PARALLEL_UPDATES}. When enabled, every update
+	 * round starts with a parallel phase where the interfaces go through
+	 * their near interfaces and do the range checks (see
+	 * {@link DTNHost#prepareUpdate()}). The hosts are then updated in the
+	 * normal (possibly randomized) order: the interfaces connect to the
+	 * candidates that were found in range, and the routers are updated.
+	 * The routers stay in the serial phase since their transfers change
+	 * the state of the other routers. The results are the same as without
+	 * the parallel phase. Requires the compact grid (see
+	 * {@link CompactConnectivityGrid#COMPACT_GRID_S}), whose near interfaces
+	 * don't change during the round. Not used with the pairwise scan (see
+	 * {@link CompactConnectivityGrid#PAIRWISE_SCAN_S}), which finds the
+	 * candidates itself.
+	 */
+	public static final String PARALLEL_UPDATES_S = "parallelUpdates";
+	/** should the preparation phase be run in parallel -setting's default
+	 * value ({@value}) */
+	public static final boolean DEF_PARALLEL_UPDATES = false;
+	/**
+	 * Number of threads used for the parallel update phase -setting id
+	 * ({@value}). Integer value. If not defined (or zero), the common
+	 * fork/join pool of the JVM is used.
+	 */
+	public static final String NROF_THREADS_S = "nrofThreads";
+	/**
+	 * Should the hosts whose update can't change anything be skipped
+	 * -setting id ({@value}). Boolean (true/false) variable. Default is
+	 * {@link #DEF_SKIP_IDLE_HOSTS}. When enabled, the router of a host is
+	 * updated only if it needs the update (see
+	 * {@link routing.MessageRouter#needsUpdate()}), and the activeness of
+	 * hosts whose radio can't turn off is not checked. The results are the
+	 * same as without skipping.
+	 */
+	public static final String SKIP_IDLE_HOSTS_S = "skipIdleHosts";
+	/** should idle hosts be skipped -setting's default value ({@value}) */
+	public static final boolean DEF_SKIP_IDLE_HOSTS = false;
+	/**
+	 * Should the message transfers be finalized by events at their exact
+	 * end time -setting id ({@value}). Boolean (true/false) variable.
+	 * Default is {@link #DEF_SCHEDULED_TRANSFERS}. When enabled, the world
+	 * gives a {@link TransferDoneQueue} to the hosts (see
+	 * {@link DTNHost#setTransferDoneQueue(TransferDoneQueue)}) and the
+	 * routers schedule the completions of the transfers whose connection
+	 * knows its end time (see {@link Connection#getTransferDoneTime()}).
+	 * Like all the other events, the completions see the host locations
+	 * from before the hosts move for the update interval.
+	 */
+	public static final String SCHEDULED_TRANSFERS_S = "scheduledTransfers";
+	/** should the transfers be scheduled -setting's default value
+	 * ({@value}) */
+	public static final boolean DEF_SCHEDULED_TRANSFERS = false;
+	/** how many hosts one parallel preparation task handles at most */
+	private static final int PREPARE_BATCH_SIZE = 16;
+
 	private int sizeX;
 	private int sizeY;
 	private List<EventQueue> eventQueues;
@@ -55,7 +116,14 @@ public class World {
 	private List<UpdateListener> updateListeners;
 	/** Queue of scheduled update requests */
 	private ScheduledUpdatesQueue scheduledUpdates;
+	/** Queue of transfer completions (null if transfers are not
+	 * scheduled) */
+	private TransferDoneQueue transfersDone;
 	private boolean simulateConOnce;
+	private boolean skipIdleHosts;
+	/** pool for the parallel update phase (null if parallel updates are
+	 * disabled) */
+	private ForkJoinPool updatePool;
 
 	/**
 	 * Constructor.
@@ -90,6 +158,33 @@ public class World {
 			randomizeUpdates = s.getBoolean(RANDOMIZE_UPDATES_S);
 		}
 		simulateConOnce = s.getBoolean(SIMULATE_CON_ONCE_S, false);
+		skipIdleHosts = s.getBoolean(SKIP_IDLE_HOSTS_S, DEF_SKIP_IDLE_HOSTS);
+
+		if (s.getBoolean(SCHEDULED_TRANSFERS_S, DEF_SCHEDULED_TRANSFERS)) {
+			this.transfersDone = new TransferDoneQueue();
+			for (DTNHost host : this.hosts) {
+				host.setTransferDoneQueue(this.transfersDone);
+			}
+		}
+		else {
+			this.transfersDone = null;
+		}
+
+		if (s.getBoolean(PARALLEL_UPDATES_S, DEF_PARALLEL_UPDATES)) {
+			if (!CompactConnectivityGrid.isEnabled()) {
+				throw new SettingsError(OPTIMIZATION_SETTINGS_NS + "." +
+						PARALLEL_UPDATES_S + " requires " +
+						OPTIMIZATION_SETTINGS_NS + "." +
+						CompactConnectivityGrid.COMPACT_GRID_S);
+			}
+			int nrofThreads = s.getInt(NROF_THREADS_S, 0);
+			s.ensurePositiveValue(nrofThreads, NROF_THREADS_S);
+			this.updatePool = (nrofThreads > 0 ?
+					new ForkJoinPool(nrofThreads) : ForkJoinPool.commonPool());
+		}
+		else {
+			this.updatePool = null;
+		}
 
 		if(randomizeUpdates) {
 			// creates the update order array that can be shuffled
@@ -112,13 +207,13 @@ public class World {
 		}
 
 		while(SimClock.getTime() < -updateInterval) {
-			moveHosts(updateInterval);
+			moveHosts(updateInterval, SimClock.getTime() + updateInterval);
 			simClock.advance(updateInterval);
 		}
 
 		double finalStep = -SimClock.getTime();
 
-		moveHosts(finalStep);
+		moveHosts(finalStep, 0);
 		simClock.setTime(0);
 	}
 
@@ -130,6 +225,12 @@ public class World {
 		EventQueue nextQueue = scheduledUpdates;
 		double earliest = nextQueue.nextEventsTime();
 
+		if (transfersDone != null &&
+				transfersDone.nextEventsTime() < earliest) {
+			nextQueue = transfersDone;
+			earliest = transfersDone.nextEventsTime();
+		}
+
 		/* find the queue that has the next event */
 		for (EventQueue eq : eventQueues) {
 			if (eq.nextEventsTime() < earliest){
@@ -157,11 +258,14 @@ public class World {
 			simClock.setTime(this.nextQueueEventTime);
 			ExternalEvent ee = this.nextEventQueue.nextEvent();
 			ee.processEvent(this);
-			updateHosts(); // update all hosts after every event
+			if (this.nextEventQueue != this.transfersDone) {
+				/* transfer completions update only their own hosts */
+				updateHosts(); // update all hosts after every event
+			}
 			setNextEventQueue();
 		}
 
-		moveHosts(this.updateInterval);
+		moveHosts(this.updateInterval, runUntil);
 		simClock.setTime(runUntil);
 
 		updateHosts();
@@ -175,15 +279,17 @@ public class World {
 	/**
 	 * Updates all hosts (calls update for every one of them). If update
 	 * order randomizing is on (updateOrder array is defined), the calls
-	 * are made in random order.
+	 * are made in random order. If parallel updates are enabled, the
+	 * hosts are first prepared for the update in parallel.
 	 */
 	private void updateHosts() {
 		if (this.updateOrder == null) { // randomizing is off
+			prepareHosts(hosts);
 			for (int i=0, n = hosts.size();i < n; i++) {
 				if (this.isCancelled) {
 					break;
 				}
-				hosts.get(i).update(simulateConnections);
+				updateHost(hosts.get(i));
 			}
 		}
 		else { // update order randomizing is on
@@ -191,11 +297,12 @@ public class World {
 				"Nrof hosts has changed unexpectedly";
 			Random rng = new Random(SimClock.getIntTime());
 			Collections.shuffle(this.updateOrder, rng);
+			prepareHosts(this.updateOrder);
 			for (int i=0, n = hosts.size();i < n; i++) {
 				if (this.isCancelled) {
 					break;
 				}
-				this.updateOrder.get(i).update(simulateConnections);
+				updateHost(this.updateOrder.get(i));
 			}
 		}
 
@@ -204,14 +311,53 @@ public class World {
 		}
 	}
 
+	/**
+	 * Updates a host, skipping the idle parts of the update if that is
+	 * enabled
+	 * @param host The host to update
+	 */
+	private void updateHost(DTNHost host) {
+		if (this.skipIdleHosts) {
+			host.updateIfNeeded(simulateConnections);
+		}
+		else {
+			host.update(simulateConnections);
+		}
+	}
+
+	/**
+	 * Runs the preparation phase of the hosts' update: finds the connection
+	 * candidates with a pairwise scan if that is enabled, or prepares the
+	 * hosts in parallel if parallel updates are enabled. Does nothing
+	 * otherwise.
+	 * @param order The hosts to prepare in the order they are updated
+	 */
+	private void prepareHosts(List<DTNHost> order) {
+		if (!simulateConnections || this.isCancelled) {
+			return;
+		}
+		if (CompactConnectivityGrid.isPairwiseScan()) {
+			CompactConnectivityGrid.preparePairs(order);
+			return;
+		}
+		if (this.updatePool == null) {
+			return;
+		}
+
+		CompactConnectivityGrid.sortAll();
+		this.updatePool.invoke(new PrepareTask(order, 0, order.size()));
+	}
+
 	/**
 	 * Moves all hosts in the world for a given amount of time
 	 * @param timeIncrement The time how long all nodes should move
+	 * @param locationTime The sim time that the new locations are for
 	 */
-	private void moveHosts(double timeIncrement) {
+	private void moveHosts(double timeIncrement, double locationTime) {
 		for (int i=0,n = hosts.size(); i<n; i++) {
 			DTNHost host = hosts.get(i);
 			host.move(timeIncrement);
+			host.setLocationTime(locationTime);
 		}
 	}
 
@@ -272,4 +418,41 @@ public class World {
 	public void scheduleUpdate(double simTime) {
 		scheduledUpdates.addUpdate(simTime);
 	}
+
+	/**
+	 * Fork/join task that prepares a range of hosts for the update
+	 * by splitting the range until it is small enough.
+	 */
+	private static class PrepareTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private List<DTNHost> hosts;
+		private int start;
+		private int end;
+
+		/**
+		 * Constructor.
+		 * @param hosts The hosts to prepare
+		 * @param start Index of the first host of this task
+		 * @param end Index after the last host of this task
+		 */
+		public PrepareTask(List<DTNHost> hosts, int start, int end) {
+			this.hosts = hosts;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start <= PREPARE_BATCH_SIZE) {
+				for (int i=start; i<end; i++) {
+					hosts.get(i).prepareUpdate();
+				}
+				return;
+			}
+
+			int middle = (start + end) / 2;
+			invokeAll(new PrepareTask(hosts, start, middle),
+					new PrepareTask(hosts, middle, end));
+		}
+	}
 }
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import routing.ActiveRouter;
+import core.Connection;
+import core.DTNHost;
+import core.Message;
+import core.World;
+
+/**
+ * Completion of a message transfer. The sender's router finalizes the
+ * transfer (see {@link ActiveRouter#scheduledTransferDone(Connection)}) and
+ * then the hosts of the connection (the sender first) are updated so that
+ * both routers can start new transfers right away. Nothing is done if the
+ * transfer was aborted before the event.
+ */
+public class TransferDoneEvent extends ExternalEvent {
+	private static final long serialVersionUID = 1L;
+	/** order of the events that happen at the same time */
+	private long sequence;
+	private Connection con;
+	private DTNHost from;
+	/** the message that was being transferred when the event was created */
+	private Message message;
+
+	/**
+	 * Creates a transfer completion event
+	 * @param time The time when the transfer is done
+	 * @param sequence Number that orders the events of the same time
+	 * @param con The connection of the transfer
+	 * @param from The host that sends the message
+	 */
+	public TransferDoneEvent(double time, long sequence, Connection con,
+			DTNHost from) {
+		super(time);
+		this.sequence = sequence;
+		this.con = con;
+		this.from = from;
+		this.message = con.getMessage();
+	}
+
+	@Override
+	public void processEvent(World world) {
+		if (con.getMessage() != this.message) {
+			return; /* transfer was aborted or finalized already */
+		}
+		/* only active routers schedule completions */
+		((ActiveRouter)from.getRouter()).scheduledTransferDone(con);
+		from.update(false);
+		con.getOtherNode(from).update(false);
+	}
+
+	/**
+	 * Compares two events by their time and, for transfer completions of
+	 * the same time, by the order they were created
+	 * @param other The other event
+	 */
+	@Override
+	public int compareTo(ExternalEvent other) {
+		int c = super.compareTo(other);
+		if (c == 0 && other instanceof TransferDoneEvent) {
+			long otherSeq = ((TransferDoneEvent)other).sequence;
+			c = (sequence < otherSeq ? -1 : (sequence == otherSeq ? 0 : 1));
+		}
+		return c;
+	}
+
+	@Override
+	public String toString() {
+		return "TransferDone @" + this.time + " " + con;
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import java.util.PriorityQueue;
+
+import core.Connection;
+import core.DTNHost;
+import core.World;
+
+/**
+ * Event queue of message transfer completions. When scheduled transfers
+ * are enabled (see {@link World#SCHEDULED_TRANSFERS_S}), the world gives
+ * its queue to the hosts, and the routers schedule the completion of every
+ * transfer whose connection knows its end time in advance. The transfer is
+ * then finalized by its event exactly at that time, and the routers don't
+ * poll it at every update. The completion events only update the hosts of
+ * the connection, not all the hosts of the world.
+ */
+public class TransferDoneQueue implements EventQueue {
+	/** the scheduled completions in the order they happen */
+	private PriorityQueue<TransferDoneEvent> events;
+	/** number of events scheduled so far (for ordering simultaneous ones) */
+	private long nrofScheduled;
+
+	/**
+	 * Constructor. Creates an empty queue.
+	 */
+	public TransferDoneQueue() {
+		this.events = new PriorityQueue<TransferDoneEvent>();
+		this.nrofScheduled = 0;
+	}
+
+	/**
+	 * Schedules the completion of the transfer that a host just started to
+	 * a connection. Does nothing if the connection doesn't know when the
+	 * transfer is done.
+	 * @param con The connection
+	 * @param from The host that sends the message (its router must be an
+	 * {@link routing.ActiveRouter})
+	 */
+	public void schedule(Connection con, DTNHost from) {
+		double time = con.getTransferDoneTime();
+		if (time < 0) {
+			return;
+		}
+		this.events.add(new TransferDoneEvent(time, this.nrofScheduled++,
+				con, from));
+	}
+
+	/**
+	 * Returns the next transfer completion or an event with time
+	 * Double.MAX_VALUE if there aren't any
+	 * @return the next event
+	 */
+	public ExternalEvent nextEvent() {
+		if (this.events.isEmpty()) {
+			return new ExternalEvent(Double.MAX_VALUE);
+		}
+		return this.events.poll();
+	}
+
+	/**
+	 * Returns the next transfer completion's time or Double.MAX_VALUE if
+	 * there aren't any
+	 * @return the next event's time
+	 */
+	public double nextEventsTime() {
+		if (this.events.isEmpty()) {
+			return Double.MAX_VALUE;
+		}
+		return this.events.peek().getTime();
+	}
+}
@@ -0,0 +1,851 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package interfaces;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import movement.MovementModel;
+
+import core.Coord;
+import core.DTNHost;
+import core.DTNSim;
+import core.NetworkInterface;
+import core.Settings;
+import core.SettingsError;
+import core.SimClock;
+import core.World;
+
+/**
+ * <P>
+ * Overlay grid of the world that keeps the interfaces in flat primitive
+ * arrays. This is an alternative for {@link ConnectivityGrid} that doesn't
+ * create any objects when the interfaces move or when the near interfaces
+ * are visited using
+ * {@link #visitNearInterfaces(NetworkInterface, InterfaceVisitor)}.</P>
+ *
+ * <P>Every interface has a slot (index) in the grid. Once per update round
+ * (i.e., when the simulation time has changed, or an interface has moved to
+ * another cell since the last rebuild) the slots are sorted by their cell
+ * using counting sort. The interfaces of a cell are then in a contiguous
+ * range of the sorted array, and the interfaces of three horizontally
+ * adjacent cells are in one contiguous range. Within a cell, interfaces are
+ * in the order they were added to the grid.</P>
+ *
+ * <P>Unlike with {@link ConnectivityGrid}, where an interface's cell is
+ * updated only when the interface itself is updated, the cells of all
+ * interfaces are up to date at the start of every update round. The set of
+ * near interfaces and its order can hence differ from
+ * {@link ConnectivityGrid}'s and so can the simulation results.</P>
+ *
+ * <P>With the pairwise scan enabled, {@link #preparePairs(List)} is called
+ * at the start of every update round. It visits every pair of interfaces
+ * in the same or neighboring cells exactly once, by scanning only the
+ * "forward" half of the neighbor cells (the next cell in the row and the
+ * three cells in the next row). A pair that is in range is given only
+ * to the interface whose host is updated first if both hosts have a static
+ * radio and always scanning interfaces; trying to connect from the other
+ * end would then always give the same result. The candidates are visited
+ * in the same order as the near interfaces, so the results don't change.
+ * </P>
+ *
+ * <P>The near interfaces of every interface stay the same during an update
+ * round, so the interfaces can find their connect candidates in parallel
+ * before the round (see {@link World#PARALLEL_UPDATES_S}).</P>
+ *
+ * <P>With the kinetic connectivity enabled, the grid predicts after an
+ * interface has checked its connections until when they can't change.
+ * Nodes that move along paths move linearly towards their current
+ * destination (or wait for the next path), so the exact times when two
+ * nodes come within or go out of range can be solved. The connections of
+ * the interface can't change before any such time of the interfaces in the
+ * neighboring cells, before any of those nodes reaches its destination and
+ * before some interface enters or leaves the neighboring cells. Until then
+ * the interface can skip checking its connections. This is done only for
+ * interfaces that are always active and scanning and whose nodes have a
+ * predictable movement (see {@link MovementModel#isPredictable()}). The
+ * connections still change only at the update rounds, so the results don't
+ * change.</P>
+ *
+ * <P>
+ * <strong>Note:</strong> this class does NOT support negative
+ * coordinates or removing interfaces.</P>
+ */
+public class CompactConnectivityGrid extends ConnectivityOptimizer {
+
+	/**
+	 * Compact grid -setting id ({@value}). Boolean. If true, this grid is
+	 * used instead of {@link ConnectivityGrid} for all interfaces.
+	 * Used in {@link World#OPTIMIZATION_SETTINGS_NS} name space.
+	 * Default value is {@link #DEF_COMPACT_GRID}. The cell size is defined
+	 * the same way as for {@link ConnectivityGrid} (see
+	 * {@link ConnectivityGrid#CELL_SIZE_MULT_S}).
+	 */
+	public static final String COMPACT_GRID_S = "compactGrid";
+	/** default value for using the compact grid ({@value}) */
+	public static final boolean DEF_COMPACT_GRID = false;
+
+	/**
+	 * Pairwise scan -setting id ({@value}). Boolean. If true, the connection
+	 * candidates of every update round are found by scanning every
+	 * interface pair once (see {@link #preparePairs(List)}). Requires the
+	 * compact grid. Used in {@link World#OPTIMIZATION_SETTINGS_NS} name
+	 * space. Default value is {@link #DEF_PAIRWISE_SCAN}.
+	 */
+	public static final String PAIRWISE_SCAN_S = "pairwiseScan";
+	/** default value for the pairwise scan ({@value}) */
+	public static final boolean DEF_PAIRWISE_SCAN = false;
+
+	/**
+	 * Kinetic connectivity -setting id ({@value}). Boolean. If true, the
+	 * grid predicts until when the connections of interfaces can't change
+	 * so that the interfaces can skip checking them. Requires the compact
+	 * grid. Used in {@link World#OPTIMIZATION_SETTINGS_NS} name space.
+	 * Default value is {@link #DEF_KINETIC_CONNECTIVITY}.
+	 */
+	public static final String KINETIC_CONNECTIVITY_S = "kineticConnectivity";
+	/** default value for the kinetic connectivity ({@value}) */
+	public static final boolean DEF_KINETIC_CONNECTIVITY = false;
+
+	/** Distance (meters) that the predictions leave for rounding errors */
+	private static final double RANGE_MARGIN = 0.001;
+
+	/** how large arrays are initially chosen */
+	private static final int INITIAL_CAPACITY = 64;
+	/** how large candidate arrays are initially chosen */
+	private static final int INITIAL_CANDIDATE_CAPACITY = 4;
+
+	private static HashMap<Integer, CompactConnectivityGrid> gridobjects;
+	private static boolean enabled;
+	private static boolean pairwiseScan;
+	private static boolean kinetic;
+	/** position of the hosts in the update order by host address */
+	private static int[] rankOfHost;
+	/** {@link DTNHost#hasStaticRadio()} of the hosts by host address */
+	private static boolean[] staticHost;
+	private static int worldSizeX;
+	private static int worldSizeY;
+	private static int cellSizeMultiplier;
+
+	private int cellSize;
+	private int rows;
+	private int cols;
+	/** number of cells in a row of cells (including the empty cells) */
+	private int width;
+
+	/** the interfaces by their slot */
+	private NetworkInterface[] interfaces;
+	/** number of used slots */
+	private int nrofInterfaces;
+	/** cell index of every slot (from the last rebuild) */
+	private int[] cellOf;
+	/** the next slot of the same host in this grid, or -1 */
+	private int[] nextOfHost;
+	/** the first slot of a host by host's address, or -1 */
+	private int[] slotOfHost;
+	/** the slots sorted by their cell */
+	private int[] sorted;
+	/** cell c's slots are in the sorted array from cellStart[c] to
+	 * cellStart[c+1] (exclusive) */
+	private int[] cellStart;
+	/** read-only view to the interfaces for {@link #getAllInterfaces()} */
+	private List<NetworkInterface> allInterfaces;
+
+	/** sim time of the last rebuild */
+	private volatile double builtTime;
+	/** true if the slots need to be sorted again */
+	private volatile boolean dirty;
+	/** how many times the slots have been sorted */
+	private int nrofSorts;
+
+	/** true for slots that are given connection candidates */
+	private boolean[] symmetric;
+	/** sorted array positions of each slot's connection candidates */
+	private int[][] candidates;
+	/** number of connection candidates of each slot */
+	private int[] nrofCandidates;
+	/** value of {@link #nrofSorts} when the candidates were found */
+	private int candidatesSort;
+
+	/** sim time until which the slot's connections can't change */
+	private double[] stableUntil;
+	/** value of {@link #nrofSorts} when the slot's stability was predicted */
+	private int[] stableSort;
+	/** value of {@link #nrofSorts} when the cell's interfaces last changed */
+	private int[] cellChanged;
+
+	static {
+		DTNSim.registerForReset(CompactConnectivityGrid.class.
+				getCanonicalName());
+		reset();
+	}
+
+	public static void reset() {
+		gridobjects = new HashMap<Integer, CompactConnectivityGrid>();
+
+		Settings s = new Settings(MovementModel.MOVEMENT_MODEL_NS);
+		int [] worldSize = s.getCsvInts(MovementModel.WORLD_SIZE,2);
+		worldSizeX = worldSize[0];
+		worldSizeY = worldSize[1];
+
+		s.setNameSpace(World.OPTIMIZATION_SETTINGS_NS);
+		enabled = s.getBoolean(COMPACT_GRID_S, DEF_COMPACT_GRID);
+		pairwiseScan = s.getBoolean(PAIRWISE_SCAN_S, DEF_PAIRWISE_SCAN);
+		if (pairwiseScan && !enabled) {
+			throw new SettingsError(World.OPTIMIZATION_SETTINGS_NS + "." +
+					PAIRWISE_SCAN_S + " requires " +
+					World.OPTIMIZATION_SETTINGS_NS + "." + COMPACT_GRID_S);
+		}
+		kinetic = s.getBoolean(KINETIC_CONNECTIVITY_S,
+				DEF_KINETIC_CONNECTIVITY);
+		if (kinetic && !enabled) {
+			throw new SettingsError(World.OPTIMIZATION_SETTINGS_NS + "." +
+					KINETIC_CONNECTIVITY_S + " requires " +
+					World.OPTIMIZATION_SETTINGS_NS + "." + COMPACT_GRID_S);
+		}
+		rankOfHost = new int[0];
+		staticHost = new boolean[0];
+		cellSizeMultiplier = s.getInt(ConnectivityGrid.CELL_SIZE_MULT_S,
+				ConnectivityGrid.DEF_CON_CELL_SIZE_MULT);
+		if (cellSizeMultiplier < 1) {
+			throw new SettingsError("Too small value (" + cellSizeMultiplier +
+					") for " + World.OPTIMIZATION_SETTINGS_NS +
+					"." + ConnectivityGrid.CELL_SIZE_MULT_S);
+		}
+	}
+
+	/**
+	 * Returns true if the compact grid should be used instead of
+	 * {@link ConnectivityGrid}
+	 * @return true if the compact grid is enabled in the settings
+	 */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Returns true if the connection candidates should be found using the
+	 * pairwise scan
+	 * @return true if the pairwise scan is enabled in the settings
+	 */
+	public static boolean isPairwiseScan() {
+		return pairwiseScan;
+	}
+
+	/**
+	 * Finds the connection candidates of all interfaces of all compact
+	 * grids for the next update round by scanning every near interface
+	 * pair once.
+	 * @param order The hosts in the order they are updated in the round
+	 */
+	public static void preparePairs(List<DTNHost> order) {
+		int maxAddress = -1;
+		for (int i=0, n=order.size(); i<n; i++) {
+			maxAddress = Math.max(maxAddress, order.get(i).getAddress());
+		}
+		if (maxAddress >= rankOfHost.length) {
+			rankOfHost = new int[maxAddress + 1];
+			staticHost = new boolean[maxAddress + 1];
+		}
+		for (int i=0, n=order.size(); i<n; i++) {
+			DTNHost h = order.get(i);
+			rankOfHost[h.getAddress()] = i;
+			staticHost[h.getAddress()] = h.hasStaticRadio();
+		}
+
+		for (CompactConnectivityGrid grid : gridobjects.values()) {
+			grid.scanPairs();
+		}
+	}
+
+	/**
+	 * Sorts the slots of all compact grids by their current cells. Called
+	 * at the start of an update round whose connect candidates are found
+	 * in parallel (see {@link NetworkInterface#prepareUpdate(boolean)}), so
+	 * that the grids are not sorted during the round. The hosts may have
+	 * moved without the time changing, so the grids are always sorted.
+	 */
+	public static void sortAll() {
+		for (CompactConnectivityGrid grid : gridobjects.values()) {
+			grid.dirty = true;
+			grid.ensureSorted();
+		}
+	}
+
+	/**
+	 * Creates a new compact overlay connectivity grid
+	 * @param cellSize Cell's edge's length (must be larger than the largest
+	 * 	radio coverage's diameter)
+	 */
+	private CompactConnectivityGrid(int cellSize) {
+		this.rows = worldSizeY/cellSize + 1;
+		this.cols = worldSizeX/cellSize + 1;
+		this.cellSize = cellSize;
+		// leave empty cells on all sides to make neighbor search easier
+		this.width = cols + 2;
+
+		this.interfaces = new NetworkInterface[INITIAL_CAPACITY];
+		this.cellOf = new int[INITIAL_CAPACITY];
+		this.nextOfHost = new int[INITIAL_CAPACITY];
+		this.sorted = new int[INITIAL_CAPACITY];
+		this.symmetric = new boolean[INITIAL_CAPACITY];
+		this.candidates = new int[INITIAL_CAPACITY][];
+		this.nrofCandidates = new int[INITIAL_CAPACITY];
+		this.candidatesSort = -1;
+		this.stableUntil = new double[INITIAL_CAPACITY];
+		this.stableSort = new int[INITIAL_CAPACITY];
+		this.cellChanged = new int[(rows + 2) * width];
+		this.slotOfHost = new int[INITIAL_CAPACITY];
+		Arrays.fill(this.slotOfHost, -1);
+		this.cellStart = new int[(rows + 2) * width + 1];
+		this.allInterfaces = Collections.unmodifiableList(
+				Arrays.asList(this.interfaces).subList(0, 0));
+		this.dirty = true;
+	}
+
+	/**
+	 * Returns a compact connectivity grid object based on a hash value
+	 * @param key A hash value that separates different interfaces from each
+	 * other
+	 * @param maxRange Maximum range used by the radio technology using this
+	 *  connectivity grid.
+	 * @return The connectivity grid object for a specific interface
+	 */
+	public static CompactConnectivityGrid CompactConnectivityGridFactory(
+			int key, double maxRange) {
+		CompactConnectivityGrid grid = gridobjects.get(key);
+		if (grid == null) {
+			grid = new CompactConnectivityGrid((int)Math.ceil(maxRange *
+					cellSizeMultiplier));
+			gridobjects.put(key, grid);
+		}
+		return grid;
+	}
+
+	/**
+	 * Adds a network interface to the overlay grid (unless it is already
+	 * present)
+	 * @param ni The new network interface
+	 */
+	public void addInterface(NetworkInterface ni) {
+		if (slotOf(ni) >= 0) {
+			return;
+		}
+
+		int slot = nrofInterfaces;
+		if (slot == interfaces.length) {
+			int newSize = slot * 2;
+			interfaces = Arrays.copyOf(interfaces, newSize);
+			cellOf = Arrays.copyOf(cellOf, newSize);
+			nextOfHost = Arrays.copyOf(nextOfHost, newSize);
+			sorted = Arrays.copyOf(sorted, newSize);
+			symmetric = Arrays.copyOf(symmetric, newSize);
+			candidates = Arrays.copyOf(candidates, newSize);
+			nrofCandidates = Arrays.copyOf(nrofCandidates, newSize);
+			stableUntil = Arrays.copyOf(stableUntil, newSize);
+			stableSort = Arrays.copyOf(stableSort, newSize);
+		}
+
+		int address = ni.getHost().getAddress();
+		if (address >= slotOfHost.length) {
+			int oldSize = slotOfHost.length;
+			slotOfHost = Arrays.copyOf(slotOfHost,
+					Math.max(oldSize * 2, address + 1));
+			Arrays.fill(slotOfHost, oldSize, slotOfHost.length, -1);
+		}
+
+		/* append to the end of the host's chain to keep the slot order */
+		nextOfHost[slot] = -1;
+		if (slotOfHost[address] < 0) {
+			slotOfHost[address] = slot;
+		} else {
+			int last = slotOfHost[address];
+			while (nextOfHost[last] >= 0) {
+				last = nextOfHost[last];
+			}
+			nextOfHost[last] = slot;
+		}
+
+		interfaces[slot] = ni;
+		candidates[slot] = new int[INITIAL_CANDIDATE_CAPACITY];
+		stableUntil[slot] = -1;
+		cellOf[slot] = -1;
+		nrofInterfaces++;
+		allInterfaces = Collections.unmodifiableList(
+				Arrays.asList(interfaces).subList(0, nrofInterfaces));
+		dirty = true;
+	}
+
+	/**
+	 * Adds interfaces to overlay grid
+	 * @param interfaces Collection of interfaces to add
+	 */
+	public void addInterfaces(Collection<NetworkInterface> interfaces) {
+		for (NetworkInterface n : interfaces) {
+			addInterface(n);
+		}
+	}
+
+	/**
+	 * Marks the grid for rebuilding if the interface has moved to another
+	 * cell since the last rebuild
+	 * @param ni The interface to update
+	 */
+	public void updateLocation(NetworkInterface ni) {
+		if (dirty) {
+			return; /* rebuilt before the next query anyway */
+		}
+		int slot = slotOf(ni);
+		if (slot >= 0 && cellOf[slot] != cellIndex(ni.getLocation())) {
+			dirty = true;
+		}
+	}
+
+	/**
+	 * Returns true if the interface's location is in a different cell than
+	 * where the interface is in the grid
+	 * @param ni The interface to check
+	 * @return true if the interface's cell needs updating
+	 */
+	public boolean isRelocated(NetworkInterface ni) {
+		ensureSorted();
+		int slot = slotOf(ni);
+		return slot < 0 || cellOf[slot] != cellIndex(ni.getLocation());
+	}
+
+	/**
+	 * Returns all interfaces that use the same technology and channel
+	 */
+	public Collection<NetworkInterface> getAllInterfaces() {
+		return allInterfaces;
+	}
+
+	/**
+	 * Returns all interfaces that are "near" (i.e., in neighboring grid cells)
+	 * and use the same technology and channel as the given interface
+	 * @param ni The interface whose neighboring interfaces are returned
+	 * @return List of near interfaces
+	 */
+	public Collection<NetworkInterface> getNearInterfaces(
+			NetworkInterface ni) {
+		final ArrayList<NetworkInterface> niList =
+			new ArrayList<NetworkInterface>();
+		visitNearInterfaces(ni, new InterfaceVisitor() {
+			public void visit(NetworkInterface near) {
+				niList.add(near);
+			}
+		});
+		return niList;
+	}
+
+	/**
+	 * Calls the visitor for all interfaces that are in the same or
+	 * neighboring cells as the given interface. Nothing is allocated.
+	 * @param ni The interface whose neighboring interfaces are visited
+	 * @param visitor The visitor to call
+	 */
+	@Override
+	public void visitNearInterfaces(NetworkInterface ni,
+			InterfaceVisitor visitor) {
+		ensureSorted();
+		if (slotOf(ni) < 0) {
+			return;
+		}
+
+		int center = cellIndex(ni.getLocation());
+		for (int row = center - width; row <= center + width; row += width) {
+			/* three cells in a row are contiguous in the sorted array */
+			for (int i = cellStart[row - 1], end = cellStart[row + 2];
+					i < end; i++) {
+				visitor.visit(interfaces[sorted[i]]);
+			}
+		}
+	}
+
+	/**
+	 * Calls the visitor for the connection candidates found by the pairwise
+	 * scan of this update round, or for all near interfaces if there are
+	 * no candidates for the interface.
+	 * @param ni The interface whose candidates are visited
+	 * @param visitor The visitor to call
+	 */
+	@Override
+	public void visitConnectCandidates(NetworkInterface ni,
+			InterfaceVisitor visitor) {
+		ensureSorted();
+		int slot = slotOf(ni);
+		if (candidatesSort != nrofSorts || slot < 0 || !symmetric[slot]) {
+			visitNearInterfaces(ni, visitor);
+			return;
+		}
+
+		int[] list = candidates[slot];
+		for (int i=0, n=nrofCandidates[slot]; i < n; i++) {
+			visitor.visit(interfaces[sorted[list[i]]]);
+		}
+	}
+
+	/**
+	 * Sorts the slots by the current cells and finds the connection
+	 * candidates of every slot by checking every pair of interfaces in
+	 * the same or neighboring cells once. The candidates of a slot are
+	 * found in increasing sorted array position, i.e., in the same order
+	 * they would be visited by
+	 * {@link #visitNearInterfaces(NetworkInterface, InterfaceVisitor)}.
+	 */
+	private void scanPairs() {
+		dirty = true; /* hosts may have moved without the time changing */
+		ensureSorted();
+
+		for (int i=0; i < nrofInterfaces; i++) {
+			int address = interfaces[i].getHost().getAddress();
+			symmetric[i] = address < staticHost.length &&
+				staticHost[address] && interfaces[i].isAlwaysScanning();
+			nrofCandidates[i] = 0;
+		}
+
+		int[] start = this.cellStart;
+		for (int c = width, last = (rows + 1) * width; c < last; c++) {
+			for (int p = start[c], end = start[c + 1]; p < end; p++) {
+				/* rest of the same cell and the next cell in the row */
+				for (int q = p + 1, qEnd = start[c + 2]; q < qEnd; q++) {
+					checkPair(p, q);
+				}
+				/* three cells of the next row */
+				for (int q = start[c + width - 1], qEnd = start[c + width + 2];
+						q < qEnd; q++) {
+					checkPair(p, q);
+				}
+			}
+		}
+
+		candidatesSort = nrofSorts;
+	}
+
+	/**
+	 * Checks a pair of interfaces and adds them as each other's connection
+	 * candidates if needed
+	 * @param p Sorted array position of the first interface
+	 * @param q Sorted array position of the second interface (p &lt; q)
+	 */
+	private void checkPair(int p, int q) {
+		int x = sorted[p];
+		int y = sorted[q];
+
+		if (symmetric[x] && symmetric[y]) {
+			NetworkInterface nx = interfaces[x];
+			NetworkInterface ny = interfaces[y];
+			double range = Math.max(nx.getTransmitRange(),
+					ny.getTransmitRange());
+			if (nx.getLocation().distance(ny.getLocation()) > range) {
+				return;
+			}
+			/* only the first one updated needs to try */
+			int rx = rankOfHost[nx.getHost().getAddress()];
+			int ry = rankOfHost[ny.getHost().getAddress()];
+			if (rx <= ry) {
+				addCandidate(x, q);
+			}
+			if (ry <= rx) {
+				addCandidate(y, p);
+			}
+		}
+		else {
+			/* the other end may change in the round, always try */
+			if (symmetric[x]) {
+				addCandidate(x, q);
+			}
+			if (symmetric[y]) {
+				addCandidate(y, p);
+			}
+		}
+	}
+
+	/**
+	 * Adds a connection candidate for a slot
+	 * @param slot The slot
+	 * @param position Sorted array position of the candidate
+	 */
+	private void addCandidate(int slot, int position) {
+		int n = nrofCandidates[slot];
+		if (n == candidates[slot].length) {
+			candidates[slot] = Arrays.copyOf(candidates[slot], n * 2);
+		}
+		candidates[slot][n] = position;
+		nrofCandidates[slot] = n + 1;
+	}
+
+	/**
+	 * Returns true if the interface's connectivity was predicted to stay the
+	 * same until now and no interface has entered or left the neighboring
+	 * cells since the prediction
+	 * @param ni The network interface to check
+	 * @return true if the interface's connectivity can't change
+	 */
+	@Override
+	public boolean isConnectivityStable(NetworkInterface ni) {
+		if (!kinetic) {
+			return false;
+		}
+		ensureSorted();
+		int slot = slotOf(ni);
+		if (slot < 0 || SimClock.getTime() >= stableUntil[slot]) {
+			return false;
+		}
+
+		int since = stableSort[slot];
+		int center = cellOf[slot];
+		for (int row = center - width; row <= center + width; row += width) {
+			if (cellChanged[row - 1] > since || cellChanged[row] > since ||
+					cellChanged[row + 1] > since) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Predicts until when the connectivity of the interface can't change
+	 * @param ni The network interface whose connections were checked
+	 */
+	@Override
+	public void predictConnectivity(NetworkInterface ni) {
+		if (!kinetic) {
+			return;
+		}
+		ensureSorted();
+		int slot = slotOf(ni);
+		if (slot >= 0) {
+			stableUntil[slot] = predictStableUntil(ni, slot);
+			stableSort[slot] = nrofSorts;
+		}
+	}
+
+	/**
+	 * Forgets the prediction of the interface
+	 * @param ni The network interface whose connections changed
+	 */
+	@Override
+	public void connectivityChanged(NetworkInterface ni) {
+		if (!kinetic) {
+			return;
+		}
+		int slot = slotOf(ni);
+		if (slot >= 0) {
+			stableUntil[slot] = -1;
+		}
+	}
+
+	/**
+	 * Returns the sim time until which the interface's connections can't
+	 * change, i.e., none of the interfaces in the neighboring cells can come
+	 * within or go out of its range
+	 * @param ni The interface
+	 * @param slot The interface's slot
+	 * @return The time until the connections can't change, or the current
+	 * time if they can change in the next update round
+	 */
+	private double predictStableUntil(NetworkInterface ni, int slot) {
+		double now = SimClock.getTime();
+		DTNHost host = ni.getHost();
+		if (!isPredictable(ni)) {
+			return now;
+		}
+		double until = host.getMovementKnownUntil();
+		if (until <= now) {
+			return now;
+		}
+
+		/* locations (and so the crossing times) are for the location time */
+		double base = host.getLocationTime();
+		Coord loc = host.getLocation();
+		Coord velocity = host.getVelocity();
+		int center = cellOf[slot];
+		for (int row = center - width; row <= center + width; row += width) {
+			for (int i = cellStart[row - 1], end = cellStart[row + 2];
+					i < end; i++) {
+				NetworkInterface other = interfaces[sorted[i]];
+				DTNHost otherHost = other.getHost();
+				if (otherHost == host) {
+					continue; /* moves along with the interface */
+				}
+				if (!isPredictable(other)) {
+					return now;
+				}
+				until = Math.min(until, otherHost.getMovementKnownUntil());
+				if (until <= now) {
+					return now;
+				}
+
+				double range = Math.min(ni.getTransmitRange(),
+						other.getTransmitRange());
+				Coord otherVelocity = otherHost.getVelocity();
+				double time = rangeChangeTime(
+						otherHost.getLocation().getX() - loc.getX(),
+						otherHost.getLocation().getY() - loc.getY(),
+						otherVelocity.getX() - velocity.getX(),
+						otherVelocity.getY() - velocity.getY(), range);
+				until = Math.min(until, base + time);
+				if (until <= now) {
+					return now;
+				}
+			}
+		}
+
+		return until;
+	}
+
+	/**
+	 * Returns true if the connectivity of the interface can be predicted
+	 * from its node's movement
+	 * @param ni The interface
+	 * @return true if the interface is always active and scanning, and its
+	 * node moves predictably
+	 */
+	private static boolean isPredictable(NetworkInterface ni) {
+		return ni.isAlwaysScanning() && ni.getHost().hasStaticRadio();
+	}
+
+	/**
+	 * Returns the time after which the distance of two nodes moving with
+	 * constant velocities can cross the range, i.e., the nodes can come
+	 * within or go out of range.
+	 * @param dx Difference of the x coordinates of the nodes
+	 * @param dy Difference of the y coordinates of the nodes
+	 * @param vx Difference of the velocities of the nodes along x axis
+	 * @param vy Difference of the velocities of the nodes along y axis
+	 * @param range The range
+	 * @return The time (&gt;= 0) or {@link Double#MAX_VALUE} if the range is
+	 * never crossed
+	 */
+	private static double rangeChangeTime(double dx, double dy,
+			double vx, double vy, double range) {
+		double a = vx * vx + vy * vy;
+		double b = 2 * (dx * vx + dy * vy);
+		double c = dx * dx + dy * dy;
+
+		if (c <= range * range) { /* within range: when does it go out? */
+			double r = range - RANGE_MARGIN;
+			if (r <= 0 || c >= r * r) {
+				return 0;
+			}
+			if (a == 0) {
+				return Double.MAX_VALUE;
+			}
+			/* c < r^2, so the discriminant is positive */
+			return (-b + Math.sqrt(b * b - 4 * a * (c - r * r))) / (2 * a);
+		}
+
+		/* out of range: when does it come within range? */
+		double r = range + RANGE_MARGIN;
+		if (c <= r * r) {
+			return 0;
+		}
+		if (a == 0) {
+			return Double.MAX_VALUE;
+		}
+		double disc = b * b - 4 * a * (c - r * r);
+		if (disc < 0) {
+			return Double.MAX_VALUE; /* never gets close enough */
+		}
+		double time = (-b - Math.sqrt(disc)) / (2 * a);
+		/* both roots have the same sign since c > r^2 */
+		return time < 0 ? Double.MAX_VALUE : time;
+	}
+
+	/**
+	 * Sorts the slots by their (current) cells if that hasn't been done
+	 * during this update round or if some interface has moved to another
+	 * cell since then. Can be called concurrently.
+	 */
+	private void ensureSorted() {
+		if (dirty || builtTime != SimClock.getTime()) {
+			synchronized (this) {
+				if (dirty || builtTime != SimClock.getTime()) {
+					sort();
+					builtTime = SimClock.getTime();
+					dirty = false;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Updates every slot's cell and sorts the slots by their cell using
+	 * counting sort (so slots of the same cell stay in slot order)
+	 */
+	private void sort() {
+		int[] start = this.cellStart;
+		Arrays.fill(start, 0);
+		nrofSorts++;
+
+		for (int i=0; i < nrofInterfaces; i++) {
+			int c = cellIndex(interfaces[i].getLocation());
+			if (c != cellOf[i]) {
+				if (cellOf[i] >= 0) {
+					cellChanged[cellOf[i]] = nrofSorts;
+				}
+				cellChanged[c] = nrofSorts;
+				cellOf[i] = c;
+			}
+			start[c + 1]++;
+		}
+		for (int c=1; c < start.length; c++) {
+			start[c] += start[c - 1];
+		}
+		/* start[c] is now where cell c begins; use it as the insertion
+		 * point of the cell so that afterwards it is where cell c ends */
+		for (int i=0; i < nrofInterfaces; i++) {
+			sorted[start[cellOf[i]]++] = i;
+		}
+		for (int c = start.length - 1; c > 0; c--) {
+			start[c] = start[c - 1];
+		}
+		start[0] = 0;
+	}
+
+	/**
+	 * Returns the slot of the interface, or -1 if it isn't in the grid
+	 * @param ni The interface
+	 * @return The slot of the interface
+	 */
+	private int slotOf(NetworkInterface ni) {
+		int address = ni.getHost().getAddress();
+		int slot = address < slotOfHost.length ? slotOfHost[address] : -1;
+		while (slot >= 0 && interfaces[slot] != ni) {
+			slot = nextOfHost[slot];
+		}
+		return slot;
+	}
+
+	/**
+	 * Returns the index of the cell that contains the coordinates
+	 * @param c Coordinates
+	 * @return The index of the cell
+	 */
+	private int cellIndex(Coord c) {
+		// +1 due empty cells on both sides of the matrix
+		int row = (int)(c.getY()/cellSize) + 1;
+		int col = (int)(c.getX()/cellSize) + 1;
+
+		assert row > 0 && row <= rows && col > 0 && col <= cols : "Location " +
+		c + " is out of world's bounds";
+
+		return row * width + col;
+	}
+
+	/**
+	 * Returns a string representation of the object
+	 * @return a string representation of the object
+	 */
+	public String toString() {
+		return getClass().getSimpleName() + " of size " +
+			this.cols + "x" + this.rows + ", cell size=" + this.cellSize;
+	}
+}
@@ -40,9 +40,85 @@ abstract public class ConnectivityOptimizer {
 	abstract public Collection<NetworkInterface> getNearInterfaces(
 			NetworkInterface ni);
 
+	/**
+	 * Calls the visitor for all network interfaces that might be located so
+	 * that they can be connected with the network interface, in the same
+	 * order as {@link #getNearInterfaces(NetworkInterface)} returns them.
+	 * The default implementation iterates over the collection returned by
+	 * {@link #getNearInterfaces(NetworkInterface)}; optimizers can override
+	 * this to avoid creating the collection. The visitor must not change the
+	 * locations of the interfaces in the optimizer.
+	 * @param ni network interface that needs to be connected
+	 * @param visitor The visitor to call for every near interface
+	 */
+	public void visitNearInterfaces(NetworkInterface ni,
+			InterfaceVisitor visitor) {
+		for (NetworkInterface near : getNearInterfaces(ni)) {
+			visitor.visit(near);
+		}
+	}
+
+	/**
+	 * Calls the visitor for all network interfaces that the given network
+	 * interface should try to connect to in the current update round. The
+	 * optimizer can leave out interfaces that are known to be out of range
+	 * or that are tried from the other end. The default implementation
+	 * visits all near interfaces.
+	 * @param ni network interface that needs to be connected
+	 * @param visitor The visitor to call for every candidate interface
+	 * @see #visitNearInterfaces(NetworkInterface, InterfaceVisitor)
+	 */
+	public void visitConnectCandidates(NetworkInterface ni,
+			InterfaceVisitor visitor) {
+		visitNearInterfaces(ni, visitor);
+	}
+
+	/**
+	 * Returns true if the connectivity of the interface is known to stay the
+	 * same for the current update round: no connection of the interface can
+	 * come up or go down and the interface doesn't need to check its
+	 * connections. The default implementation always returns false.
+	 * @param ni The network interface to check
+	 * @return true if the interface's connectivity can't change
+	 * @see #predictConnectivity(NetworkInterface)
+	 */
+	public boolean isConnectivityStable(NetworkInterface ni) {
+		return false;
+	}
+
+	/**
+	 * Called after the interface has checked its connections (i.e., its
+	 * connections are up to date). Optimizers can use this to predict
+	 * until when the connectivity of the interface stays the same. The
+	 * default implementation does nothing.
+	 * @param ni The network interface whose connections were checked
+	 */
+	public void predictConnectivity(NetworkInterface ni) {
+	}
+
+	/**
+	 * Called when a connection of the interface has come up or gone down.
+	 * The default implementation does nothing.
+	 * @param ni The network interface whose connections changed
+	 */
+	public void connectivityChanged(NetworkInterface ni) {
+	}
+
 	/**
 	 * Finds all other interfaces that are registered to the
 	 * ConnectivityOptimizer
 	 */
 	abstract public Collection<NetworkInterface> getAllInterfaces();
+
+	/**
+	 * Interface for classes that want to visit the near interfaces
+	 * @see ConnectivityOptimizer#visitNearInterfaces
+	 */
+	public interface InterfaceVisitor {
+		/**
+		 * Method is called for every visited interface
+		 * @param ni The visited interface
+		 */
+		public void visit(NetworkInterface ni);
+	}
 }
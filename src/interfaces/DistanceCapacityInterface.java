@@ -4,7 +4,6 @@
  */
 package interfaces;
 
-import java.util.Collection;
 import core.Connection;
 import core.NetworkInterface;
 import core.Settings;
@@ -77,28 +76,28 @@ public class DistanceCapacityInterface extends NetworkInterface {
 			return; /* nothing to do */
 		}
 
-		// First break the old ones
 		optimizer.updateLocation(this);
-		for (int i=0; i<this.connections.size(); ) {
-			Connection con = this.connections.get(i);
-			NetworkInterface anotherInterface = con.getOtherInterface(this);
-
-			// all connections should be up at this stage
-			assert con.isUp() : "Connection " + con + " was down!";
-
-			if (!isWithinRange(anotherInterface)) {
-				disconnect(con,anotherInterface);
-				connections.remove(i);
+		if (!optimizer.isConnectivityStable(this)) {
+			// First break the old ones
+			for (int i=0; i<this.connections.size(); ) {
+				Connection con = this.connections.get(i);
+				NetworkInterface anotherInterface =
+					con.getOtherInterface(this);
+
+				// all connections should be up at this stage
+				assert con.isUp() : "Connection " + con + " was down!";
+
+				if (!isWithinRange(anotherInterface)) {
+					disconnect(con,anotherInterface);
+					removeConnection(i);
+				}
+				else {
+					i++;
+				}
 			}
-			else {
-				i++;
-			}
-		}
-		// Then find new possible connections
-		Collection<NetworkInterface> interfaces =
-			optimizer.getNearInterfaces(this);
-		for (NetworkInterface i : interfaces) {
-			connect(i);
+			// Then find new possible connections
+			connectNearInterfaces();
+			optimizer.predictConnectivity(this);
 		}
 
 		/* update all connections */
@@ -4,8 +4,6 @@
  */
 package interfaces;
 
-import java.util.Collection;
-
 import core.Connection;
 import core.NetworkInterface;
 import core.Settings;
@@ -81,27 +79,28 @@ public class InterferenceLimitedInterface extends NetworkInterface {
 			return; /* nothing to do */
 		}
 
-		// First break the old ones
 		optimizer.updateLocation(this);
-		for (int i=0; i<this.connections.size(); ) {
-			Connection con = this.connections.get(i);
-			NetworkInterface anotherInterface = con.getOtherInterface(this);
-
-			// all connections should be up at this stage
-			assert con.isUp() : "Connection " + con + " was down!";
-
-			if (!isWithinRange(anotherInterface)) {
-				disconnect(con,anotherInterface);
-				connections.remove(i);
-			} else {
-				i++;
+		if (!optimizer.isConnectivityStable(this)) {
+			// First break the old ones
+			for (int i=0; i<this.connections.size(); ) {
+				Connection con = this.connections.get(i);
+				NetworkInterface anotherInterface =
+					con.getOtherInterface(this);
+
+				// all connections should be up at this stage
+				assert con.isUp() : "Connection " + con + " was down!";
+
+				if (!isWithinRange(anotherInterface)) {
+					disconnect(con,anotherInterface);
+					removeConnection(i);
+				} else {
+					i++;
+				}
 			}
+			// Then find new possible connections
+			connectNearInterfaces();
+			optimizer.predictConnectivity(this);
 		}
-		// Then find new possible connections
-		Collection<NetworkInterface> interfaces =
-			optimizer.getNearInterfaces(this);
-		for (NetworkInterface i : interfaces)
-			connect(i);
 
 		// Find the current number of transmissions
 		// (to calculate the current transmission speed
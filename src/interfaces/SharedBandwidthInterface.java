@@ -0,0 +1,119 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package interfaces;
+
+import core.Connection;
+import core.NetworkInterface;
+import core.Settings;
+import core.SharedBandwidthConnection;
+
+/**
+ * A Network Interface whose connections can transfer messages at the same
+ * time and share the transmit speed of the interface between them (see
+ * {@link SharedBandwidthConnection}). How many transfers a router runs in
+ * parallel is set in the router settings (see
+ * {@link routing.ActiveRouter#MAX_PARALLEL_SENDS_S}).
+ */
+public class SharedBandwidthInterface extends NetworkInterface {
+
+	/**
+	 * Reads the interface settings from the Settings file
+	 */
+	public SharedBandwidthInterface(Settings s)	{
+		super(s);
+	}
+
+	/**
+	 * Copy constructor
+	 * @param ni the copied network interface object
+	 */
+	public SharedBandwidthInterface(SharedBandwidthInterface ni) {
+		super(ni);
+	}
+
+	public NetworkInterface replicate()	{
+		return new SharedBandwidthInterface(this);
+	}
+
+	/**
+	 * Tries to connect this host to another host. The other host must be
+	 * active and within range of this host for the connection to succeed.
+	 * @param anotherInterface The interface to connect to
+	 */
+	public void connect(NetworkInterface anotherInterface) {
+		if (isScanning()
+				&& anotherInterface.getHost().isRadioActive()
+				&& isWithinRange(anotherInterface)
+				&& !isConnected(anotherInterface)
+				&& (this != anotherInterface)) {
+			// new contact within range
+			Connection con = new SharedBandwidthConnection(this.host, this,
+					anotherInterface.getHost(), anotherInterface);
+			connect(con,anotherInterface);
+		}
+	}
+
+	/**
+	 * Updates the state of current connections (i.e. tears down connections
+	 * that are out of range and creates new ones) and the transfer speeds
+	 * of the connections.
+	 */
+	public void update() {
+		if (optimizer == null) {
+			return; /* nothing to do */
+		}
+
+		optimizer.updateLocation(this);
+		if (!optimizer.isConnectivityStable(this)) {
+			// First break the old ones
+			for (int i=0; i<this.connections.size(); ) {
+				Connection con = this.connections.get(i);
+				NetworkInterface anotherInterface =
+					con.getOtherInterface(this);
+
+				// all connections should be up at this stage
+				assert con.isUp() : "Connection " + con + " was down!";
+
+				if (!isWithinRange(anotherInterface)) {
+					disconnect(con,anotherInterface);
+					removeConnection(i);
+				}
+				else {
+					i++;
+				}
+			}
+			// Then find new possible connections
+			connectNearInterfaces();
+			optimizer.predictConnectivity(this);
+		}
+
+		/* update all connections */
+		for (Connection con : getConnections()) {
+			con.update();
+		}
+	}
+
+	/**
+	 * Creates a connection to another host. This method does not do any checks
+	 * on whether the other node is in range or active
+	 * @param anotherInterface The interface to create the connection to
+	 */
+	public void createConnection(NetworkInterface anotherInterface) {
+		if (!isConnected(anotherInterface) && (this != anotherInterface)) {
+			Connection con = new SharedBandwidthConnection(this.host, this,
+					anotherInterface.getHost(), anotherInterface);
+			connect(con,anotherInterface);
+		}
+	}
+
+	/**
+	 * Returns a string representation of the object.
+	 * @return a string representation of the object.
+	 */
+	public String toString() {
+		return "SharedBandwidthInterface " + super.toString();
+	}
+
+}
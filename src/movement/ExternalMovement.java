@@ -150,6 +150,11 @@ public class ExternalMovement extends MovementModel {
 		return this.intialLocation;
 	}
 
+	@Override
+	public boolean isPredictable() {
+		return false; /* locations come from the external source */
+	}
+
 	@Override
 	public boolean isActive() {
 		return isActive;
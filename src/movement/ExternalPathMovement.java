@@ -69,6 +69,11 @@ public class ExternalPathMovement extends MovementModel {
 		this.init(); // Can only initialize after the host has been set
 	}
 
+	@Override
+	public boolean isPredictable() {
+		return false; /* locations come from the external source */
+	}
+
 	@Override
 	public boolean isActive() {
 		double t = SimClock.getTime();
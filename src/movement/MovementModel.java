@@ -232,6 +232,17 @@ public abstract class MovementModel {
 		return ah.isActive();
 	}
 
+	/**
+	 * Returns true if the node's future locations are known from its current
+	 * path, i.e., the model is always active and it moves the node only
+	 * using the paths returned by {@link #getPath()}. Models that move the
+	 * node in other ways must override this and return false.
+	 * @return true if the node's movement is predictable
+	 */
+	public boolean isPredictable() {
+		return ah.isAlwaysActive();
+	}
+
 	/**
 	 * Returns a sim time when the next path is available. This implementation
 	 * returns a random time in future that is {@link #WAIT_TIME} from now.
@@ -9,6 +9,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import core.AckListener;
 import core.DTNHost;
 import core.Message;
 import core.MessageListener;
@@ -20,8 +21,11 @@ import core.MessageListener;
  * <P><strong>Note:</strong> if some statistics could not be created (e.g.
  * overhead ratio if no messages were delivered) "NaN" is reported for
  * double values and zero for integer median(s).
+ * If routers exchange acknowledgements with the delta sync, the number
+ * of acknowledgements sent and the bytes they took are reported too.
  */
-public class MessageStatsReport extends Report implements MessageListener {
+public class MessageStatsReport extends Report implements MessageListener,
+		AckListener {
 	private Map<String, Double> creationTimes;
 	private List<Double> latencies;
 	private List<Integer> hopCounts;
@@ -37,6 +41,8 @@ public class MessageStatsReport extends Report implements MessageListener {
 	private int nrofResponseReqCreated;
 	private int nrofResponseDelivered;
 	private int nrofDelivered;
+	private int nrofAcksSent;
+	private long ackBytes;
 
 	/**
 	 * Constructor.
@@ -63,6 +69,8 @@ public class MessageStatsReport extends Report implements MessageListener {
 		this.nrofResponseReqCreated = 0;
 		this.nrofResponseDelivered = 0;
 		this.nrofDelivered = 0;
+		this.nrofAcksSent = 0;
+		this.ackBytes = 0;
 	}
 
 
@@ -102,7 +110,7 @@ public class MessageStatsReport extends Report implements MessageListener {
 			this.latencies.add(getSimTime() -
 				this.creationTimes.get(m.getId()) );
 			this.nrofDelivered++;
-			this.hopCounts.add(m.getHops().size() - 1);
+			this.hopCounts.add(m.getHopCount());
 
 			if (m.isResponse()) {
 				this.rtt.add(getSimTime() -	m.getRequest().getCreationTime());
@@ -135,6 +143,17 @@ public class MessageStatsReport extends Report implements MessageListener {
 	}
 
 
+	public void acksTransferred(DTNHost from, DTNHost to, int nrofAcks,
+			int bytes) {
+		if (isWarmup()) {
+			return;
+		}
+
+		this.nrofAcksSent += nrofAcks;
+		this.ackBytes += bytes;
+	}
+
+
 	@Override
 	public void done() {
 		write("Message stats for scenario " + getScenarioName() +
@@ -174,6 +193,10 @@ public class MessageStatsReport extends Report implements MessageListener {
 			"\nrtt_avg: " + getAverage(this.rtt) +
 			"\nrtt_med: " + getMedian(this.rtt)
 			;
+		if (this.nrofAcksSent > 0) {
+			statsText += "\nacks_sent: " + this.nrofAcksSent +
+				"\nack_bytes: " + this.ackBytes;
+		}
 
 		write(statsText);
 		super.done();
@@ -6,18 +6,23 @@ package routing;
 
 import java.util.*;
 
+import routing.util.AckStore;
+import routing.util.CandidateQueue;
 import routing.util.EnergyModel;
 import routing.util.MessageTransferAcceptPolicy;
 import routing.util.RoutingInfo;
 import util.Tuple;
 
+import core.AckListener;
 import core.Connection;
 import core.DTNHost;
 import core.Message;
 import core.MessageListener;
 import core.NetworkInterface;
 import core.Settings;
+import core.SettingsError;
 import core.SimClock;
+import input.TransferDoneQueue;
 
 /**
  * Superclass of active routers. Contains convenience methods (e.g.
@@ -37,18 +42,73 @@ public abstract class ActiveRouter extends MessageRouter {
 	public static final String RESPONSE_PREFIX = "R_";
 	/** how often TTL check (discarding old messages) is performed */
 	public static int TTL_CHECK_INTERVAL = 60;
+	/** Maximum parallel sends -setting id ({@value}). Integer valued. How
+	 * many messages the router may send at the same time over different
+	 * connections. Values above one are meant for interfaces whose
+	 * connections share the bandwidth of the interface (see
+	 * {@link interfaces.SharedBandwidthInterface}). Default=1. */
+	public static final String MAX_PARALLEL_SENDS_S = "maxParallelSends";
+	/** Maximum parallel receives -setting id ({@value}). Integer valued.
+	 * How many messages the router may receive at the same time over
+	 * different connections. Default=1. If both maximums are one, the router
+	 * doesn't send and receive at the same time either. */
+	public static final String MAX_PARALLEL_RECEIVES_S =
+		"maxParallelReceives";
+
 	/** connection(s) that are currently used for sending */
-	protected ArrayLit<Connection> sendingConnections;
+	protected ArrayList<Connection> sendingConnections;
+	private int maxParallelSends;
+	private int maxParallelReceives;
 	/** sim time when the last TTL check was done */
 	private double lastTtlCheck;
 
 	private MessageTransferAcceptPolicy policy;
 	private EnergyModel energy;
 
+	/** Acknowledgements -setting id ({@value}). Boolean valued. If set to
+	 * true, routers exchange the IDs of the delivered messages when they
+	 * meet and delete those messages from their buffers. The IDs are kept in
+	 * an {@link AckStore} that is selected with the
+	 * {@link AckStore#ACK_STORE_S} setting. Default=false. */
 	public static final String ACKNOWLEDGEMENTS = "acknowledgements";
 	protected boolean isACKenabled;
 
-	protected Set<String> ackedMessageIds;
+	/** Delta ACK exchange -setting id ({@value}). Boolean valued. If set
+	 * to true, routers keep a log of the ACKs in the order they learned them
+	 * and remember how far they have received each peer's log, so that only
+	 * the new ACKs are exchanged when the peers meet again. Default=false
+	 * (the whole ACK stores are merged). */
+	public static final String ACK_DELTA_SYNC_S = "ackDeltaSync";
+	/** ACK size -setting id ({@value}). Number of bytes each ACK takes when
+	 * exchanged with the delta sync. The bytes are charged to the connection
+	 * (see {@link Connection#addControlData(int)}) so that the ACKs delay
+	 * the message transfers. Default=0 (ACKs aren't charged). */
+	public static final String ACK_SIZE_S = "ackSize";
+
+	/** messages that are known to have reached the final destination */
+	protected AckStore acks;
+	/** IDs of the ACKed messages that (still) are in the buffer */
+	private Set<String> ackedInBuffer;
+	private boolean ackDeltaSync;
+	private int ackSize;
+	/** indexes of the ACKed messages in the order they were ACKed */
+	private int[] ackLog;
+	private int ackLogSize;
+	/** how far the ACK logs of other hosts have been received */
+	private Map<DTNHost, Integer> ackLogPositions;
+	/** message listeners (that may also be ACK listeners) */
+	private List<MessageListener> mListeners;
+
+	/** reused queue of forwarding candidates (created on demand) */
+	private CandidateQueue candidates;
+	/** incremented when the messages, connections or transfers of this
+	 * router change */
+	private int forwardingVersion;
+	/** forwarding version of this router (-1 = not idle) and the sum of
+	 * the forwarding versions of the peers when the candidates were last
+	 * tried without starting a transfer */
+	private int idleVersion = -1;
+	private long idlePeerVersions;
 
 	/**
 	 * Constructor. Creates a new message router based on the settings in
@@ -62,7 +122,19 @@ public abstract class ActiveRouter extends MessageRouter {
 
 		this.deleteDelivered = s.getBoolean(DELETE_DELIVERED_S, false);
 
-		this.isACKenabled = s.getBoolean(ACKNOWLEDGEMENTS);
+		this.maxParallelSends = s.getInt(MAX_PARALLEL_SENDS_S, 1);
+		this.maxParallelReceives = s.getInt(MAX_PARALLEL_RECEIVES_S, 1);
+		if (this.maxParallelSends < 1 || this.maxParallelReceives < 1) {
+			throw new SettingsError("Invalid value for " +
+					s.getFullPropertyName(this.maxParallelSends < 1 ?
+					MAX_PARALLEL_SENDS_S : MAX_PARALLEL_RECEIVES_S));
+		}
+
+		this.isACKenabled = s.getBoolean(ACKNOWLEDGEMENTS, false);
+		this.acks = AckStore.createStore(s);
+		this.ackDeltaSync = s.getBoolean(ACK_DELTA_SYNC_S, false);
+		this.ackSize = s.getInt(ACK_SIZE_S, 0);
+		s.ensurePositiveValue(this.ackSize, ACK_SIZE_S);
 
 		if (s.contains(EnergyModel.INIT_ENERGY_S)) {
 			this.energy = new EnergyModel(s);
@@ -78,9 +150,19 @@ public abstract class ActiveRouter extends MessageRouter {
 	protected ActiveRouter(ActiveRouter r) {
 		super(r);
 		this.deleteDelivered = r.deleteDelivered;
+		this.maxParallelSends = r.maxParallelSends;
+		this.maxParallelReceives = r.maxParallelReceives;
 		this.policy = r.policy;
 		this.isACKenabled = r.isACKenabled;
-		this.ackedMessageIds = new HashSet<String>();
+		this.acks = r.acks.replicate();
+		this.ackedInBuffer = new HashSet<String>();
+		this.ackDeltaSync = r.ackDeltaSync;
+		this.ackSize = r.ackSize;
+		if (this.ackDeltaSync) {
+			this.ackLog = new int[16];
+			this.ackLogSize = 0;
+			this.ackLogPositions = new HashMap<DTNHost, Integer>();
+		}
 		this.energy = (r.energy != null ? r.energy.replicate() : null);
 	}
 
@@ -89,6 +171,7 @@ public abstract class ActiveRouter extends MessageRouter {
 		super.init(host, mListeners);
 		this.sendingConnections = new ArrayList<Connection>(1);
 		this.lastTtlCheck = 0;
+		this.mListeners = mListeners;
 	}
 
 	/**
@@ -99,19 +182,110 @@ public abstract class ActiveRouter extends MessageRouter {
 	 */
 	@Override
 	public void changedConnection(Connection con) {
+		forwardingStateChanged();
 		if (this.energy != null && con.isUp() && !con.isInitiator(getHost())) {
 			this.energy.reduceDiscoveryEnergy();
 		}
 		if (this.isACKenabled && con.isUp() && con.isInitiator(getHost())) {
-		    ActiveRouter otherRouter = (ActiveRouter) con.getOtherNode(getHost()).getRouter();
-			/* exchange ACKed message data */
-			this.ackedMessageIds.addAll(otherRouter.ackedMessageIds);
-			otherRouter.ackedMessageIds.addAll(this.ackedMessageIds);
-			deleteAckedMessages();
-			otherRouter.deleteAckedMessages();
+			exchangeAcks(con);
 		}
 	}
 
+	/**
+	 * Exchanges the ACKed message data with the router in the other end of
+	 * the connection and deletes the messages that became known to be
+	 * ACKed from both routers' buffers
+	 * @param con The connection to the other router
+	 */
+	protected void exchangeAcks(Connection con) {
+		ActiveRouter otherRouter =
+			(ActiveRouter)con.getOtherNode(getHost()).getRouter();
+		int[] learned;
+		int[] otherLearned;
+
+		if (this.ackDeltaSync) {
+			/* neither gets back what it just sent */
+			int logEnd = this.ackLogSize;
+			int otherLogEnd = otherRouter.ackLogSize;
+			learned = this.receiveAcks(otherRouter, otherLogEnd, con);
+			otherLearned = otherRouter.receiveAcks(this, logEnd, con);
+			this.ackLogPositions.put(otherRouter.getHost(),
+					otherRouter.ackLogSize);
+			otherRouter.ackLogPositions.put(getHost(), this.ackLogSize);
+		} else {
+			learned = this.acks.merge(otherRouter.acks);
+			otherLearned = otherRouter.acks.merge(this.acks);
+		}
+
+		deleteAckedMessages(learned);
+		otherRouter.deleteAckedMessages(otherLearned);
+	}
+
+	/**
+	 * Receives the ACKs that another router has added to its log since this
+	 * router last received them
+	 * @param from The router sending the ACKs
+	 * @param logEnd End of the sender's log to send
+	 * @param con The connection the ACKs are sent over
+	 * @return Indexes of the messages that were ACKed in the sender's log
+	 * but not in this router
+	 */
+	private int[] receiveAcks(ActiveRouter from, int logEnd, Connection con) {
+		Integer position = this.ackLogPositions.get(from.getHost());
+		int start = (position != null ? position : 0);
+		int nrofAcks = logEnd - start;
+		if (nrofAcks <= 0) {
+			return new int[0];
+		}
+
+		int bytes = nrofAcks * this.ackSize;
+		if (bytes > 0) {
+			con.addControlData(bytes);
+		}
+		for (MessageListener ml : this.mListeners) {
+			if (ml instanceof AckListener) {
+				((AckListener)ml).acksTransferred(from.getHost(), getHost(),
+						nrofAcks, bytes);
+			}
+		}
+
+		int[] learned = new int[nrofAcks];
+		int nrofLearned = 0;
+		for (int i = start; i < logEnd; i++) {
+			int index = from.ackLog[i];
+			if (addAck(index)) {
+				learned[nrofLearned++] = index;
+			}
+		}
+		return Arrays.copyOf(learned, nrofLearned);
+	}
+
+	/**
+	 * Adds a message to the ACKed messages (and to the ACK log)
+	 * @param id ID of the message
+	 */
+	protected void addAck(String id) {
+		addAck(AckStore.indexOf(id));
+	}
+
+	/**
+	 * Adds a message index to the ACKed messages (and to the ACK log)
+	 * @param index Index of the message
+	 * @return true if the message wasn't ACKed before
+	 */
+	private boolean addAck(int index) {
+		if (!this.acks.add(index)) {
+			return false;
+		}
+		if (this.ackDeltaSync) {
+			if (this.ackLogSize == this.ackLog.length) {
+				this.ackLog = Arrays.copyOf(this.ackLog, this.ackLogSize * 2);
+			}
+			this.ackLog[this.ackLogSize++] = index;
+		}
+		return true;
+	}
+
 	@Override
 	public boolean requestDeliverableMessages(Connection con) {
 		if (isTransferring()) {
@@ -119,15 +293,10 @@ public abstract class ActiveRouter extends MessageRouter {
 		}
 
 		DTNHost other = con.getOtherNode(getHost());
-		/* do a copy to avoid concurrent modification exceptions
-		 * (startTransfer may remove messages) */
-		ArrayList<Message> temp =
-			new ArrayList<Message>(this.getMessageCollection());
-		for (Message m : temp) {
-			if (other == m.getTo()) {
-				if (startTransfer(m, con) == RCV_OK) {
-					return true;
-				}
+		/* a copy, since startTransfer may remove messages */
+		for (Message m : new ArrayList<Message>(getMessagesFor(other))) {
+			if (startTransfer(m, con) == RCV_OK) {
+				return true;
 			}
 		}
 		return false;
@@ -152,14 +321,69 @@ public abstract class ActiveRouter extends MessageRouter {
 
 
 	/**
-	 * Deletes the messages from the message buffer that are known to be ACKed
+	 * Deletes the messages from the message buffer that are known to be
+	 * ACKed. Only the newly ACKed messages and the ACKed messages that
+	 * were left in the buffer earlier are checked, unless it is faster to
+	 * check the whole buffer.
+	 * @param learned Indexes of the newly ACKed messages, or null if they
+	 * aren't known
 	 */
-	private void deleteAckedMessages() {
-		for (String id : this.ackedMessageIds) {
-			if (this.hasMessage(id) && !isSending(id)) {
-				this.deleteMessage(id, false);
+	private void deleteAckedMessages(int[] learned) {
+		if (learned == null ||
+				learned.length + ackedInBuffer.size() > getNrofMessages()) {
+			ackedInBuffer.clear();
+			for (Message m : new ArrayList<Message>(getMessageCollection())) {
+				if (acks.contains(m.getHandle())) {
+					deleteAckedMessage(m.getId());
+				}
+			}
+			return;
+		}
+
+		if (!ackedInBuffer.isEmpty()) {
+			List<String> earlier = new ArrayList<String>(ackedInBuffer);
+			ackedInBuffer.clear();
+			for (String id : earlier) {
+				deleteAckedMessage(id);
 			}
 		}
+		for (int index : learned) {
+			deleteAckedMessage(AckStore.idOf(index));
+		}
+	}
+
+	/**
+	 * Deletes an ACKed message from the buffer (if it is there). Messages
+	 * that are being sent are left in the buffer and tried again later.
+	 * @param id ID of the message
+	 */
+	private void deleteAckedMessage(String id) {
+		if (!this.hasMessage(id)) {
+			return;
+		}
+		if (isSending(id)) {
+			ackedInBuffer.add(id);
+		} else {
+			this.deleteMessage(id, false);
+		}
+	}
+
+	@Override
+	protected void addToMessages(Message m, boolean newMessage) {
+		super.addToMessages(m, newMessage);
+		forwardingStateChanged();
+		if (!acks.isEmpty() && acks.contains(m.getHandle())) {
+			ackedInBuffer.add(m.getId()); /* deleted at the next exchange */
+		}
+	}
+
+	@Override
+	protected Message removeFromMessages(String id) {
+		forwardingStateChanged();
+		if (!ackedInBuffer.isEmpty()) {
+			ackedInBuffer.remove(id);
+		}
+		return super.removeFromMessages(id);
 	}
 
 	@Override
@@ -169,7 +393,10 @@ public abstract class ActiveRouter extends MessageRouter {
 
 		/* was this node the final recipient of the message? */
 		if (isDeliveredMessage(m)) {
-			this.ackedMessageIds.add(id);
+			addAck(id);
+			if (this.hasMessage(id)) {
+				ackedInBuffer.add(id); /* e.g., re-targeted by an app */
+			}
 		}
 
 		/**
@@ -212,6 +439,11 @@ public abstract class ActiveRouter extends MessageRouter {
 			return TRY_LATER_BUSY;
 		}
 
+		if (isParallel() &&
+				this.sendingConnections.size() >= this.maxParallelSends) {
+			return TRY_LATER_BUSY;
+		}
+
 		if (!policy.acceptSending(getHost(),
 				con.getOtherNode(getHost()), con, m)) {
 			return MessageRouter.DENIED_POLICY;
@@ -220,6 +452,7 @@ public abstract class ActiveRouter extends MessageRouter {
 		retVal = con.startTransfer(getHost(), m);
 		if (retVal == RCV_OK) { // started transfer
 			addToSendingConnections(con);
+			transferStateChanged(con);
 		}
 		else if (deleteDelivered && retVal == DENIED_OLD &&
 				m.getTo() == con.getOtherNode(this.getHost())) {
@@ -230,6 +463,27 @@ public abstract class ActiveRouter extends MessageRouter {
 		return retVal;
 	}
 
+	/**
+	 * Returns true if {@link #update()} of this class has nothing to do at
+	 * this time: there are no transfers to finalize, no TTL check is due,
+	 * there is no energy model or applications to update, and no transfer
+	 * can be started (see {@link #canStartTransfer()}). Subclasses whose
+	 * update does nothing else when no transfer can be started can return
+	 * the negation of this from {@link #needsUpdate()}. The next TTL check
+	 * then wakes the router up even if nothing else happens.
+	 * @return true if the update would do nothing
+	 */
+	protected boolean isQuiescent() {
+		if (this.energy != null || hasApplications() ||
+				!this.sendingConnections.isEmpty()) {
+			return false;
+		}
+		if (SimClock.getTime() - lastTtlCheck >= TTL_CHECK_INTERVAL) {
+			return false;
+		}
+		return !canStartTransfer();
+	}
+
 	/**
 	 * Makes rudimentary checks (that we have at least one message and one
 	 * connection) about can this router start transfer.
@@ -259,11 +513,17 @@ public abstract class ActiveRouter extends MessageRouter {
 	 * does not fit into buffer
 	 */
 	protected int checkReceiving(Message m, DTNHost from) {
-		if (isTransferring()) {
+		if (isParallel()) {
+			if (getNrofReceiving() >= this.maxParallelReceives ||
+					isIncomingMessage(m.getId())) {
+				return TRY_LATER_BUSY;
+			}
+		}
+		else if (isTransferring()) {
 			return TRY_LATER_BUSY; // only one connection at a time
 		}
 
-		if ( hasMessage(m.getId()) || isDeliveredMessage(m) ||
+		if ( hasMessage(m) || isDeliveredMessage(m) ||
 				super.isBlacklistedMessage(m.getId())) {
 			return DENIED_OLD; // already seen this message -> reject it
 		}
@@ -344,33 +604,29 @@ public abstract class ActiveRouter extends MessageRouter {
 
 
 	/**
-	 * Returns the oldest (by receive time) message in the message buffer
-	 * (that is not being sent if excludeMsgBeingSent is true).
+	 * Returns the message that the buffer policy would remove first (that
+	 * is not being sent if excludeMsgBeingSent is true). With the default
+	 * policy this is the oldest (by receive time) message; of messages
+	 * received at the same time, the one created first is returned.
 	 * @param excludeMsgBeingSent If true, excludes message(s) that are
 	 * being sent from the oldest message check (i.e. if oldest message is
 	 * being sent, the second oldest message is returned)
 	 * @return The oldest message or null if no message could be returned
 	 * (no messages in buffer or all messages in buffer are being sent and
 	 * exludeMsgBeingSent is true)
+	 * @see routing.util.BufferPolicy
 	 */
 	protected Message getNextMessageToRemove(boolean excludeMsgBeingSent) {
-		Collection<Message> messages = this.getMessageCollection();
-		Message oldest = null;
-		for (Message m : messages) {
-
-			if (excludeMsgBeingSent && isSending(m.getId())) {
+		/* the policy keeps the messages in removal order so only the
+		 * messages being sent need to be skipped */
+		for (Message m : getBufferPolicy().inRemovalOrder()) {
+			if (excludeMsgBeingSent && isSending(m.getHandle())) {
 				continue; // skip the message(s) that router is sending
 			}
-
-			if (oldest == null ) {
-				oldest = m;
-			}
-			else if (oldest.getReceiveTime() > m.getReceiveTime()) {
-				oldest = m;
-			}
+			return m;
 		}
 
-		return oldest;
+		return null;
 	}
 
 	/**
@@ -379,22 +635,34 @@ public abstract class ActiveRouter extends MessageRouter {
 	 * @return a list of message-connections tuples
 	 */
 	protected List<Tuple<Message, Connection>> getMessagesForConnected() {
-		if (getNrofMessages() == 0 || getConnections().size() == 0) {
+		List<Connection> connections = getConnections();
+		if (getNrofMessages() == 0 || connections.size() == 0) {
 			/* no messages -> empty list */
 			return new ArrayList<Tuple<Message, Connection>>(0);
 		}
 
+		DTNHost host = getHost();
 		List<Tuple<Message, Connection>> forTuples =
 			new ArrayList<Tuple<Message, Connection>>();
-		for (Message m : getMessageCollection()) {
-			for (Connection con : getConnections()) {
-				DTNHost to = con.getOtherNode(getHost());
-				if (m.getTo() == to) {
-					forTuples.add(new Tuple<Message, Connection>(m,con));
-				}
+		for (int i=0, n=connections.size(); i<n; i++) {
+			Connection con = connections.get(i);
+			for (Message m : getMessagesFor(con.getOtherNode(host))) {
+				forTuples.add(new Tuple<Message, Connection>(m,con));
 			}
 		}
 
+		if (connections.size() > 1 && forTuples.size() > 1) {
+			/* same order as when going through all the messages */
+			Collections.sort(forTuples,
+					new Comparator<Tuple<Message, Connection>>() {
+				public int compare(Tuple<Message, Connection> t1,
+						Tuple<Message, Connection> t2) {
+					return getBufferPosition(t1.getKey()) -
+						getBufferPosition(t2.getKey());
+				}
+			});
+		}
+
 		return forTuples;
 	}
 
@@ -423,6 +691,109 @@ public abstract class ActiveRouter extends MessageRouter {
 		return null;
 	}
 
+	/**
+	 * Returns the (cleared) queue where the candidates for
+	 * {@link #tryCandidates(CandidateQueue)} can be collected. Candidates
+	 * with equal keys are ordered by the send queue mode. The same queue
+	 * is returned on every call.
+	 * @return An empty candidate queue
+	 */
+	protected CandidateQueue getCandidateQueue() {
+		if (this.candidates == null) {
+			this.candidates = new CandidateQueue(new Comparator<Message>() {
+				public int compare(Message m1, Message m2) {
+					return compareByQueueMode(m1, m2);
+				}
+			});
+		}
+		else {
+			this.candidates.clear();
+		}
+		return this.candidates;
+	}
+
+	/**
+	 * Tries to send the candidates in the order of the queue until one of
+	 * the connections starts transferring or all candidates have been
+	 * tried. Works like {@link #tryMessagesForConnected(List)} for a list
+	 * sorted by the candidate keys, but doesn't sort the candidates that
+	 * are not needed. If no transfer is started, the router is marked
+	 * idle (see {@link #isForwardingIdle()}).
+	 * @param queue The candidates to try
+	 * @return The message and connection of the candidate whose transfer
+	 * started or null if no transfer was started
+	 */
+	protected Tuple<Message, Connection> tryCandidates(CandidateQueue queue) {
+		for (int i = queue.poll(); i >= 0; i = queue.poll()) {
+			Message m = queue.getMessage(i);
+			Connection con = queue.getConnection(i);
+			if (startTransfer(m, con) == RCV_OK) {
+				this.idleVersion = -1;
+				return new Tuple<Message, Connection>(m, con);
+			}
+		}
+
+		this.idleVersion = this.forwardingVersion;
+		this.idlePeerVersions = getPeerForwardingVersions();
+		return null;
+	}
+
+	/**
+	 * Returns true if the candidates were tried with
+	 * {@link #tryCandidates(CandidateQueue)} without starting a transfer,
+	 * and the messages, connections and transfers of neither this router
+	 * nor the routers of the connected hosts have changed since. Routers
+	 * whose choice of candidates depends only on those can then skip
+	 * collecting and trying the candidates again.
+	 * @return true if nothing has changed since an unsuccessful try
+	 */
+	protected boolean isForwardingIdle() {
+		return this.idleVersion == this.forwardingVersion &&
+			this.idlePeerVersions == getPeerForwardingVersions();
+	}
+
+	/**
+	 * Marks that the messages, connections or transfers of this router
+	 * have changed (see {@link #isForwardingIdle()}). Subclasses that
+	 * override {@link #changedConnection(Connection)} without calling it
+	 * must call this.
+	 */
+	protected void forwardingStateChanged() {
+		this.forwardingVersion++;
+	}
+
+	/**
+	 * Marks a transfer started, finished or aborted on a connection as a
+	 * change of the routers of both hosts
+	 * @param con The connection
+	 */
+	private void transferStateChanged(Connection con) {
+		forwardingStateChanged();
+		MessageRouter other = con.getOtherNode(getHost()).getRouter();
+		if (other instanceof ActiveRouter) {
+			((ActiveRouter)other).forwardingStateChanged();
+		}
+	}
+
+	/**
+	 * Returns the sum of the forwarding versions of the routers of the
+	 * connected hosts. The versions only grow, so the sum changes whenever
+	 * any of them changes (as long as the connections stay the same).
+	 * @return The sum of the versions
+	 */
+	private long getPeerForwardingVersions() {
+		long sum = 0;
+		List<Connection> connections = getConnections();
+		for (int i=0, n=connections.size(); i<n; i++) {
+			MessageRouter other =
+				connections.get(i).getOtherNode(getHost()).getRouter();
+			if (other instanceof ActiveRouter) {
+				sum += ((ActiveRouter)other).forwardingVersion;
+			}
+		}
+		return sum;
+	}
+
 	 /**
 	  * Goes trough the messages until the other node accepts one
 	  * for receiving (or doesn't accept any). If a transfer is started, the
@@ -541,20 +912,33 @@ public abstract class ActiveRouter extends MessageRouter {
 
 	/**
 	 * Adds a connections to sending connections which are monitored in
-	 * the update.
+	 * the update. The completion of the transfer is scheduled if scheduled
+	 * transfers are enabled (see {@link DTNHost#getTransferDoneQueue()}).
 	 * @see #update()
 	 * @param con The connection to add
 	 */
 	protected void addToSendingConnections(Connection con) {
 		this.sendingConnections.add(con);
+		TransferDoneQueue transfersDone = getHost().getTransferDoneQueue();
+		if (transfersDone != null) {
+			transfersDone.schedule(con, getHost());
+		}
 	}
 
 	/**
 	 * Returns true if this router is transferring something at the moment or
-	 * some transfer has not been finalized.
+	 * some transfer has not been finalized. If parallel transfers are
+	 * allowed (see {@link #MAX_PARALLEL_SENDS_S} and
+	 * {@link #MAX_PARALLEL_RECEIVES_S}), returns true only if the router
+	 * can neither start nor accept more transfers.
 	 * @return true if this router is transferring something
 	 */
 	public boolean isTransferring() {
+		if (isParallel()) {
+			return this.sendingConnections.size() >= this.maxParallelSends &&
+				getNrofReceiving() >= this.maxParallelReceives;
+		}
+
 		if (this.sendingConnections.size() > 0) {
 			return true; // sending something
 		}
@@ -575,6 +959,32 @@ public abstract class ActiveRouter extends MessageRouter {
 		return false;
 	}
 
+	/**
+	 * Returns true if the router may send or receive more than one message
+	 * at a time
+	 * @return true if parallel transfers are allowed
+	 */
+	protected boolean isParallel() {
+		return this.maxParallelSends > 1 || this.maxParallelReceives > 1;
+	}
+
+	/**
+	 * Returns the number of messages this router is receiving at the moment
+	 * @return How many connections are transferring a message to this router
+	 */
+	protected int getNrofReceiving() {
+		List<Connection> connections = getConnections();
+		int nrof = 0;
+
+		for (int i=0, n=connections.size(); i<n; i++) {
+			Message m = connections.get(i).getMessage();
+			if (m != null && !isSending(m.getHandle())) {
+				nrof++;
+			}
+		}
+		return nrof;
+	}
+
 	/**
 	 * Returns true if this router is currently sending a message with
 	 * <CODE>msgId</CODE>.
@@ -582,17 +992,33 @@ public abstract class ActiveRouter extends MessageRouter {
 	 * @return True if the message is being sent false if not
 	 */
 	public boolean isSending(String msgId) {
+		return isSending(Message.findHandle(msgId));
+	}
+
+	/**
+	 * Returns true if this router is currently sending a message with
+	 * the given handle.
+	 * @param handle The handle of the message
+	 * @return True if the message is being sent false if not
+	 * @see Message#getHandle()
+	 */
+	private boolean isSending(int handle) {
 		for (Connection con : this.sendingConnections) {
 			if (con.getMessage() == null) {
 				continue; // transmission is finalized
 			}
-			if (con.getMessage().getId().equals(msgId)) {
+			if (con.getMessage().getHandle() == handle) {
 				return true;
 			}
 		}
 		return false;
 	}
 
+	@Override
+	public boolean hasEnergyModel() {
+		return this.energy != null;
+	}
+
 	/**
 	 * Returns true if the node has energy left (i.e., energy modeling is
 	 * enabled OR (is enabled and model has energy left))
@@ -612,17 +1038,16 @@ public abstract class ActiveRouter extends MessageRouter {
 	public void update() {
 		super.update();
 
-		/* in theory we can have multiple sending connections even though
-		  currently all routers allow only one concurrent sending connection */
+		/* there can be multiple sending connections if parallel sends are
+		  allowed (see MAX_PARALLEL_SENDS_S) */
 		for (int i=0; i<this.sendingConnections.size(); ) {
 			boolean removeCurrent = false;
 			Connection con = sendingConnections.get(i);
 
 			/* finalize ready transfers */
-			if (con.isMessageTransferred()) {
+			if (isTransferDone(con)) {
 				if (con.getMessage() != null) {
-					transferDone(con);
-					con.finalizeTransfer();
+					finalizeSending(con);
 				} /* else: some other entity aborted transfer */
 				removeCurrent = true;
 			}
@@ -636,11 +1061,7 @@ public abstract class ActiveRouter extends MessageRouter {
 			}
 
 			if (removeCurrent) {
-				// if the message being sent was holding excess buffer, free it
-				if (this.getFreeBufferSize() < 0) {
-					this.makeRoomForMessage(0);
-				}
-				sendingConnections.remove(i);
+				removeFromSendingConnections(i);
 			}
 			else {
 				/* index increase needed only if nothing was removed */
@@ -662,6 +1083,66 @@ public abstract class ActiveRouter extends MessageRouter {
 		}
 	}
 
+	/**
+	 * Returns true if the transfer of a sending connection is done and
+	 * should be finalized in {@link #update()}. Transfers whose completion
+	 * was scheduled are not polled; their completion event finalizes them
+	 * (see {@link #scheduledTransferDone(Connection)}).
+	 * @param con The connection
+	 * @return true if the transfer can be finalized
+	 */
+	private boolean isTransferDone(Connection con) {
+		if (getHost().getTransferDoneQueue() != null &&
+				con.getMessage() != null && con.getTransferDoneTime() >= 0) {
+			return false;
+		}
+		return con.isMessageTransferred();
+	}
+
+	/**
+	 * Finalizes a transfer whose completion was scheduled (see
+	 * {@link #addToSendingConnections(Connection)}). Called by the
+	 * completion event at the end time of the transfer. Nothing is done if
+	 * the connection isn't sending anymore.
+	 * @param con The connection of the transfer
+	 */
+	public void scheduledTransferDone(Connection con) {
+		int index = this.sendingConnections.indexOf(con);
+		if (index < 0 || con.getMessage() == null || !con.isUp()) {
+			return; /* update() takes care of aborted transfers */
+		}
+		finalizeSending(con);
+		removeFromSendingConnections(index);
+	}
+
+	/**
+	 * Finalizes the transfer of a sending connection
+	 * @param con The connection
+	 */
+	private void finalizeSending(Connection con) {
+		Message sent = getMessage(con.getMessage().getId());
+		if (sent != null) {
+			getBufferPolicy().messageForwarded(sent);
+		}
+		transferDone(con);
+		con.finalizeTransfer();
+	}
+
+	/**
+	 * Removes a connection whose transfer was finalized or aborted from the
+	 * sending connections
+	 * @param index Index of the connection in the sending connections
+	 */
+	private void removeFromSendingConnections(int index) {
+		Connection con = this.sendingConnections.get(index);
+		transferStateChanged(con);
+		// if the message being sent was holding excess buffer, free it
+		if (this.getFreeBufferSize() < 0) {
+			this.makeRoomForMessage(0);
+		}
+		this.sendingConnections.remove(index);
+	}
+
 	/**
 	 * Method is called just before a transfer is aborted at {@link #update()}
 	 * due connection going down. This happens on the sending host.
@@ -672,7 +1153,8 @@ public abstract class ActiveRouter extends MessageRouter {
 
 	/**
 	 * Method is called just before a transfer is finalized
-	 * at {@link #update()}.
+	 * at {@link #update()} (or at the scheduled end time of the transfer;
+	 * see {@link #scheduledTransferDone(Connection)}).
 	 * Subclasses that are interested of the event may want to override this.
 	 * @param con The connection whose transfer was finalized
 	 */
@@ -681,7 +1163,7 @@ public abstract class ActiveRouter extends MessageRouter {
 	    DTNHost recipient = con.getOtherNode(getHost());
 		/* was the message delivered to the final recipient? */
 		if (m.getTo() == recipient) {
-			this.ackedMessageIds.add(m.getId()); // yes, add to ACKed messages
+			addAck(m.getId()); // yes, add to ACKed messages
 			this.deleteMessage(m.getId(), false); // delete from buffer
 		}
 	}
@@ -32,6 +32,11 @@ public class DirectDeliveryRouter extends ActiveRouter {
 		}
 	}
 
+	@Override
+	public boolean needsUpdate() {
+		return !isQuiescent();
+	}
+
 	@Override
 	public DirectDeliveryRouter replicate() {
 		return new DirectDeliveryRouter(this);
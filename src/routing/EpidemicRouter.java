@@ -47,6 +47,11 @@ public class EpidemicRouter extends ActiveRouter {
 		this.tryAllMessagesToAllConnections();
 	}
 
+	@Override
+	public boolean needsUpdate() {
+		return !isQuiescent();
+	}
+
 
 	@Override
 	public EpidemicRouter replicate() {
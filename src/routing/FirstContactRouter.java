@@ -38,7 +38,7 @@ public class FirstContactRouter extends ActiveRouter {
 
 		if (recvCheck == RCV_OK) {
 			/* don't accept a message that has already traversed this node */
-			if (m.getHops().contains(getHost())) {
+			if (m.isOnPath(getHost())) {
 				recvCheck = DENIED_OLD;
 			}
 		}
@@ -60,6 +60,11 @@ public class FirstContactRouter extends ActiveRouter {
 		tryAllMessagesToAllConnections();
 	}
 
+	@Override
+	public boolean needsUpdate() {
+		return !isQuiescent();
+	}
+
 	@Override
 	protected void transferDone(Connection con) {
 		/* don't leave a copy for the sender */
@@ -1,12 +1,15 @@
 package routing;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 
+import movement.Path;
 import core.Connection;
 import core.Coord;
 import core.DTNHost;
+import core.DTNSim;
 import core.Message;
 import core.NetworkInterface;
 import core.Settings;
@@ -20,8 +23,22 @@ public class GradRouter extends ActiveRouter {
 	public static final String MSG_COUNT_PROPERTY = GRAD_NS + "." + NROF_COPIES;
 	/** Key for last transfer type */
 	public static final String TRANSFER_TYPE_PROPERTY = GRAD_NS + ".lastTransferType";
+	/** Slot of the number of copies property */
+	private static final int MSG_COUNT_SLOT =
+		Message.registerIntProperty(MSG_COUNT_PROPERTY);
+	/** Slot of the last transfer type property */
+	private static final int TRANSFER_TYPE_SLOT =
+		Message.registerObjectProperty(TRANSFER_TYPE_PROPERTY);
 	
+	/** angles of host-destination pairs at the current host locations */
+	private static AngleCache angleCache;
+
 	private int nrofCopies;
+
+	static {
+		DTNSim.registerForReset(GradRouter.class.getCanonicalName());
+		reset();
+	}
 	
 	public GradRouter(Settings s) {
 		super(s);
@@ -64,7 +81,7 @@ public class GradRouter extends ActiveRouter {
 			}
 			
 			for (Message m : messageCollection) {
-				if (otherRouter.hasMessage(m.getId())) {
+				if (otherRouter.hasMessage(m)) {
 					continue;
 				}
 				MessageTransferScheme messageTransferScheme = 
@@ -83,7 +100,7 @@ public class GradRouter extends ActiveRouter {
 				 * accompanied by an increase in overhead ratio and latency. What shall
 				 * be done?
 				 */
-				if ((Integer)m.getProperty(MSG_COUNT_PROPERTY) <= 0 &&
+				if (m.getIntProperty(MSG_COUNT_SLOT) <= 0 &&
 						messageTransferScheme != MessageTransferScheme.COMPLETE_TRANSFER)
 				continue;
 				/* There's a problem. This property is set for the message and once set,
@@ -107,11 +124,11 @@ public class GradRouter extends ActiveRouter {
 		for (MessageTuple t : messages) {
 			Message m = t.getMesssage();
 			Connection con = t.getConnection();
-			m.updateProperty(TRANSFER_TYPE_PROPERTY, t.getScheme());
+			m.setObjectProperty(TRANSFER_TYPE_SLOT, t.getScheme());
 			if (startTransfer(m, con) == RCV_OK) {
 				return t;
 			}
-			m.updateProperty(TRANSFER_TYPE_PROPERTY, null);
+			m.setObjectProperty(TRANSFER_TYPE_SLOT, null);
 		}
 		return null;
 	}
@@ -119,8 +136,9 @@ public class GradRouter extends ActiveRouter {
 	@Override
 	public Message messageTransferred(String id, DTNHost from) {
 		Message msg = super.messageTransferred(id, from);
-		Integer nrofCopies = (Integer) msg.getProperty(MSG_COUNT_PROPERTY);
-		MessageTransferScheme messageTransferScheme = (MessageTransferScheme) msg.getProperty(TRANSFER_TYPE_PROPERTY);
+		int nrofCopies = msg.getIntProperty(MSG_COUNT_SLOT);
+		MessageTransferScheme messageTransferScheme =
+			(MessageTransferScheme)msg.getObjectProperty(TRANSFER_TYPE_SLOT);
 
 		/* In case of complete transfer, the nrofCopies does not need to be
 		 * changed whereas in case of no transfer, this function will never
@@ -133,14 +151,14 @@ public class GradRouter extends ActiveRouter {
 				messageTransferScheme == null) {
 			nrofCopies = 1;
 		}
-		msg.updateProperty(MSG_COUNT_PROPERTY, nrofCopies);
-		msg.updateProperty(TRANSFER_TYPE_PROPERTY, null);
+		msg.setIntProperty(MSG_COUNT_SLOT, nrofCopies);
+		msg.setObjectProperty(TRANSFER_TYPE_SLOT, null);
 		return msg;
 	}
 	
 	@Override
 	protected void transferDone(Connection con) {
-		Integer newNrofCopies;
+		int newNrofCopies;
 		MessageTransferScheme msgTransferScheme;
 		String msgId = con.getMessage().getId();
 		
@@ -148,8 +166,9 @@ public class GradRouter extends ActiveRouter {
 		Message m = getMessage(msgId);
 		if (m == null) return;
 		
-		newNrofCopies = (Integer) m.getProperty(MSG_COUNT_PROPERTY);
-		msgTransferScheme = (MessageTransferScheme) m.getProperty(TRANSFER_TYPE_PROPERTY);
+		newNrofCopies = m.getIntProperty(MSG_COUNT_SLOT);
+		msgTransferScheme =
+			(MessageTransferScheme)m.getObjectProperty(TRANSFER_TYPE_SLOT);
 
 		if (msgTransferScheme == MessageTransferScheme.BINARY) {
 			newNrofCopies /= 2;
@@ -160,8 +179,8 @@ public class GradRouter extends ActiveRouter {
 		else if (msgTransferScheme == MessageTransferScheme.NAIVE) {
 			newNrofCopies--;
 		}
-		m.updateProperty(MSG_COUNT_PROPERTY, newNrofCopies);
-		m.updateProperty(TRANSFER_TYPE_PROPERTY, null);
+		m.setIntProperty(MSG_COUNT_SLOT, newNrofCopies);
+		m.setObjectProperty(TRANSFER_TYPE_SLOT, null);
 	}
 	
 	@Override
@@ -169,8 +188,8 @@ public class GradRouter extends ActiveRouter {
 		makeRoomForNewMessage(msg.getSize());
 		
 		msg.setTtl(this.msgTtl);
-		msg.addProperty(MSG_COUNT_PROPERTY, new Integer(nrofCopies));
-		msg.addProperty(TRANSFER_TYPE_PROPERTY, null);
+		msg.setIntProperty(MSG_COUNT_SLOT, nrofCopies);
+		msg.setObjectProperty(TRANSFER_TYPE_SLOT, null);
 		addToMessages(msg, true);
 		return true;
 	}
@@ -199,47 +218,15 @@ public class GradRouter extends ActiveRouter {
 	}
 	
 	private double[] getAngles(DTNHost from, DTNHost to) {
-		Coord fromCoord = from.getLocation();
-		Coord toCoord = to.getLocation();
-		double toRadioRange = getRadioRange(to);
-		double alpha = Double.NaN;
-		if (from.getPath()!=null) {
-			alpha = getAlpha(fromCoord, toCoord, from.getPath().getCurrentWaypoint());
-		}
-		double theta = getTheta(fromCoord, toCoord, toRadioRange);
-		return new double[]{alpha, theta};
+		AngleCache cache = angleCache.forTime(getHost().getLocationTime());
+		int i = cache.indexOf(from, to, getRadioRange(to));
+		return new double[]{cache.alphas[i], cache.thetas[i]};
 	}
 	
 	private double getProbability(DTNHost from, DTNHost to){
-		double probability;
-		double[] angles = getAngles(from, to);
-		double alpha = angles[0];
-		double theta = angles[1];
-		if (Double.isNaN(alpha)) {
-			probability = Double.NEGATIVE_INFINITY;
-		}
-		probability = (theta - alpha)/theta;
-		//System.out.println(alpha+"\t"+theta+"\t"+probability);
-		
-		return probability;
-	}
-
-	private double getTheta(Coord fromCoord, Coord toCoord, double toRadioRange) {
-		double distance = fromCoord.distance(toCoord) ;
-		double theta = Math.atan(toRadioRange/distance);
-		return theta;
-	}
-
-	private double getAlpha(Coord fromCoord, Coord toCoord, Coord nextWaypoint) {
-		double slopePath = getSlope(fromCoord, nextWaypoint);
-		double slopeDest = getSlope(fromCoord, toCoord);
-		double alpha = Math.abs(Math.atan(slopePath) - Math.atan(slopeDest));
-		return alpha;
-	}
-
-	private double getSlope(Coord from, Coord to) {
-		double slope = (to.getY() - from.getY())/(to.getX() - from.getX());
-		return slope;
+		AngleCache cache = angleCache.forTime(getHost().getLocationTime());
+		int i = cache.indexOf(from, to, getRadioRange(to));
+		return cache.probabilities[i];
 	}
 
 	private double getRadioRange(DTNHost to) {
@@ -251,6 +238,188 @@ public class GradRouter extends ActiveRouter {
 		GradRouter r = new GradRouter(this);	
 		return r;
 	}
+
+	/**
+	 * Clears the angle cache
+	 */
+	public static void reset() {
+		angleCache = new AngleCache();
+	}
+
+	/**
+	 * Snapshot of the host locations and current waypoints, and of the
+	 * angles (and probabilities) calculated from them for host-destination
+	 * pairs. Hosts move only once per update interval, but the same pairs
+	 * are looked up for every message and connection of every host, so
+	 * the values are calculated once for each location time. The host
+	 * coordinates are read to primitive arrays when a host is first needed
+	 * and the pairs are kept in an open addressing hash table.
+	 */
+	private static class AngleCache {
+		private static final int INITIAL_CAPACITY = 64;
+
+		/** location time of the snapshot */
+		private double time = Double.NaN;
+		/** location times the hosts' coordinates were read (by address) */
+		private double[] hostTimes = new double[0];
+		private double[] xs = new double[0];
+		private double[] ys = new double[0];
+		/** current waypoints of the hosts (NaN if the host has no path) */
+		private double[] wxs = new double[0];
+		private double[] wys = new double[0];
+
+		/** (from address, to address) pairs + 1 of the table (0 = empty) */
+		private long[] pairs = new long[INITIAL_CAPACITY];
+		private double[] ranges = new double[INITIAL_CAPACITY];
+		private double[] alphas = new double[INITIAL_CAPACITY];
+		private double[] thetas = new double[INITIAL_CAPACITY];
+		private double[] probabilities = new double[INITIAL_CAPACITY];
+		private int nrofPairs = 0;
+
+		/**
+		 * Makes sure the snapshot is for the given location time
+		 * @param locationTime The location time of the hosts
+		 * @return This cache
+		 */
+		public AngleCache forTime(double locationTime) {
+			if (locationTime != time) {
+				time = locationTime;
+				Arrays.fill(pairs, 0);
+				nrofPairs = 0;
+			}
+			return this;
+		}
+
+		/**
+		 * Returns the table index of a host-destination pair, calculating
+		 * the values of the pair if they aren't in the table yet
+		 * @param from The host
+		 * @param to The destination
+		 * @param range Radio range used for the angle of the destination
+		 * @return Index of the pair's values
+		 */
+		public int indexOf(DTNHost from, DTNHost to, double range) {
+			int f = from.getAddress();
+			int t = to.getAddress();
+			long key = (((long)f << 32) | (t & 0xFFFFFFFFL)) + 1;
+			int mask = pairs.length - 1;
+			int i = hash(key) & mask;
+			for (; pairs[i] != 0; i = (i + 1) & mask) {
+				if (pairs[i] == key) {
+					if (ranges[i] != range) {
+						calculate(i, f, t, range);
+					}
+					return i;
+				}
+			}
+
+			readHost(from);
+			readHost(to);
+			pairs[i] = key;
+			calculate(i, f, t, range);
+			nrofPairs++;
+			if (nrofPairs * 2 > pairs.length) {
+				resize(pairs.length * 2);
+				return indexOf(from, to, range);
+			}
+			return i;
+		}
+
+		/**
+		 * Calculates the values of a pair (like {@link GradRouter} used to
+		 * calculate them directly from the host locations)
+		 */
+		private void calculate(int i, int f, int t, double range) {
+			double alpha = Double.NaN;
+			if (!Double.isNaN(wxs[f])) {
+				double slopePath = (wys[f] - ys[f])/(wxs[f] - xs[f]);
+				double slopeDest = (ys[t] - ys[f])/(xs[t] - xs[f]);
+				alpha = Math.abs(Math.atan(slopePath) - Math.atan(slopeDest));
+			}
+			double dx = xs[f] - xs[t];
+			double dy = ys[f] - ys[t];
+			double distance = Math.sqrt(dx*dx + dy*dy);
+			double theta = Math.atan(range/distance);
+
+			ranges[i] = range;
+			alphas[i] = alpha;
+			thetas[i] = theta;
+			/* a NaN alpha (no path) gives a NaN probability */
+			probabilities[i] = (theta - alpha)/theta;
+		}
+
+		/**
+		 * Reads the coordinates of a host to the snapshot (if they haven't
+		 * been read for the current location time)
+		 * @param host The host
+		 */
+		private void readHost(DTNHost host) {
+			int a = host.getAddress();
+			if (a >= hostTimes.length) {
+				int size = Math.max(a + 1, hostTimes.length * 2);
+				int old = hostTimes.length;
+				hostTimes = Arrays.copyOf(hostTimes, size);
+				Arrays.fill(hostTimes, old, size, Double.NaN);
+				xs = Arrays.copyOf(xs, size);
+				ys = Arrays.copyOf(ys, size);
+				wxs = Arrays.copyOf(wxs, size);
+				wys = Arrays.copyOf(wys, size);
+			}
+			if (hostTimes[a] == time) {
+				return;
+			}
+			Coord c = host.getLocation();
+			xs[a] = c.getX();
+			ys[a] = c.getY();
+			Path p = host.getPath();
+			if (p != null) {
+				Coord w = p.getCurrentWaypoint();
+				wxs[a] = w.getX();
+				wys[a] = w.getY();
+			} else {
+				wxs[a] = Double.NaN;
+				wys[a] = Double.NaN;
+			}
+			hostTimes[a] = time;
+		}
+
+		private static int hash(long key) {
+			long h = key * 0x9E3779B97F4A7C15L;
+			return (int)(h ^ (h >>> 32));
+		}
+
+		/**
+		 * Rehashes the pairs to a table of the new size
+		 * @param capacity The new size (a power of two)
+		 */
+		private void resize(int capacity) {
+			long[] oldPairs = pairs;
+			double[] oldRanges = ranges;
+			double[] oldAlphas = alphas;
+			double[] oldThetas = thetas;
+			double[] oldProbabilities = probabilities;
+			pairs = new long[capacity];
+			ranges = new double[capacity];
+			alphas = new double[capacity];
+			thetas = new double[capacity];
+			probabilities = new double[capacity];
+			int mask = capacity - 1;
+			for (int i = 0; i < oldPairs.length; i++) {
+				if (oldPairs[i] == 0) {
+					continue;
+				}
+				int j = hash(oldPairs[i]) & mask;
+				while (pairs[j] != 0) {
+					j = (j + 1) & mask;
+				}
+				pairs[j] = oldPairs[i];
+				ranges[j] = oldRanges[i];
+				alphas[j] = oldAlphas[i];
+				thetas[j] = oldThetas[i];
+				probabilities[j] = oldProbabilities[i];
+			}
+		}
+	}
 	
 	private class MessageTuple {
 		private Message msg;
@@ -51,16 +51,9 @@ public class MaxPropRouter extends ActiveRouter {
 	/** meeting probabilities of all hosts from this host's point of view
 	 * mapped using host's network address */
 	private Map<Integer, MeetingProbabilitySet> allProbs;
-	/** the cost-to-node calculator */
+	/** the cost-to-node calculator (caches the costs until it is told
+	 * that the meeting probabilities have changed) */
 	private MaxPropDijkstra dijkstra;
-	/** IDs of the messages that are known to have reached the final dst */
-	private Set<String> ackedMessageIds;
-	/** mapping of the current costs for all messages. This should be set to
-	 * null always when the costs should be updated (a host is met or a new
-	 * message is received) */
-	private Map<Integer, Double> costsForMessages;
-	/** From host of the last cost calculation */
-	private DTNHost lastCostFrom;
 
 	/** Map of which messages have been sent to which hosts from this host */
 	private Map<DTNHost, Set<String>> sentMessages;
@@ -115,7 +108,6 @@ public class MaxPropRouter extends ActiveRouter {
 		this.probs = new MeetingProbabilitySet(probSetMaxSize, this.alpha);
 		this.allProbs = new HashMap<Integer, MeetingProbabilitySet>();
 		this.dijkstra = new MaxPropDijkstra(this.allProbs);
-		this.ackedMessageIds = new HashSet<String>();
 		this.avgSamples = new int[BYTES_TRANSFERRED_AVG_SAMPLES];
 		this.sentMessages = new HashMap<DTNHost, Set<String>>();
 	}
@@ -125,8 +117,6 @@ public class MaxPropRouter extends ActiveRouter {
 		super.changedConnection(con);
 
 		if (con.isUp()) { // new connection
-			this.costsForMessages = null; // invalidate old cost estimates
-
 			if (con.isInitiator(getHost())) {
 				/* initiator performs all the actions on behalf of the
 				 * other node too (so that the meeting probs are updated
@@ -138,28 +128,32 @@ public class MaxPropRouter extends ActiveRouter {
 				" with other routers of same type";
 				MaxPropRouter otherRouter = (MaxPropRouter)mRouter;
 
-				/* exchange ACKed message data */
-				this.ackedMessageIds.addAll(otherRouter.ackedMessageIds);
-				otherRouter.ackedMessageIds.addAll(this.ackedMessageIds);
-				deleteAckedMessages();
-				otherRouter.deleteAckedMessages();
+				/* exchange ACKed message data (ActiveRouter already did it
+				 * if acknowledgements are enabled) */
+				if (!this.isACKenabled) {
+					exchangeAcks(con);
+				}
 
 				/* update both meeting probabilities */
 				probs.updateMeetingProbFor(otherHost.getAddress());
+				dijkstra.probsChanged(getHost().getAddress());
 				otherRouter.probs.updateMeetingProbFor(getHost().getAddress());
+				otherRouter.dijkstra.probsChanged(otherHost.getAddress());
 
 				/* exchange the transitive probabilities */
 				this.updateTransitiveProbs(otherRouter.allProbs);
 				otherRouter.updateTransitiveProbs(this.allProbs);
-				this.allProbs.put(otherHost.getAddress(),
+				this.setProbs(otherHost.getAddress(),
 						otherRouter.probs.replicate());
-				otherRouter.allProbs.put(getHost().getAddress(),
+				otherRouter.setProbs(getHost().getAddress(),
 						this.probs.replicate());
 			}
 		}
 		else {
 			/* connection went down, update transferred bytes average */
 			updateTransferredBytesAvg(con.getTotalBytesTransferred());
+			/* costs from the other host are not needed anymore */
+			dijkstra.removeSource(con.getOtherNode(getHost()).getAddress());
 		}
 	}
 
@@ -174,31 +168,19 @@ public class MaxPropRouter extends ActiveRouter {
 			MeetingProbabilitySet myMps = this.allProbs.get(e.getKey());
 			if (myMps == null ||
 				e.getValue().getLastUpdateTime() > myMps.getLastUpdateTime() ) {
-				this.allProbs.put(e.getKey(), e.getValue().replicate());
+				this.setProbs(e.getKey(), e.getValue().replicate());
 			}
 		}
 	}
 
 	/**
-	 * Deletes the messages from the message buffer that are known to be ACKed
+	 * Sets the meeting probabilities of a host
+	 * @param address The address of the host
+	 * @param mps The meeting probabilities of the host
 	 */
-	private void deleteAckedMessages() {
-		for (String id : this.ackedMessageIds) {
-			if (this.hasMessage(id) && !isSending(id)) {
-				this.deleteMessage(id, false);
-			}
-		}
-	}
-
-	@Override
-	public Message messageTransferred(String id, DTNHost from) {
-		this.costsForMessages = null; // new message -> invalidate costs
-		Message m = super.messageTransferred(id, from);
-		/* was this node the final recipient of the message? */
-		if (isDeliveredMessage(m)) {
-			this.ackedMessageIds.add(id);
-		}
-		return m;
+	private void setProbs(int address, MeetingProbabilitySet mps) {
+		this.allProbs.put(address, mps);
+		this.dijkstra.probsChanged(address);
 	}
 
 	/**
@@ -216,7 +198,7 @@ public class MaxPropRouter extends ActiveRouter {
 
 		/* was the message delivered to the final recipient? */
 		if (m.getTo() == recipient) {
-			this.ackedMessageIds.add(m.getId()); // yes, add to ACKed messages
+			addAck(m.getId()); // yes, add to ACKed messages
 			this.deleteMessage(m.getId(), false); // delete from buffer
 		}
 
@@ -300,41 +282,28 @@ public class MaxPropRouter extends ActiveRouter {
 		tryOtherMessages();
 	}
 
+	@Override
+	public boolean needsUpdate() {
+		return !isQuiescent();
+	}
+
 	/**
 	 * Returns the message delivery cost between two hosts from this host's
 	 * point of view. If there is no path between "from" and "to" host,
-	 * Double.MAX_VALUE is returned. Paths are calculated only to hosts
-	 * that this host has messages to.
+	 * Double.MAX_VALUE is returned. The paths from a host are cached until
+	 * meeting probabilities change.
 	 * @param from The host where a message is coming from
 	 * @param to The host where a message would be destined to
 	 * @return The cost of the cheapest path to the destination or
 	 * Double.MAX_VALUE if such a path doesn't exist
 	 */
 	public double getCost(DTNHost from, DTNHost to) {
-		/* check if the cached values are OK */
-		if (this.costsForMessages == null || lastCostFrom != from) {
-			/* cached costs are invalid -> calculate new costs */
-			this.allProbs.put(getHost().getAddress(), this.probs);
-			int fromIndex = from.getAddress();
-
-			/* calculate paths only to nodes we have messages to
-			 * (optimization) */
-			Set<Integer> toSet = new HashSet<Integer>();
-			for (Message m : getMessageCollection()) {
-				toSet.add(m.getTo().getAddress());
-			}
-
-			this.costsForMessages = dijkstra.getCosts(fromIndex, toSet);
-			this.lastCostFrom = from; // store source host for caching checks
+		if (this.allProbs.get(getHost().getAddress()) != this.probs) {
+			/* costs are calculated with this host's own probabilities */
+			setProbs(getHost().getAddress(), this.probs);
 		}
 
-		if (costsForMessages.containsKey(to.getAddress())) {
-			return costsForMessages.get(to.getAddress());
-		}
-		else {
-			/* there's no known path to the given host */
-			return Double.MAX_VALUE;
-		}
+		return dijkstra.getCost(from.getAddress(), to.getAddress());
 	}
 
 	/**
@@ -363,7 +332,7 @@ public class MaxPropRouter extends ActiveRouter {
 				/* skip messages that the other host has or that have
 				 * passed the other host */
 				if (othRouter.hasMessage(m.getId()) ||
-						m.getHops().contains(other)) {
+						m.isOnPath(other)) {
 					continue;
 				}
 				/* skip message if this host has already sent it to the other
@@ -574,13 +543,13 @@ public class MaxPropRouter extends ActiveRouter {
 	@Override
 	public RoutingInfo getRoutingInfo() {
 		RoutingInfo top = super.getRoutingInfo();
-		RoutingInfo ri = new RoutingInfo(probs.getAllProbs().size() +
+		RoutingInfo ri = new RoutingInfo(probs.size() +
 				" meeting probabilities");
 
 		/* show meeting probabilities for this host */
-		for (Map.Entry<Integer, Double> e : probs.getAllProbs().entrySet()) {
-			Integer host = e.getKey();
-			Double value = e.getValue();
+		for (int i = 0, n = probs.size(); i < n; i++) {
+			int host = probs.getNode(i);
+			double value = probs.getProb(i);
 			ri.addMoreInfo(new RoutingInfo(String.format("host %d : %.6f",
 					host, value)));
 		}
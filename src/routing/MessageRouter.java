@@ -4,6 +4,7 @@
  */
 package routing;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -20,7 +21,9 @@ import core.Settings;
 import core.SettingsError;
 import core.SimClock;
 import core.SimError;
+import routing.util.BufferPolicy;
 import routing.util.RoutingInfo;
+import util.IntHashMap;
 import util.Tuple;
 
 /**
@@ -43,6 +46,8 @@ public abstract class MessageRouter {
 	 * <UL>
 	 * <LI/> 1 : random (message order is randomized every time; default option)
 	 * <LI/> 2 : FIFO (most recently received messages are sent last)
+	 * <LI/> 3 : POLICY (messages are sent in the reverse of the order the
+	 * buffer policy would remove them; see {@link BufferPolicy})
 	 * </UL>
 	 */
 	public static final String SEND_QUEUE_MODE_S = "sendQueue";
@@ -51,11 +56,15 @@ public abstract class MessageRouter {
 	public static final int Q_MODE_RANDOM = 1;
 	/** Setting value for FIFO queue mode */
 	public static final int Q_MODE_FIFO = 2;
+	/** Setting value for buffer policy queue mode */
+	public static final int Q_MODE_POLICY = 3;
 
 	/** Setting string for random queue mode */
 	public static final String STR_Q_MODE_RANDOM = "RANDOM";
 	/** Setting string for FIFO queue mode */
 	public static final String STR_Q_MODE_FIFO = "FIFO";
+	/** Setting string for buffer policy queue mode */
+	public static final String STR_Q_MODE_POLICY = "POLICY";
 
 	/* Return values when asking to start a transmission:
 	 * RCV_OK (0) means that the host accepts the message and transfer started,
@@ -83,18 +92,33 @@ public abstract class MessageRouter {
 	public static final int DENIED_UNSPECIFIED = -99;
 
 	private List<MessageListener> mListeners;
-	/** The messages being transferred with msgID_hostName keys */
-	private HashMap<String, Message> incomingMessages;
-	/** The messages this router is carrying */
-	private HashMap<String, Message> messages;
-	/** The messages this router has received as the final recipient */
-	private HashMap<String, Message> deliveredMessages;
-	/** The messages that Applications on this router have blacklisted */
-	private HashMap<String, Object> blacklistedMessages;
+	/** The messages being transferred (there are only a few, so they are
+	 * kept in a list) */
+	private ArrayList<Message> incomingMessages;
+	/** The hosts the incoming messages are from (same order as the
+	 * messages) */
+	private ArrayList<DTNHost> incomingFrom;
+	/** The messages this router is carrying, by message handle */
+	private IntHashMap<Message> messages;
+	/** The messages this router is carrying, by the address of their
+	 * final recipient */
+	private IntHashMap<RecipientMessages> messagesByRecipient;
+	/** Compares messages by their position in {@link #messages} */
+	private Comparator<Message> bufferOrder;
+	/** The messages this router has received as the final recipient, by
+	 * message handle */
+	private IntHashMap<Message> deliveredMessages;
+	/** Handles of the messages that Applications on this router have
+	 * blacklisted */
+	private IntHashMap<Boolean> blacklistedMessages;
 	/** Host where this router belongs to */
 	private DTNHost host;
 	/** size of the buffer */
 	private long bufferSize;
+	/** sum of the sizes of the messages in the buffer */
+	private long bufferOccupancy;
+	/** order in which the messages are removed from the buffer */
+	private BufferPolicy bufferPolicy;
 	/** TTL for all messages */
 	protected int msgTtl;
 	/** Queue mode for sending messages */
@@ -107,12 +131,15 @@ public abstract class MessageRouter {
 	 * Constructor. Creates a new message router based on the settings in
 	 * the given Settings object. Size of the message buffer is read from
 	 * {@link #B_SIZE_S} setting. Default value is Integer.MAX_VALUE.
+	 * Buffer policy is read from {@link BufferPolicy#BUFFER_POLICY_S}
+	 * setting.
 	 * @param s The settings object
 	 */
 	public MessageRouter(Settings s) {
 		this.bufferSize = Integer.MAX_VALUE; // defaults to rather large buffer
 		this.msgTtl = Message.INFINITE_TTL;
 		this.applications = new HashMap<String, Collection<Application>>();
+		this.bufferPolicy = BufferPolicy.createPolicy(s);
 
 		if (s.contains(B_SIZE_S)) {
 			this.bufferSize = s.getLong(B_SIZE_S);
@@ -130,9 +157,11 @@ public abstract class MessageRouter {
 				this.sendQueueMode = Q_MODE_FIFO;
 			} else if (mode.trim().toUpperCase().equals(STR_Q_MODE_RANDOM)){
 				this.sendQueueMode = Q_MODE_RANDOM;
+			} else if (mode.trim().toUpperCase().equals(STR_Q_MODE_POLICY)){
+				this.sendQueueMode = Q_MODE_POLICY;
 			} else {
 				this.sendQueueMode = s.getInt(SEND_QUEUE_MODE_S);
-				if (sendQueueMode < 1 || sendQueueMode > 2) {
+				if (sendQueueMode < 1 || sendQueueMode > 3) {
 					throw new SettingsError("Invalid value for " +
 							s.getFullPropertyName(SEND_QUEUE_MODE_S));
 				}
@@ -151,12 +180,20 @@ public abstract class MessageRouter {
 	 * @param mListeners The message listeners
 	 */
 	public void init(DTNHost host, List<MessageListener> mListeners) {
-		this.incomingMessages = new HashMap<String, Message>();
-		this.messages = new HashMap<String, Message>();
-		this.deliveredMessages = new HashMap<String, Message>();
-		this.blacklistedMessages = new HashMap<String, Object>();
+		this.incomingMessages = new ArrayList<Message>();
+		this.incomingFrom = new ArrayList<DTNHost>();
+		this.messages = new IntHashMap<Message>();
+		this.messagesByRecipient = new IntHashMap<RecipientMessages>();
+		this.bufferOrder = new Comparator<Message>() {
+			public int compare(Message m1, Message m2) {
+				return getBufferPosition(m1) - getBufferPosition(m2);
+			}
+		};
+		this.deliveredMessages = new IntHashMap<Message>();
+		this.blacklistedMessages = new IntHashMap<Boolean>();
 		this.mListeners = mListeners;
 		this.host = host;
+		this.bufferOccupancy = 0;
 	}
 
 	/**
@@ -167,6 +204,7 @@ public abstract class MessageRouter {
 		this.bufferSize = r.bufferSize;
 		this.msgTtl = r.msgTtl;
 		this.sendQueueMode = r.sendQueueMode;
+		this.bufferPolicy = r.bufferPolicy.replicate();
 
 		this.applications = new HashMap<String, Collection<Application>>();
 		for (Collection<Application> apps : r.applications.values()) {
@@ -189,6 +227,36 @@ public abstract class MessageRouter {
 		}
 	}
 
+	/**
+	 * Returns true if {@link #update()} may have something to do at this
+	 * time. When idle hosts are skipped (see
+	 * {@link core.World#SKIP_IDLE_HOSTS_S}), the update is not called for
+	 * routers that return false. The default implementation always returns
+	 * true; routers that can tell when their update does nothing may
+	 * override this.
+	 * @return true if the router should be updated
+	 */
+	public boolean needsUpdate() {
+		return true;
+	}
+
+	/**
+	 * Returns true if any applications are attached to this router
+	 * @return true if the router has applications
+	 */
+	protected boolean hasApplications() {
+		return !this.applications.isEmpty();
+	}
+
+	/**
+	 * Returns true if this router has an energy model that can turn the
+	 * host's radio off
+	 * @return true if the router models energy
+	 */
+	public boolean hasEnergyModel() {
+		return false;
+	}
+
 	/**
 	 * Informs the router about change in connections state.
 	 * @param con The connection that changed
@@ -201,7 +269,7 @@ public abstract class MessageRouter {
 	 * @return The message
 	 */
 	protected Message getMessage(String id) {
-		return this.messages.get(id);
+		return this.messages.get(Message.findHandle(id));
 	}
 
 	/**
@@ -210,7 +278,18 @@ public abstract class MessageRouter {
 	 * @return True if the router has message with this id, false if not
 	 */
 	public boolean hasMessage(String id) {
-		return this.messages.containsKey(id);
+		return this.messages.containsKey(Message.findHandle(id));
+	}
+
+	/**
+	 * Checks if this router has a message with the same ID as the given
+	 * message buffered. Faster than {@link #hasMessage(String)} because the
+	 * message handle is used.
+	 * @param m The message
+	 * @return True if the router has message with the ID, false if not
+	 */
+	public boolean hasMessage(Message m) {
+		return this.messages.containsKey(m.getHandle());
 	}
 
 	/**
@@ -222,7 +301,7 @@ public abstract class MessageRouter {
 	 * this host as the final recipient.
 	 */
 	protected boolean isDeliveredMessage(Message m) {
-		return (this.deliveredMessages.containsKey(m.getId()));
+		return (this.deliveredMessages.containsKey(m.getHandle()));
 	}
 
 	/**
@@ -235,7 +314,7 @@ public abstract class MessageRouter {
 	 * @return <code>true</code> if blacklisted, <code>false</code> otherwise.
 	 */
 	protected boolean isBlacklistedMessage(String id) {
-		return this.blacklistedMessages.containsKey(id);
+		return this.blacklistedMessages.containsKey(Message.findHandle(id));
 	}
 
 	/**
@@ -250,6 +329,42 @@ public abstract class MessageRouter {
 		return this.messages.values();
 	}
 
+	/**
+	 * Returns the messages of this router whose final recipient is the
+	 * given host, in the order of {@link #getMessageCollection()}. The
+	 * messages are found without going through the other messages.
+	 * <b>Note:</b> The list is a read-only view that changes when the
+	 * messages of the router change, so a copy should be made if messages
+	 * can be added or removed while iterating through the list.
+	 * @param to The final recipient
+	 * @return A read-only list of the messages
+	 */
+	protected List<Message> getMessagesFor(DTNHost to) {
+		RecipientMessages forHost =
+			this.messagesByRecipient.get(to.getAddress());
+		if (forHost == null) {
+			return Collections.<Message>emptyList();
+		}
+
+		if (forHost.moveCount != this.messages.getMoveCount()) {
+			/* the messages have moved in the buffer since the last sort */
+			Collections.sort(forHost.list, this.bufferOrder);
+			forHost.moveCount = this.messages.getMoveCount();
+		}
+		return forHost.view;
+	}
+
+	/**
+	 * Returns the position of a message in the order of
+	 * {@link #getMessageCollection()}. The positions may change when the
+	 * messages of the router change.
+	 * @param m The message
+	 * @return The position or -1 if the router doesn't have the message
+	 */
+	protected int getBufferPosition(Message m) {
+		return this.messages.positionOf(m.getHandle());
+	}
+
 	/**
 	 * Returns the number of messages this router has
 	 * @return How many messages this router has
@@ -274,17 +389,29 @@ public abstract class MessageRouter {
 	 * size isn't defined)
 	 */
 	public long getFreeBufferSize() {
-		long occupancy = 0;
-
 		if (this.getBufferSize() == Integer.MAX_VALUE) {
 			return Integer.MAX_VALUE;
 		}
 
-		for (Message m : getMessageCollection()) {
-			occupancy += m.getSize();
-		}
+		return this.getBufferSize() - this.bufferOccupancy;
+	}
 
-		return this.getBufferSize() - occupancy;
+	/**
+	 * Returns the buffer policy of this router. The policy orders the
+	 * messages in the buffer.
+	 * @return The buffer policy
+	 */
+	public BufferPolicy getBufferPolicy() {
+		return this.bufferPolicy;
+	}
+
+	/**
+	 * Should be called when something the buffer policy may use (e.g. a
+	 * property) of a message in the buffer has changed
+	 * @param m The message that changed
+	 */
+	protected void messageUpdated(Message m) {
+		this.bufferPolicy.update(m);
 	}
 
 	/**
@@ -383,11 +510,11 @@ public abstract class MessageRouter {
 			// -> put to buffer
 			addToMessages(aMessage, false);
 		} else if (isFirstDelivery) {
-			this.deliveredMessages.put(id, aMessage);
+			this.deliveredMessages.put(incoming.getHandle(), aMessage);
 		} else if (outgoing == null) {
 			// Blacklist messages that an app wants to drop.
 			// Otherwise the peer will just try to send it back again.
-			this.blacklistedMessages.put(id, null);
+			this.blacklistedMessages.put(incoming.getHandle(), Boolean.TRUE);
 		}
 
 		for (MessageListener ml : this.mListeners) {
@@ -405,7 +532,13 @@ public abstract class MessageRouter {
 	 * @param from Who the message was from (previous hop).
 	 */
 	protected void putToIncomingBuffer(Message m, DTNHost from) {
-		this.incomingMessages.put(m.getId() + "_" + from.toString(), m);
+		int i = indexOfIncoming(m.getHandle(), from);
+		if (i >= 0) {
+			this.incomingMessages.set(i, m);
+		} else {
+			this.incomingMessages.add(m);
+			this.incomingFrom.add(from);
+		}
 	}
 
 	/**
@@ -416,7 +549,28 @@ public abstract class MessageRouter {
 	 * @return The found message or null if such message wasn't found
 	 */
 	protected Message removeFromIncomingBuffer(String id, DTNHost from) {
-		return this.incomingMessages.remove(id + "_" + from.toString());
+		int i = indexOfIncoming(Message.findHandle(id), from);
+		if (i < 0) {
+			return null;
+		}
+		this.incomingFrom.remove(i);
+		return this.incomingMessages.remove(i);
+	}
+
+	/**
+	 * Returns the index of an incoming message in the incoming buffer
+	 * @param handle Handle of the message
+	 * @param from The host that sent this message (previous hop)
+	 * @return The index or -1 if such message wasn't found
+	 */
+	private int indexOfIncoming(int handle, DTNHost from) {
+		for (int i = 0, n = this.incomingMessages.size(); i < n; i++) {
+			if (this.incomingMessages.get(i).getHandle() == handle &&
+					this.incomingFrom.get(i) == from) {
+				return i;
+			}
+		}
+		return -1;
 	}
 
 	/**
@@ -426,7 +580,13 @@ public abstract class MessageRouter {
 	 * @return True if such message is incoming right now
 	 */
 	protected boolean isIncomingMessage(String id) {
-		return this.incomingMessages.containsKey(id);
+		int handle = Message.findHandle(id);
+		for (Message m : this.incomingMessages) {
+			if (m.getHandle() == handle) {
+				return true;
+			}
+		}
+		return false;
 	}
 
 	/**
@@ -437,7 +597,15 @@ public abstract class MessageRouter {
 	 * message, if false, nothing is informed.
 	 */
 	protected void addToMessages(Message m, boolean newMessage) {
-		this.messages.put(m.getId(), m);
+		Message old = this.messages.put(m.getHandle(), m);
+		if (old != null) {
+			this.bufferOccupancy -= old.getSize();
+			this.bufferPolicy.remove(old);
+			removeFromRecipientIndex(old);
+		}
+		this.bufferOccupancy += m.getSize();
+		this.bufferPolicy.add(m);
+		addToRecipientIndex(m);
 
 		if (newMessage) {
 			for (MessageListener ml : this.mListeners) {
@@ -452,10 +620,85 @@ public abstract class MessageRouter {
 	 * @return The removed message or null if message for the ID wasn't found
 	 */
 	protected Message removeFromMessages(String id) {
-		Message m = this.messages.remove(id);
+		int handle = Message.findHandle(id);
+		Message m = this.messages.get(handle);
+		if (m != null) {
+			/* removed from the index first, while m still has its position */
+			removeFromRecipientIndex(m);
+			this.messages.remove(handle);
+			this.bufferOccupancy -= m.getSize();
+			this.bufferPolicy.remove(m);
+		}
 		return m;
 	}
 
+	/**
+	 * Adds a message to the index of messages by their final recipient
+	 * @param m The message
+	 */
+	private void addToRecipientIndex(Message m) {
+		int address = m.getTo().getAddress();
+		RecipientMessages forHost = this.messagesByRecipient.get(address);
+		if (forHost == null) {
+			forHost = new RecipientMessages(this.messages.getMoveCount());
+			this.messagesByRecipient.put(address, forHost);
+		}
+
+		if (forHost.moveCount == this.messages.getMoveCount()) {
+			/* keep the list in buffer order */
+			forHost.list.add(findIndex(forHost.list, getBufferPosition(m)),
+					m);
+		} else {
+			/* list is sorted again when it's needed */
+			forHost.list.add(m);
+		}
+	}
+
+	/**
+	 * Removes a message from the index of messages by their final recipient.
+	 * The message must still be in the buffer.
+	 * @param m The message
+	 */
+	private void removeFromRecipientIndex(Message m) {
+		int address = m.getTo().getAddress();
+		RecipientMessages forHost = this.messagesByRecipient.get(address);
+		List<Message> list = forHost.list;
+
+		int index = -1;
+		if (forHost.moveCount == this.messages.getMoveCount()) {
+			index = findIndex(list, getBufferPosition(m));
+		}
+		if (index < 0 || index >= list.size() || list.get(index) != m) {
+			index = list.indexOf(m); /* not in order, look it up */
+		}
+
+		list.remove(index);
+		if (list.isEmpty()) {
+			this.messagesByRecipient.remove(address);
+		}
+	}
+
+	/**
+	 * Returns the index of the first message of a buffer ordered list
+	 * whose buffer position is at least the given position
+	 * @param list The list
+	 * @param position The buffer position
+	 * @return The index (list's size if all the positions are smaller)
+	 */
+	private int findIndex(List<Message> list, int position) {
+		int low = 0;
+		int high = list.size();
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (getBufferPosition(list.get(mid)) < position) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
 	/**
 	 * This method should be called (on the receiving host) when a message
 	 * transfer was aborted.
@@ -548,6 +791,26 @@ public abstract class MessageRouter {
 				}
 			});
 			break;
+		case Q_MODE_POLICY:
+			Collections.sort(list,
+					new Comparator<Object>() {
+				/** Compares two tuples by their messages' buffer order */
+				public int compare(Object o1, Object o2) {
+					if (o1 instanceof Tuple) {
+						return bufferPolicy.compare(
+								((Tuple<Message, Connection>)o2).getKey(),
+								((Tuple<Message, Connection>)o1).getKey());
+					}
+					else if (o1 instanceof Message) {
+						return bufferPolicy.compare((Message)o2, (Message)o1);
+					}
+					else {
+						throw new SimError("Invalid type of objects in " +
+								"the list");
+					}
+				}
+			});
+			break;
 		/* add more queue modes here */
 		default:
 			throw new SimError("Unknown queue mode " + sendQueueMode);
@@ -567,8 +830,10 @@ public abstract class MessageRouter {
 	protected int compareByQueueMode(Message m1, Message m2) {
 		switch (sendQueueMode) {
 		case Q_MODE_RANDOM:
-			/* return randomly (enough) but consistently -1, 0 or 1 */
-			int hash_diff = m1.hashCode() - m2.hashCode();
+			/* return randomly (enough) but consistently -1, 0 or 1. The ID
+			 * hash is used instead of the object's hash so that the order
+			 * doesn't depend on the JVM (or, e.g., on threads created) */
+			int hash_diff = m1.getId().hashCode() - m2.getId().hashCode();
 			if (hash_diff == 0) {
 				return 0;
 			}
@@ -579,6 +844,9 @@ public abstract class MessageRouter {
 				return 0;
 			}
 			return (diff < 0 ? -1 : 1);
+		case Q_MODE_POLICY:
+			/* messages the policy would remove last are sent first */
+			return bufferPolicy.compare(m2, m1);
 		/* add more queue modes here */
 		default:
 			throw new SimError("Unknown queue mode " + sendQueueMode);
@@ -603,7 +871,7 @@ public abstract class MessageRouter {
 		ri.addMoreInfo(delivered);
 		ri.addMoreInfo(cons);
 
-		for (Message m : this.incomingMessages.values()) {
+		for (Message m : this.incomingMessages) {
 			incoming.addMoreInfo(new RoutingInfo(m));
 		}
 
@@ -671,4 +939,21 @@ public abstract class MessageRouter {
 			this.getHost().toString() + " with " + getNrofMessages()
 			+ " messages";
 	}
+
+	/**
+	 * The messages of one final recipient in the order of the buffer. The
+	 * order is valid while the move count of the buffer is the same as
+	 * when the list was last in order.
+	 */
+	private static class RecipientMessages {
+		private final List<Message> list;
+		private final List<Message> view;
+		private int moveCount;
+
+		public RecipientMessages(int moveCount) {
+			this.list = new ArrayList<Message>(1);
+			this.view = Collections.unmodifiableList(this.list);
+			this.moveCount = moveCount;
+		}
+	}
 }
@@ -8,10 +8,9 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
+import routing.util.PredictabilityTable;
 import routing.util.RoutingInfo;
 
 import util.Tuple;
@@ -59,9 +58,7 @@ public class ProWaitRouter extends ActiveRouter {
 	private double beta;
 
 	/** delivery predictabilities */
-	private Map<DTNHost, Double> preds;
-	/** last delivery predictability update (sim)time */
-	private double lastAgeUpdate;
+	private PredictabilityTable preds;
         
         
         
@@ -75,6 +72,9 @@ public class ProWaitRouter extends ActiveRouter {
 //	/** Message property key */
 	public static final String MSG_COUNT_PROPERTY = PROPHET_NS + "." +
 		"copies";
+	/** Slot of the message property */
+	protected static final int MSG_COUNT_SLOT =
+		Message.registerIntProperty(MSG_COUNT_PROPERTY);
 	
 	protected int initialNrofCopies;
 	protected boolean isBinary;
@@ -134,9 +134,9 @@ public class ProWaitRouter extends ActiveRouter {
 	@Override
 	public Message messageTransferred(String id, DTNHost from) {
 		Message msg = super.messageTransferred(id, from);
-		Integer nrofCopies = (Integer)msg.getProperty(MSG_COUNT_PROPERTY);
+		int nrofCopies = msg.getIntProperty(MSG_COUNT_SLOT);
 		
-		assert nrofCopies != null : "Not a SnW message: " + msg;
+		assert msg.hasProperty(MSG_COUNT_SLOT) : "Not a SnW message: " + msg;
 		
 		if (isBinary) {
 			/* in binary S'n'W the receiving node gets ceil(n/2) copies */
@@ -147,7 +147,8 @@ public class ProWaitRouter extends ActiveRouter {
 			nrofCopies = 1;
 		}
 		
-		msg.updateProperty(MSG_COUNT_PROPERTY, nrofCopies);
+		msg.setIntProperty(MSG_COUNT_SLOT, nrofCopies);
+		messageUpdated(msg);
 		return msg;
 	}
 	
@@ -156,7 +157,7 @@ public class ProWaitRouter extends ActiveRouter {
 		makeRoomForNewMessage(msg.getSize());
 
 		msg.setTtl(this.msgTtl);
-		msg.addProperty(MSG_COUNT_PROPERTY, new Integer(initialNrofCopies));
+		msg.setIntProperty(MSG_COUNT_SLOT, initialNrofCopies);
 		addToMessages(msg, true);
 		return true;
 	}
@@ -170,10 +171,9 @@ public class ProWaitRouter extends ActiveRouter {
 		List<Message> list = new ArrayList<Message>();
 
 		for (Message m : getMessageCollection()) {
-			Integer nrofCopies = (Integer)m.getProperty(MSG_COUNT_PROPERTY);
-			assert nrofCopies != null : "SnW message " + m + " didn't have " + 
-				"nrof copies property!";
-			if (nrofCopies > 1) {
+			assert m.hasProperty(MSG_COUNT_SLOT) : "SnW message " + m +
+				" didn't have nrof copies property!";
+			if (m.getIntProperty(MSG_COUNT_SLOT) > 1) {
 				list.add(m);
 			}
 		}
@@ -190,7 +190,7 @@ public class ProWaitRouter extends ActiveRouter {
 	 */
 	@Override
 	protected void transferDone(Connection con) {
-		Integer nrofCopies;
+		int nrofCopies;
 		String msgId = con.getMessage().getId();
 		/* get this router's copy of the message */
 		Message msg = getMessage(msgId);
@@ -200,14 +200,15 @@ public class ProWaitRouter extends ActiveRouter {
 		}
 		
 		/* reduce the amount of copies left */
-		nrofCopies = (Integer)msg.getProperty(MSG_COUNT_PROPERTY);
+		nrofCopies = msg.getIntProperty(MSG_COUNT_SLOT);
 		if (isBinary) { 
 			nrofCopies /= 2;
 		}
 		else {
 			nrofCopies--;
 		}
-		msg.updateProperty(MSG_COUNT_PROPERTY, nrofCopies);
+		msg.setIntProperty(MSG_COUNT_SLOT, nrofCopies);
+		messageUpdated(msg);
 	}
         
   //<====================End of code======================>       
@@ -215,10 +216,10 @@ public class ProWaitRouter extends ActiveRouter {
         
         
 	/**
-	 * Initializes predictability hash
+	 * Initializes predictability table
 	 */
 	private void initPreds() {
-		this.preds = new HashMap<DTNHost, Double>();
+		this.preds = new PredictabilityTable();
 	}
 
 	@Override
@@ -240,7 +241,7 @@ public class ProWaitRouter extends ActiveRouter {
 	private void updateDeliveryPredFor(DTNHost host) {
 		double oldValue = getPredFor(host);
 		double newValue = oldValue + (1 - oldValue) * P_INIT;
-		preds.put(host, newValue);
+		preds.set(host.getAddress(), newValue);
 	}
 	
 	/**
@@ -251,12 +252,7 @@ public class ProWaitRouter extends ActiveRouter {
 	 */
 	public double getPredFor(DTNHost host) {
 		ageDeliveryPreds(); // make sure preds are updated before getting
-		if (preds.containsKey(host)) {
-			return preds.get(host);
-		}
-		else {
-			return 0;
-		}
+		return preds.get(host.getAddress());
 	}
 	
 	/**
@@ -271,18 +267,11 @@ public class ProWaitRouter extends ActiveRouter {
 			" with other routers of same type";
 		
 		double pForHost = getPredFor(host); // P(a,b)
-		Map<DTNHost, Double> othersPreds = 
+		PredictabilityTable othersPreds =
 			((ProWaitRouter)otherRouter).getDeliveryPreds();
-		
-		for (Map.Entry<DTNHost, Double> e : othersPreds.entrySet()) {
-			if (e.getKey() == getHost()) {
-				continue; // don't add yourself
-			}
-			
-			double pOld = getPredFor(e.getKey()); // P(a,c)_old
-			double pNew = pOld + ( 1 - pOld) * pForHost * e.getValue() * beta;
-			preds.put(e.getKey(), pNew);
-		}
+
+		preds.updateTransitive(othersPreds, getHost().getAddress(),
+				pForHost, beta);
 	}
 
 	/**
@@ -292,26 +281,14 @@ public class ProWaitRouter extends ActiveRouter {
 	 * @see #SECONDS_IN_UNIT_S
 	 */
 	private void ageDeliveryPreds() {
-		double timeDiff = (SimClock.getTime() - this.lastAgeUpdate) / 
-			secondsInTimeUnit;
-		
-		if (timeDiff == 0) {
-			return;
-		}
-		
-		double mult = Math.pow(GAMMA, timeDiff);
-		for (Map.Entry<DTNHost, Double> e : preds.entrySet()) {
-			e.setValue(e.getValue()*mult);
-		}
-		
-		this.lastAgeUpdate = SimClock.getTime();
+		preds.age(SimClock.getTime(), GAMMA, secondsInTimeUnit);
 	}
 	
 	/**
-	 * Returns a map of this router's delivery predictions
-	 * @return a map of this router's delivery predictions
+	 * Returns this router's delivery predictions
+	 * @return this router's delivery predictions
 	 */
-	private Map<DTNHost, Double> getDeliveryPreds() {
+	private PredictabilityTable getDeliveryPreds() {
 		ageDeliveryPreds(); // make sure the aging is done
 		return this.preds;
 	}
@@ -422,9 +399,11 @@ public class ProWaitRouter extends ActiveRouter {
 		RoutingInfo ri = new RoutingInfo(preds.size() + 
 				" delivery prediction(s)");
 		
-		for (Map.Entry<DTNHost, Double> e : preds.entrySet()) {
-			DTNHost host = e.getKey();
-			Double value = e.getValue();
+		for (DTNHost host : getHost().getHosts()) {
+			if (!preds.contains(host.getAddress())) {
+				continue;
+			}
+			double value = preds.get(host.getAddress());
 			
 			ri.addMoreInfo(new RoutingInfo(String.format("%s : %.6f", 
 					host, value)));
@@ -7,12 +7,9 @@ package routing;
 import java.util.Arrays;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
+import routing.util.EncounterStore;
 import routing.util.RoutingInfo;
 
 import util.Tuple;
@@ -20,9 +17,9 @@ import util.Tuple;
 import core.Coord;
 import core.Connection;
 import core.DTNHost;
+import core.DTNSim;
 import core.Message;
 import core.Settings;
-import core.SimClock;
 
 /**
  * Implementation of Game router as described in 
@@ -31,11 +28,29 @@ import core.SimClock;
  */
 public class edMultiRouter extends ActiveRouter {
 	
-	/** number of encounters of every node with every other node*/
-	private static int[][] encounters;
-
-	/** sumEncounters of total encounters by every node*/
-	private static Map<DTNHost, Integer> sumEncounters;
+	/** number of encounters of every node with every other node (and the
+	 * sumEncounters of total encounters by every node). The type of the
+	 * store is read from the {@link EncounterStore#ENCOUNTER_STORE_S}
+	 * setting of the first router that is created */
+	private static EncounterStore encounters;
+	/** buffer for the top encounter partner of a destination */
+	private static int[] topPartner = new int[1];
+
+	/** x coordinates of all nodes at {@link #coordTime} */
+	private static double[] xs;
+	/** y coordinates of all nodes at {@link #coordTime} */
+	private static double[] ys;
+	/** location time of the nodes when the coordinates were read */
+	private static double coordTime;
+	/** cached sums of distances of all nodes to every node */
+	private static double[] sumDists;
+	/** location times the distance sums were calculated for (NaN = none) */
+	private static double[] sumDistTimes;
+
+	static {
+		DTNSim.registerForReset(edMultiRouter.class.getCanonicalName());
+		reset();
+	}
 
 	/**
 	 * Constructor. Creates a new message router based on the settings in
@@ -44,6 +59,9 @@ public class edMultiRouter extends ActiveRouter {
 	 */
 	public edMultiRouter(Settings s) {
 		super(s);
+		if (encounters == null) {
+			encounters = EncounterStore.createStore(s);
+		}
 	}
 
 	/**
@@ -71,42 +89,19 @@ public class edMultiRouter extends ActiveRouter {
 	 * @param host2 second node
 	 */
 	public void updateEncounters(DTNHost host1, DTNHost host2) {
-		//each message has different destination and we'll need encounters of every node with the destination(which is changing with each message) in same time instance, hence we've decided to use a 2D array
-		if (this.encounters == null) {
-			this.encounters=new int[host1.getHosts().size()][host1.getHosts().size()]; //TODO:replace 126 by hosts.size
-		}
-		if(this.sumEncounters == null){
-			this.sumEncounters=new HashMap<DTNHost, Integer>();
-		}
+		/* each message has a different destination and we need the
+		 * encounters of every node with the destination (which changes
+		 * with each message) at the same time instance, hence we keep the
+		 * encounters of every pair of nodes */
 		edMultiRouter othRouter = (edMultiRouter)host2.getRouter();
 		edMultiRouter myRouter = (edMultiRouter)host1.getRouter();
+		int a1 = host1.getAddress();
+		int a2 = host2.getAddress();
 
-		//if sumEncounters does not contain host1 , put host1 in sumEncounters and initialise by 0
-		if(!this.sumEncounters.containsKey(host1))
-		{
-			sumEncounters.put(host1,0);
-		}
-		//if sumEncounters does not contain host1 , put host1 in sumEncounters and initialise by 0
-		if(!this.sumEncounters.containsKey(host2))
-		{
-			sumEncounters.put(host2,0);
-		}
-		if(myRouter!=othRouter)
-		{
-			this.encounters[host1.getAddress()][host2.getAddress()]++;
-
-			//increase the value of sumEncounters of host1 by 1 
-			this.sumEncounters.put(host1,this.sumEncounters.get(host1)+1);
+		encounters.addEncounter(a1, a2);
+		if (myRouter == othRouter) {
+			encounters.addEncounter(a2, a1);
 		}
-		else
-		{
-			this.encounters[host1.getAddress()][host2.getAddress()]++;
-			this.encounters[host2.getAddress()][host1.getAddress()]++;
-			this.sumEncounters.put(host1,this.sumEncounters.get(host1)+1);
-			this.sumEncounters.put(host2,this.sumEncounters.get(host2)+1);
-		}
-		//System.out.println(host1.getAddress()+ " " + sumEncounters.get(host1));
-		//System.out.println(host2.getAddress()+ " " + sumEncounters.get(host2));
 	}
 
 	/**
@@ -116,7 +111,8 @@ public class edMultiRouter extends ActiveRouter {
 	 * @return the current E value
 	 */
 	public int getEncounter(DTNHost host1,DTNHost host2){
-		return this.encounters[host1.getAddress()][host2.getAddress()];
+		return encounters.getEncounters(host1.getAddress(),
+				host2.getAddress());
 	}
 
 	/**
@@ -125,13 +121,7 @@ public class edMultiRouter extends ActiveRouter {
 	 * @return the current S value
 	 */
 	public int getsumEncounters(DTNHost host){
-		if(sumEncounters.containsKey(host))
-		{
-			//System.out.println("poop:"+host.getAddress()+"="+this.sumEncounters.get(host));
-			return this.sumEncounters.get(host);
-		}
-		else
-			return 0;
+		return encounters.getTotal(host.getAddress());
 	}
 	
 	@Override
@@ -158,17 +148,31 @@ public class edMultiRouter extends ActiveRouter {
 			new ArrayList<Tuple<Message, Connection>>(); 
 	
 		Collection<Message> msgCollection = getMessageCollection();
+		List<Connection> connections = getConnections();
+		DTNHost me = getHost();
 
+		/* the connections whose other end has gamma over the threshold */
+		boolean[] bestGammaLocal = new boolean[connections.size()];
 		
 		for(Message m : msgCollection){
 
-			Map<DTNHost, Double> bestGammaWorld = new HashMap<DTNHost, Double>();
-
-			Map<DTNHost, Double> bestGammaLocal = new HashMap<DTNHost, Double>();
-
 			DTNHost dest = m.getTo();
 
 			double threshold=1;
+			int sumEncDest = getsumEncounters(dest);
+			boolean anyBest = false;
+
+			//alpha is an integer division of the encounters by the sum, so
+			//it is non-zero only for the node that has had all the
+			//encounters of the destination (the top partner of the
+			//destination). Without that gamma can't exceed the threshold.
+			if (sumEncDest == 0 || encounters.getTopPartners(
+					dest.getAddress(), 1, topPartner) == 0 ||
+					encounters.getEncounters(dest.getAddress(),
+							topPartner[0]) < sumEncDest) {
+				continue;
+			}
+			double sumDistDest = getsumDist(dest);
 
 			/*
 			for(DTNHost node : getHost().getHosts()){
@@ -198,94 +202,46 @@ public class edMultiRouter extends ActiveRouter {
 			}
 			*/
 
-			for (Connection con : getConnections()){
-
-				DTNHost me = getHost();
-				DTNHost other = con.getOtherNode(getHost());
-				edMultiRouter othRouter = (edMultiRouter)other.getRouter();
+			for (int i=0, n=connections.size(); i<n; i++) {
+				DTNHost other = connections.get(i).getOtherNode(me);
+				if (other.getAddress() != topPartner[0]) {
+					bestGammaLocal[i] = false;
+					continue;
+				}
 				
 				//alpha and beta of otherRouter
 				double alphaOther,betaOther,gammaOther;
-				//alpha and beta of MeRouter
-				double alphaMe,betaMe,gammaMe;
 
-				//if the sumEncounters of encounters of all other nodes w.r.t destination is 0,
-				//then initialise alphaOther to 0 (prevents divide by zero error)
-				if(getsumEncounters(dest)==0)
-				{
-					alphaOther=0;
-					alphaMe=0;
-				}
-				else
-				{
-					alphaOther=getEncounter(dest,other)/getsumEncounters(dest);
-					alphaMe=getEncounter(dest,me)/getsumEncounters(me);
-				}
+				alphaOther=getEncounter(dest,other)/sumEncDest;
 				
 				//beta for otherRouter
-				betaOther=getDistFor(dest,other)/getsumDist(dest);
-				//beta for MeRouter
-				betaMe=getDistFor(dest,me)/getsumDist(me);
+				betaOther=getDistFor(dest,other)/sumDistDest;
 
 				gammaOther=alphaOther/betaOther;
-				gammaMe=alphaMe/betaMe;
 
-				if(gammaOther>threshold)
-					bestGammaLocal.put(other,gammaOther);
+				bestGammaLocal[i] = gammaOther>threshold;
+				anyBest |= bestGammaLocal[i];
 			}
 
-			//intersection 
-			//Map<DTNHost, Double> intersection = new HashMap<DTNHost, Double>(bestGammaLocal);
-			//intersection.keySet().retainAll(bestGammaWorld.keySet());
-
 			//if intersection is not empty
-			if(!bestGammaLocal.isEmpty()){
-				/*
-				Connection c= new Connection(getHost(),getHost().getInterface(),maxGamma.getKey(),maxGamma.getKey().getInterface());
-				edMultiRouter othRouter = (edMultiRouter)other.getRouter();
-				if(!othRouter.isTransferring())
-				{
-					messages.add(new Tuple<Message, Connection>(m,con));	
-				}
-				*/
-				
-				for(Connection con : getConnections())
-				{
-					DTNHost other=con.getOtherNode(getHost());
-					edMultiRouter othRouter = (edMultiRouter)other.getRouter();
-					if(othRouter.isTransferring()){
-						continue;
-					}
-					if(othRouter.hasMessage(m.getId())){
+			if(anyBest){
+				for (int i=0, n=connections.size(); i<n; i++) {
+					if (!bestGammaLocal[i]) {
 						continue;
 					}
-					if(bestGammaLocal.containsKey(other))
-					{
-						messages.add(new Tuple<Message, Connection>(m,con));	
-					}
-				}
-				
-			}
-			/*
-			else{
-
-				for(Connection con : getConnections())
-				{
-					DTNHost other=con.getOtherNode(getHost());
+					Connection con = connections.get(i);
+					DTNHost other=con.getOtherNode(me);
 					edMultiRouter othRouter = (edMultiRouter)other.getRouter();
 					if(othRouter.isTransferring()){
 						continue;
 					}
-					if(othRouter.hasMessage(m.getId())){
+					if(othRouter.hasMessage(m)){
 						continue;
 					}
-				
-				
-						messages.add(new Tuple<Message, Connection>(m,con));	
-				
+					messages.add(new Tuple<Message, Connection>(m,con));	
 				}
+				
 			}
-			*/
 		}
 		
 		if (messages.size() == 0) {
@@ -297,37 +253,78 @@ public class edMultiRouter extends ActiveRouter {
 		return tryMessagesForConnected(messages);	// try to send messages
 	}
 
-//Returns the sum of all the nodes w.r.t dest
-private double getsumDist(DTNHost dest)
-{
-	double sumDist=0;
-	for(DTNHost n:dest.getHosts()){
-		sumDist+=getDistFor(n,dest);
+	/**
+	 * Returns the sum of the distances of all the nodes to the destination.
+	 * The sums are calculated once per location update (and destination)
+	 * from the coordinates of all the nodes.
+	 * @param dest The destination node
+	 * @return The sum of the distances
+	 */
+	private double getsumDist(DTNHost dest) {
+		List<DTNHost> hosts = dest.getHosts();
+		int nrofHosts = hosts.size();
+		double time = dest.getLocationTime();
+
+		if (xs == null || xs.length != nrofHosts || coordTime != time) {
+			if (xs == null || xs.length != nrofHosts) {
+				xs = new double[nrofHosts];
+				ys = new double[nrofHosts];
+				sumDists = new double[nrofHosts];
+				sumDistTimes = new double[nrofHosts];
+				Arrays.fill(sumDistTimes, Double.NaN);
+			}
+			for (int i=0; i<nrofHosts; i++) {
+				Coord c = hosts.get(i).getLocation();
+				xs[i] = c.getX();
+				ys[i] = c.getY();
+			}
+			coordTime = time;
+		}
+
+		int index = dest.getAddress();
+		if (sumDistTimes[index] == time) {
+			return sumDists[index];
+		}
+
+		Coord destLoc = dest.getLocation();
+		double destX = destLoc.getX();
+		double destY = destLoc.getY();
+		double sumDist=0;
+		for (int i=0; i<nrofHosts; i++) {
+			double a = destY - ys[i];
+			double b = xs[i] - destX;
+			sumDist += Math.pow((a*a+b*b),0.5);
+		}
+
+		sumDists[index] = sumDist;
+		sumDistTimes[index] = time;
+		return sumDist;
+	}
+
+	/**	
+	 * Returns the current distance between dest node and the nextHost node
+	 * @param dest The destination node 
+	 * @param nextHost The node from which we want to calculate the diatance from
+	 * @return the current distance
+	 */
+	private double getDistFor(DTNHost dest,DTNHost nextHost) {
+		Coord destLoc = dest.getLocation();
+		Coord nextHostLoc = nextHost.getLocation();
+		double a = nextHostLoc.getY() - destLoc.getY();
+		double b = destLoc.getX() - nextHostLoc.getX();
+		return Math.pow((a*a+b*b),0.5);
 	}
-	return sumDist;
-}
 
-/**	
-* Returns the current distance between dest node and the nextHost node
-* @param dest The destination node 
-* @param nextHost The node from which we want to calculate the diatance from
-* @return the current distance
-*/
-private double getDistFor(DTNHost dest,DTNHost nextHost)
-{
-	Coord destLoc = dest.getLocation();
-	Coord nextHostLoc = nextHost.getLocation();
-	double x1 = nextHostLoc.getX();
-	double y1 = nextHostLoc.getY();
-	double x2 = destLoc.getX();
-	double y2 = destLoc.getY();
-	double a = y1 - y2;
-	double b = x2 - x1;
-	double c = y2*x1 - y1*x2;
-	double dist = Math.pow((a*a+b*b),0.5); 
-	if(dist<0) dist = -dist;
-	return dist;
-}
+	/**
+	 * Resets the encounter statistics and the distance cache
+	 */
+	public static void reset() {
+		encounters = null;
+		xs = null;
+		ys = null;
+		sumDists = null;
+		sumDistTimes = null;
+	}
 
 	@Override
 	public MessageRouter replicate() {
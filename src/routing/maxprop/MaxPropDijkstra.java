@@ -4,35 +4,51 @@
  */
 package routing.maxprop;
 
-import java.util.Collection;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
-import java.util.PriorityQueue;
-import java.util.Queue;
 import java.util.Set;
 
 /**
  * Dijkstra's shortest path implementation for MaxProp Router module.
+ * The distances and the priority queue of the search are kept in arrays
+ * indexed by the node addresses. The shortest path trees from the sources
+ * asked with {@link #getCost(int, int)} are cached. When the meeting
+ * probabilities of some nodes change (see {@link #probsChanged(int)}), only
+ * the parts of the cached trees whose paths used the changed probabilities
+ * are searched again.
  */
 public class MaxPropDijkstra {
 	/** Value for infinite distance  */
-	private static final Double INFINITY = Double.MAX_VALUE;
-	/** Initial size of the priority queue */
-	private static final int PQ_INIT_SIZE = 11;
-
-	/** Map of node distances from the source node */
-	private DistanceMap distancesFromStart;
-	/** Set of already visited nodes (where the shortest path is known) */
-	private Set<Integer> visited;
-	/** Priority queue of unvisited nodes discovered so far */
-	private Queue<Integer> unvisited;
-	/** Map of previous nodes on the shortest path(s) -- only used for
-	 * debugging purposes */
-	private Map<Integer, Integer> prevNodes;
+	private static final double INFINITY = Double.MAX_VALUE;
+	/** Initial number of nodes the arrays have room for */
+	private static final int INIT_SIZE = 16;
+
 	/** Mapping of to other nodes' (whom this node has met) probability sets */
 	private Map<Integer, MeetingProbabilitySet> probs;
+	/** Cached shortest path trees mapped by the source node */
+	private Map<Integer, PathTree> trees;
+	/** Number of probability changes so far */
+	private int nrofChanges;
+	/** Value of nrofChanges when the probabilities of each node changed */
+	private int[] changedAt;
+	/** Number of nodes the arrays have room for */
+	private int capacity;
+
+	/** The tree that is being searched */
+	private PathTree tree;
+	/** Priority queue of the nodes whose distance is not final yet, as a
+	 * binary heap ordered by the distance and the address of the nodes */
+	private int[] heap;
+	private int heapSize;
+	/** Positions of the nodes in the heap (-1 if not in the heap) */
+	private int[] heapPos;
+	/** Children of the nodes in the tree as linked lists */
+	private int[] firstChild;
+	private int[] nextSibling;
+	/** Nodes whose path used changed probabilities */
+	private boolean[] affected;
+	private int[] stack;
 
 	/**
 	 * Constructor.
@@ -41,184 +57,411 @@ public class MaxPropDijkstra {
 	 */
 	public MaxPropDijkstra(Map<Integer, MeetingProbabilitySet> probs) {
 		this.probs = probs;
-	}
-
-	/**
-	 * Initializes a new search with the first hop router node
-	 * @param firstHop The first hop router node
-	 */
-	private void initWith(Integer firstHop) {
-		this.unvisited = new PriorityQueue<Integer>(PQ_INIT_SIZE,
-				new DistanceComparator());
-		this.visited = new HashSet<Integer>();
-		this.prevNodes = new HashMap<Integer, Integer>();
-		this.distancesFromStart = new DistanceMap();
-
-		// set distance to source 0 and initialize unvisited queue
-		this.distancesFromStart.put(firstHop, 0);
-		this.unvisited.add(firstHop);
+		this.trees = new HashMap<Integer, PathTree>();
+		this.nrofChanges = 0;
+		this.capacity = INIT_SIZE;
+		this.changedAt = new int[INIT_SIZE];
+		this.heap = new int[INIT_SIZE];
+		this.heapSize = 0;
+		this.heapPos = new int[INIT_SIZE];
+		Arrays.fill(this.heapPos, -1);
+		this.firstChild = new int[INIT_SIZE];
+		this.nextSibling = new int[INIT_SIZE];
+		this.affected = new boolean[INIT_SIZE];
+		this.stack = new int[INIT_SIZE];
 	}
 
 	/**
 	 * Calculates total costs to the given set of target nodes. The cost to
 	 * a node is the sum of complements of probabilities that all the links
-	 * come up as the next contact of the nodes.
+	 * come up as the next contact of the nodes. The result is not cached.
 	 * @param from The index (address) of the start node
 	 * @param to The address set of destination nodes
 	 * @return A map of (destination node, cost) tuples
 	 */
 	public Map<Integer, Double> getCosts(Integer from, Set<Integer> to) {
 		Map<Integer, Double> distMap = new HashMap<Integer, Double>();
-		int nrofNodesToFind = to.size();
-
-		initWith(from);
-		Integer node = null;
-
-		// always take the node with shortest distance
-		while ((node = unvisited.poll()) != null) {
-			if (to.contains(node)) {
-				// found one of the requested nodes
-				distMap.put(node, distancesFromStart.get(node));
-				nrofNodesToFind--;
-				if (nrofNodesToFind == 0) {
-					break; // all requested nodes found
+		PathTree t = new PathTree();
+		build(t, from);
+
+		for (Integer node : to) {
+			double dist = t.getDistance(node);
+			if (dist != INFINITY) {
+				distMap.put(node, dist);
+			}
+		}
+
+		return distMap;
+	}
+
+	/**
+	 * Returns the total cost from a node to another (see
+	 * {@link #getCosts(Integer, Set)}). The shortest path tree of the start
+	 * node is cached and updated only when probabilities have changed.
+	 * @param from The address of the start node
+	 * @param to The address of the destination node
+	 * @return The cost or Double.MAX_VALUE if there's no path between the
+	 * nodes
+	 */
+	public double getCost(int from, int to) {
+		PathTree t = this.trees.get(from);
+
+		if (t == null) {
+			t = new PathTree();
+			build(t, from);
+			this.trees.put(from, t);
+		}
+		else if (t.nrofChanges != this.nrofChanges) {
+			update(t);
+		}
+
+		return t.getDistance(to);
+	}
+
+	/**
+	 * Tells that the meeting probabilities of a node have changed, or that
+	 * its probability set has been replaced or added to the mapping. Must
+	 * be called after every such change for the cached costs to be correct.
+	 * @param node The address of the node
+	 */
+	public void probsChanged(int node) {
+		ensureCapacity(node + 1);
+		this.nrofChanges++;
+		this.changedAt[node] = this.nrofChanges;
+	}
+
+	/**
+	 * Removes the cached shortest path tree of a start node (e.g., when
+	 * costs from it are not needed anymore)
+	 * @param from The address of the start node
+	 */
+	public void removeSource(int from) {
+		this.trees.remove(from);
+	}
+
+	/**
+	 * Searches a new shortest path tree
+	 * @param t The tree
+	 * @param source The address of the tree's start node
+	 */
+	private void build(PathTree t, int source) {
+		ensureCapacity(source + 1);
+		this.tree = t;
+		t.clear(this.capacity);
+		t.nrofChanges = this.nrofChanges;
+
+		setDistance(source, 0, -1);
+		search();
+	}
+
+	/**
+	 * Updates a shortest path tree after probabilities have changed. Nodes
+	 * whose path used a link that became more expensive (or disappeared)
+	 * are removed from the tree with their subtrees and searched again
+	 * starting from the rest of the tree. Links that became cheaper are
+	 * relaxed, which updates the nodes that they make closer.
+	 * @param t The tree
+	 */
+	private void update(PathTree t) {
+		int n = this.capacity;
+		int nrofAffected = 0;
+
+		this.tree = t;
+		t.ensureCapacity(n);
+
+		/* link the children of every node */
+		Arrays.fill(firstChild, 0, n, -1);
+		for (int v = 0; v < n; v++) {
+			int parent = t.parent[v];
+			if (parent >= 0) {
+				nextSibling[v] = firstChild[parent];
+				firstChild[parent] = v;
+			}
+		}
+
+		/* find the subtrees behind links that became more expensive */
+		for (int u = 0; u < n; u++) {
+			if (changedAt[u] <= t.nrofChanges || affected[u] ||
+					t.dist[u] == INFINITY) {
+				continue;
+			}
+			MeetingProbabilitySet mps = this.probs.get(u);
+			for (int v = firstChild[u]; v >= 0; v = nextSibling[v]) {
+				int i = (mps == null ? -1 : mps.indexOf(v));
+				if (i < 0 || t.dist[u] + (1 - mps.getProb(i)) > t.dist[v]) {
+					nrofAffected += markSubtree(v);
+				}
+			}
+		}
+
+		if (nrofAffected > 0) {
+			for (int v = 0; v < n; v++) {
+				if (affected[v]) {
+					t.dist[v] = INFINITY;
+					t.parent[v] = -1;
+				}
+			}
+			/* reconnect the removed nodes to the rest of the tree */
+			for (int u = 0; u < n; u++) {
+				MeetingProbabilitySet mps;
+				if (affected[u] || t.dist[u] == INFINITY ||
+						(mps = this.probs.get(u)) == null) {
+					continue;
+				}
+				double uDist = t.dist[u];
+				for (int i = 0, k = mps.size(); i < k; i++) {
+					int v = mps.getNode(i);
+					if (v < n && affected[v]) {
+						double vDist = uDist + (1 - mps.getProb(i));
+						if (t.dist[v] > vDist) {
+							setDistance(v, vDist, u);
+						}
+					}
 				}
 			}
+		}
 
-			visited.add(node); // mark the node as visited
-			relax(node);       // add/update neighbor nodes' distances
+		/* relax the changed links of the nodes whose distance is known */
+		for (int u = 0; u < n; u++) {
+			if (changedAt[u] > t.nrofChanges && !affected[u] &&
+					t.dist[u] != INFINITY) {
+				relax(u);
+			}
 		}
 
-		return distMap;
+		Arrays.fill(affected, 0, n, false);
+		t.nrofChanges = this.nrofChanges;
+		search();
+	}
+
+	/**
+	 * Marks the nodes of a subtree of the tree affected. Subtrees of nodes
+	 * that are already marked are skipped (they have been marked already).
+	 * @param root The root node of the subtree
+	 * @return The number of nodes marked
+	 */
+	private int markSubtree(int root) {
+		int count = 0;
+		int stackSize = 0;
+		stack[stackSize++] = root;
+
+		while (stackSize > 0) {
+			int v = stack[--stackSize];
+			if (affected[v]) {
+				continue;
+			}
+			affected[v] = true;
+			count++;
+			for (int c = firstChild[v]; c >= 0; c = nextSibling[c]) {
+				stack[stackSize++] = c;
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Takes nodes from the queue in the order of their distance and relaxes
+	 * their neighbors until the queue is empty
+	 */
+	private void search() {
+		while (heapSize > 0) {
+			relax(poll());
+		}
 	}
 
 	/**
 	 * Relaxes the neighbors of a node (updates the shortest distances).
 	 * @param node The node whose neighbors are relaxed
 	 */
-	private void relax(Integer node) {
-		double nodeDist = distancesFromStart.get(node);
-		Collection<Integer> neighbors;
+	private void relax(int node) {
+		MeetingProbabilitySet mps = this.probs.get(node);
 
-		if (!this.probs.containsKey(node)) {
+		if (mps == null) {
 			return; // node's neighbors are not known
 		}
 
-		neighbors =	this.probs.get(node).getAllProbs().keySet();
-
-		for (Integer n : neighbors) {
-			if (visited.contains(n)) {
-				continue; // skip visited nodes
-			}
-
+		double nodeDist = tree.dist[node];
+		for (int i = 0, k = mps.size(); i < k; i++) {
+			int n = mps.getNode(i);
 			// n node's distance from path's source node
-			double nDist = nodeDist + getDistance(node, n);
+			double nDist = nodeDist + (1 - mps.getProb(i));
 
-			if (distancesFromStart.get(n) > nDist) {
+			if (tree.getDistance(n) > nDist) {
 				// stored distance > found dist -> update
-				prevNodes.put(n, node); // for debugging
-				setDistance(n, nDist);
+				setDistance(n, nDist, node);
 			}
 		}
 	}
 
 	/**
-	 * Sets the distance from source node to a node
+	 * Sets the distance from source node to a node and moves the node to
+	 * its place in the queue
 	 * @param n The node whose distance is set
 	 * @param distance The distance of the node from the source node
+	 * @param parent The previous node on the path
 	 */
-	private void setDistance(Integer n, double distance) {
-		unvisited.remove(n); // remove node from old place in the queue
-		distancesFromStart.put(n, distance); // update distance
-		unvisited.add(n); // insert node to the new place in the queue
+	private void setDistance(int n, double distance, int parent) {
+		ensureCapacity(n + 1);
+		tree.dist[n] = distance;
+		tree.parent[n] = parent;
+
+		if (heapPos[n] < 0) {
+			heap[heapSize] = n;
+			heapPos[n] = heapSize;
+			heapSize++;
+		}
+		siftUp(heapPos[n]); // distances only decrease
 	}
 
 	/**
-	 * Returns the "distance" between two nodes, i.e., the complement of the
-	 * probability that the next node "from" meets is "to". Works only if there
-	 * exist a probability value for "from" meeting "to".
-	 * @param from The first node
-	 * @param to The second node
-	 * @return The distance between the two nodes
+	 * Removes the node with the smallest distance from the queue
+	 * @return The node
 	 */
-	private double getDistance(Integer from, Integer to) {
-		assert probs.containsKey(from) : "Node " + from + " has not met " + to +
-			" (it has met nodes " + probs.keySet() + ")";
-		return ( 1 - probs.get(from).getProbFor(to) );
+	private int poll() {
+		int first = heap[0];
+		heapPos[first] = -1;
+		heapSize--;
+		if (heapSize > 0) {
+			heap[0] = heap[heapSize];
+			heapPos[heap[0]] = 0;
+			siftDown(0);
+		}
+		return first;
 	}
 
 	/**
-	 * Comparator that compares two nodes by their distance from
-	 * the source node.
+	 * Returns true if node1 should be before node2 in the queue
 	 */
-	private class DistanceComparator implements
-		Comparator<Integer> {
+	private boolean isBefore(int node1, int node2) {
+		double dist1 = tree.dist[node1];
+		double dist2 = tree.dist[node2];
+		return dist1 < dist2 || (dist1 == dist2 && node1 < node2);
+	}
 
-		/**
-		 * Compares two map nodes by their distance from the source node
-		 * @return -1, 0 or 1 if node1's distance is smaller, equal to, or
-		 * bigger than node2's distance
-		 */
-		public int compare(Integer node1, Integer node2) {
-			double dist1 = distancesFromStart.get(node1);
-			double dist2 = distancesFromStart.get(node2);
+	/**
+	 * Moves a heap entry up until the heap property holds
+	 * @param pos Position of the entry
+	 */
+	private void siftUp(int pos) {
+		int node = heap[pos];
+		while (pos > 0) {
+			int parentPos = (pos - 1) / 2;
+			if (!isBefore(node, heap[parentPos])) {
+				break;
+			}
+			heap[pos] = heap[parentPos];
+			heapPos[heap[pos]] = pos;
+			pos = parentPos;
+		}
+		heap[pos] = node;
+		heapPos[node] = pos;
+	}
 
-			if (dist1 > dist2) {
-				return 1;
+	/**
+	 * Moves a heap entry down until the heap property holds
+	 * @param pos Position of the entry
+	 */
+	private void siftDown(int pos) {
+		int node = heap[pos];
+		while (true) {
+			int child = 2 * pos + 1;
+			if (child >= heapSize) {
+				break;
 			}
-			else if (dist1 < dist2) {
-				return -1;
+			if (child + 1 < heapSize && isBefore(heap[child + 1],
+					heap[child])) {
+				child++;
 			}
-			else {
-				return node1.compareTo(node2);
+			if (!isBefore(heap[child], node)) {
+				break;
 			}
+			heap[pos] = heap[child];
+			heapPos[heap[pos]] = pos;
+			pos = child;
+		}
+		heap[pos] = node;
+		heapPos[node] = pos;
+	}
+
+	/**
+	 * Makes sure the arrays (and the tree being searched) have room for
+	 * the given number of nodes
+	 * @param size The number of nodes
+	 */
+	private void ensureCapacity(int size) {
+		if (size <= this.capacity) {
+			return;
+		}
+
+		int newCapacity = Math.max(size, this.capacity * 2);
+		changedAt = Arrays.copyOf(changedAt, newCapacity);
+		heap = Arrays.copyOf(heap, newCapacity);
+		heapPos = Arrays.copyOf(heapPos, newCapacity);
+		Arrays.fill(heapPos, this.capacity, newCapacity, -1);
+		firstChild = Arrays.copyOf(firstChild, newCapacity);
+		nextSibling = Arrays.copyOf(nextSibling, newCapacity);
+		affected = Arrays.copyOf(affected, newCapacity);
+		stack = Arrays.copyOf(stack, newCapacity);
+		this.capacity = newCapacity;
+
+		if (this.tree != null) {
+			this.tree.ensureCapacity(newCapacity);
 		}
 	}
 
 	/**
-	 * Simple Map implementation for storing distances.
+	 * Shortest path tree from one start node: the distances of the nodes
+	 * from the start node and the previous node on their path.
 	 */
-	private class DistanceMap {
-		private HashMap<Integer, Double> map;
+	private static class PathTree {
+		private double[] dist;
+		private int[] parent;
+		/** Number of probability changes the tree is up to date with */
+		private int nrofChanges;
 
 		/**
-		 * Constructor. Creates an empty distance map
+		 * Constructor. Creates a tree with no nodes.
 		 */
-		public DistanceMap() {
-			this.map = new HashMap<Integer, Double>();
+		public PathTree() {
+			this.dist = new double[0];
+			this.parent = new int[0];
 		}
 
 		/**
-		 * Returns the distance to a node. If no distance value
-		 * is found, returns {@link MaxPropDijkstra#INFINITY} as the value.
-		 * @param node The node whose distance is requested
-		 * @return The distance to that node
+		 * Removes all nodes from the tree
+		 * @param capacity Number of nodes to make room for
 		 */
-		public double get(Integer node) {
-			Double value = map.get(node);
-			if (value != null) {
-				return value;
-			}
-			else {
-				return INFINITY;
-			}
+		public void clear(int capacity) {
+			this.dist = new double[0];
+			this.parent = new int[0];
+			ensureCapacity(capacity);
 		}
 
 		/**
-		 * Puts a new distance value for a map node
-		 * @param node The node
-		 * @param distance Distance to that node
+		 * Makes sure the tree has room for the given number of nodes. The
+		 * new nodes are not in the tree.
+		 * @param capacity The number of nodes
 		 */
-		public void  put(Integer node, double distance) {
-			map.put(node, distance);
+		public void ensureCapacity(int capacity) {
+			int oldCapacity = dist.length;
+			if (capacity <= oldCapacity) {
+				return;
+			}
+			dist = Arrays.copyOf(dist, capacity);
+			parent = Arrays.copyOf(parent, capacity);
+			Arrays.fill(dist, oldCapacity, capacity, INFINITY);
+			Arrays.fill(parent, oldCapacity, capacity, -1);
 		}
 
 		/**
-		 * Returns a string representation of the map's contents
-		 * @return a string representation of the map's contents
+		 * Returns the distance to a node. If the node is not in the tree,
+		 * returns {@link MaxPropDijkstra#INFINITY} as the value.
+		 * @param node The node whose distance is requested
+		 * @return The distance to that node
 		 */
-		public String toString() {
-			return map.toString();
+		public double getDistance(int node) {
+			return node < dist.length ? dist[node] : INFINITY;
 		}
 	}
 }
@@ -4,6 +4,7 @@
  */
 package routing.maxprop;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -14,17 +15,40 @@ import static core.Constants.DEBUG;
 
 /**
  * Class for storing and manipulating the meeting probabilities for the MaxProp
- * router module.
+ * router module. The probabilities are kept in arrays ordered by the node
+ * index. Normalizing divides all the probabilities by the same value, so
+ * instead of touching every entry it only updates a common scale factor that
+ * the values are multiplied with when they are read. Replicas share the
+ * arrays with the original set until either of them is changed.
  */
 public class MeetingProbabilitySet {
 	public static final int INFINITE_SET_SIZE = Integer.MAX_VALUE;
-	/** meeting probabilities (probability that the next node one meets is X) */
-	private Map<Integer, Double> probs;
+	/** scale below which the scale is folded into the values (so that the
+	 * scale never underflows) */
+	private static final double MIN_SCALE = 1e-100;
+	/** initial number of entries the arrays have room for */
+	private static final int INIT_SIZE = 8;
+
+	/** node indexes of the entries in ascending order */
+	private int[] nodes;
+	/** meeting probabilities of the entries divided by the scale
+	 * (probability that the next node one meets is X) */
+	private double[] values;
+	private int size;
+	/** factor all the values are multiplied with */
+	private double scale;
+	/** entries as a min-heap ordered by the probability (null if the set
+	 * size is not limited) */
+	private int[] heap;
+	/** positions of the entries in the heap */
+	private int[] heapPos;
+	/** true if the arrays may be shared with a replica */
+	private boolean shared;
 	/** the time when this MPS was last updated */
 	private double lastUpdateTime;
 	/** the alpha parameter */
 	private double alpha;
-    private int maxSetSize;
+	private int maxSetSize;
 
 	/**
 	 * Constructor. Creates a probability set with empty node-probability
@@ -34,14 +58,18 @@ public class MeetingProbabilitySet {
 	 */
 	public MeetingProbabilitySet(int maxSetSize, double alpha) {
 		this.alpha = alpha;
-		this.probs = new HashMap<Integer, Double>();
-        if (maxSetSize == INFINITE_SET_SIZE || maxSetSize < 1) {
-	this.probs = new HashMap<Integer, Double>();
-	this.maxSetSize = INFINITE_SET_SIZE;
-        } else {
-	this.probs = new HashMap<Integer, Double>(maxSetSize);
-            this.maxSetSize = maxSetSize;
-        }
+		this.nodes = new int[INIT_SIZE];
+		this.values = new double[INIT_SIZE];
+		this.size = 0;
+		this.scale = 1;
+		if (maxSetSize == INFINITE_SET_SIZE || maxSetSize < 1) {
+			this.maxSetSize = INFINITE_SET_SIZE;
+		} else {
+			this.maxSetSize = maxSetSize;
+			this.heap = new int[INIT_SIZE];
+			this.heapPos = new int[INIT_SIZE];
+		}
+		this.shared = false;
 		this.lastUpdateTime = 0;
 	}
 
@@ -62,7 +90,7 @@ public class MeetingProbabilitySet {
 		this(INFINITE_SET_SIZE, alpha);
 		double prob = 1.0/initiallyKnownNodes.size();
 		for (Integer i : initiallyKnownNodes) {
-			this.probs.put(i, prob);
+			setProbFor(i, prob);
 		}
 	}
 
@@ -74,39 +102,37 @@ public class MeetingProbabilitySet {
 	 * then all the probabilities are normalized so that their sum equals to 1.
 	 * @param index The node index to update the probability for
 	 */
-	public void updateMeetingProbFor(Integer index) {
-        Map.Entry<Integer, Double> smallestEntry = null;
-        double smallestValue = Double.MAX_VALUE;
-
+	public void updateMeetingProbFor(int index) {
 		this.lastUpdateTime = SimClock.getTime();
 
-		if (probs.size() == 0) { // first entry
-			probs.put(index, 1.0);
+		if (size == 0) { // first entry
+			this.scale = 1;
+			setProbFor(index, 1.0);
 			return;
 		}
 
-		double newValue = getProbFor(index) + alpha;
-		probs.put(index, newValue);
+		setProbFor(index, getProbFor(index) + alpha);
 
 		/* now the sum of all entries is 1+alpha;
 		 * normalize to one by dividing all the entries by 1+alpha */
-		for (Map.Entry<Integer, Double> entry : probs.entrySet()) {
-			entry.setValue(entry.getValue() / (1+alpha));
-            if (entry.getValue() < smallestValue) {
-                smallestEntry = entry;
-                smallestValue = entry.getValue();
-            }
-
+		this.scale /= (1+alpha);
+		if (this.scale < MIN_SCALE) {
+			for (int i = 0; i < size; i++) {
+				values[i] *= this.scale;
+			}
+			this.scale = 1;
 		}
 
-        if (probs.size() >= maxSetSize) {
-            if (DEBUG) core.Debug.p("Probsize: " + probs.size() + " dropping " +
-					probs.remove(smallestEntry.getKey()));
-        }
+		if (size >= maxSetSize) {
+			int smallest = heap[0];
+			if (DEBUG) core.Debug.p("Probsize: " + size + " dropping " +
+					getProb(smallest));
+			removeEntry(smallest);
+		}
 	}
 
-	public void updateMeetingProbFor(Integer index, double iet)	{
-		probs.put(index, iet);
+	public void updateMeetingProbFor(int index, double iet)	{
+		setProbFor(index, iet);
 	}
 
 	/**
@@ -114,9 +140,10 @@ public class MeetingProbabilitySet {
 	 * @param index The index of the node to look the P for
 	 * @return the current delivery probability value
 	 */
-	public double getProbFor(Integer index) {
-		if (probs.containsKey(index)) {
-			return probs.get(index);
+	public double getProbFor(int index) {
+		int i = indexOf(index);
+		if (i >= 0) {
+			return values[i] * scale;
 		}
 		else {
 			/* the node with the given index has not been met */
@@ -125,11 +152,53 @@ public class MeetingProbabilitySet {
 	}
 
 	/**
-	 * Returns a reference to the probability map of this probability set
-	 * @return a reference to the probability map of this probability set
+	 * Returns the position of a node's entry in this set
+	 * @param index The index of the node
+	 * @return The position of the entry (see {@link #getNode(int)}) or a
+	 * negative value if there's no entry for the node
+	 */
+	public int indexOf(int index) {
+		return Arrays.binarySearch(nodes, 0, size, index);
+	}
+
+	/**
+	 * Returns the number of entries in this set
+	 * @return The number of entries
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the node index of an entry. The entries are ordered by their
+	 * node index.
+	 * @param i The position of the entry (from 0 to size-1)
+	 * @return The node index
+	 */
+	public int getNode(int i) {
+		return nodes[i];
+	}
+
+	/**
+	 * Returns the probability of an entry
+	 * @param i The position of the entry (from 0 to size-1)
+	 * @return The probability
+	 */
+	public double getProb(int i) {
+		return values[i] * scale;
+	}
+
+	/**
+	 * Returns the probabilities of this set as a map. Changes to the map
+	 * don't affect this set.
+	 * @return a map of (node index, probability) tuples
 	 */
 	public Map<Integer, Double> getAllProbs() {
-		return this.probs;
+		Map<Integer, Double> probs = new HashMap<Integer, Double>();
+		for (int i = 0; i < size; i++) {
+			probs.put(nodes[i], getProb(i));
+		}
+		return probs;
 	}
 
 	/**
@@ -148,17 +217,21 @@ public class MeetingProbabilitySet {
 	}
 
 	/**
-	 * Returns a deep copy of the probability set
-	 * @return a deep copy of the probability set
+	 * Returns a copy of the probability set. The copy shares the arrays
+	 * with this set until either of them is changed.
+	 * @return a copy of the probability set
 	 */
 	public MeetingProbabilitySet replicate() {
 		MeetingProbabilitySet replica = new MeetingProbabilitySet(
 				this.maxSetSize, alpha);
 
-		// do a deep copy
-		for (Map.Entry<Integer, Double> e : probs.entrySet()) {
-			replica.probs.put(e.getKey(), e.getValue().doubleValue());
-		}
+		replica.nodes = this.nodes;
+		replica.values = this.values;
+		replica.size = this.size;
+		replica.scale = this.scale;
+		replica.heap = this.heap;
+		replica.heapPos = this.heapPos;
+		replica.shared = this.shared = true;
 
 		replica.lastUpdateTime = this.lastUpdateTime;
 		return replica;
@@ -170,6 +243,171 @@ public class MeetingProbabilitySet {
 	 */
     @Override
 	public String toString() {
-		return "probs: " +	this.probs.toString();
+		return "probs: " +	getAllProbs().toString();
+	}
+
+	/**
+	 * Sets the probability for a node index, adding an entry for it if
+	 * there was none
+	 * @param index The node index
+	 * @param prob The new probability
+	 */
+	private void setProbFor(int index, double prob) {
+		copyIfShared();
+		int i = indexOf(index);
+		if (i >= 0) {
+			values[i] = prob / scale;
+			if (heap != null) {
+				siftUp(heapPos[i]);
+				siftDown(heapPos[i]);
+			}
+		}
+		else {
+			insertEntry(-(i + 1), index, prob / scale);
+		}
+	}
+
+	/**
+	 * Makes a private copy of the arrays if they may be shared with a
+	 * replica
+	 */
+	private void copyIfShared() {
+		if (!shared) {
+			return;
+		}
+		nodes = nodes.clone();
+		values = values.clone();
+		if (heap != null) {
+			heap = heap.clone();
+			heapPos = heapPos.clone();
+		}
+		shared = false;
+	}
+
+	/**
+	 * Inserts a new entry
+	 * @param pos The position of the entry (in the node index order)
+	 * @param index The node index
+	 * @param value The value (probability divided by scale)
+	 */
+	private void insertEntry(int pos, int index, double value) {
+		if (size == nodes.length) {
+			int newSize = size * 2;
+			nodes = Arrays.copyOf(nodes, newSize);
+			values = Arrays.copyOf(values, newSize);
+			if (heap != null) {
+				heap = Arrays.copyOf(heap, newSize);
+				heapPos = Arrays.copyOf(heapPos, newSize);
+			}
+		}
+
+		System.arraycopy(nodes, pos, nodes, pos + 1, size - pos);
+		System.arraycopy(values, pos, values, pos + 1, size - pos);
+		nodes[pos] = index;
+		values[pos] = value;
+
+		if (heap != null) {
+			/* the entries after pos moved one step */
+			System.arraycopy(heapPos, pos, heapPos, pos + 1, size - pos);
+			for (int k = 0; k < size; k++) {
+				if (heap[k] >= pos) {
+					heap[k]++;
+				}
+			}
+			heap[size] = pos;
+			heapPos[pos] = size;
+			size++;
+			siftUp(size - 1);
+		}
+		else {
+			size++;
+		}
+	}
+
+	/**
+	 * Removes an entry
+	 * @param pos The position of the entry (in the node index order)
+	 */
+	private void removeEntry(int pos) {
+		if (heap != null) {
+			int hp = heapPos[pos];
+			int last = heap[size - 1];
+			heap[hp] = last;
+			heapPos[last] = hp;
+			heap[size - 1] = pos;
+			heapPos[pos] = size - 1;
+			if (hp < size - 1) {
+				/* removed entry is now out of the heap's range */
+				size--;
+				siftUp(hp);
+				siftDown(hp);
+				size++;
+			}
+
+			/* the entries after pos move one step back */
+			System.arraycopy(heapPos, pos + 1, heapPos, pos, size - pos - 1);
+			for (int k = 0; k < size - 1; k++) {
+				if (heap[k] > pos) {
+					heap[k]--;
+				}
+			}
+		}
+
+		System.arraycopy(nodes, pos + 1, nodes, pos, size - pos - 1);
+		System.arraycopy(values, pos + 1, values, pos, size - pos - 1);
+		size--;
+	}
+
+	/**
+	 * Returns true if entry e1 should be before e2 in the heap (it has a
+	 * smaller probability or the same probability and a smaller node index)
+	 */
+	private boolean isBefore(int e1, int e2) {
+		return values[e1] < values[e2] || (values[e1] == values[e2] &&
+				e1 < e2);
+	}
+
+	/**
+	 * Moves a heap entry up until the heap property holds
+	 * @param hp Position in the heap
+	 */
+	private void siftUp(int hp) {
+		int e = heap[hp];
+		while (hp > 0) {
+			int parent = (hp - 1) / 2;
+			if (!isBefore(e, heap[parent])) {
+				break;
+			}
+			heap[hp] = heap[parent];
+			heapPos[heap[hp]] = hp;
+			hp = parent;
+		}
+		heap[hp] = e;
+		heapPos[e] = hp;
+	}
+
+	/**
+	 * Moves a heap entry down until the heap property holds
+	 * @param hp Position in the heap
+	 */
+	private void siftDown(int hp) {
+		int e = heap[hp];
+		while (true) {
+			int child = 2 * hp + 1;
+			if (child >= size) {
+				break;
+			}
+			if (child + 1 < size && isBefore(heap[child + 1], heap[child])) {
+				child++;
+			}
+			if (!isBefore(heap[child], e)) {
+				break;
+			}
+			heap[hp] = heap[child];
+			heapPos[heap[hp]] = hp;
+			hp = child;
+		}
+		heap[hp] = e;
+		heapPos[e] = hp;
 	}
 }
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.schedule;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Time-expanded contact graph of a schedule. All the schedule entries are
+ * sorted once by their time, and the earliest arrival times from a source
+ * node to all other nodes are found in a single sweep over the entries that
+ * start after the start time. One sweep answers the queries of all messages
+ * that leave the same node at the same time. The graph is a snapshot of
+ * the oracle's entries when it was created.
+ */
+public class ContactGraph {
+	/** Value for infinite time */
+	private static final double INFINITY = Double.MAX_VALUE;
+
+	/** all entries sorted by their time (and arrival time) */
+	private ScheduleEntry[] entries;
+	/** earliest known arrival times at the nodes */
+	private double[] arrivals;
+	/** entries that the earliest arrivals used */
+	private ScheduleEntry[] prevHops;
+	/** source node and start time of the last sweep */
+	private int source;
+	private double startTime;
+
+	/**
+	 * Constructor. Creates a contact graph of the oracle's entries.
+	 * @param oracle The schedule oracle
+	 */
+	public ContactGraph(ScheduleOracle oracle) {
+		List<ScheduleEntry> all = oracle.getEntries();
+		int nrofNodes = 0;
+
+		this.entries = all.toArray(new ScheduleEntry[all.size()]);
+		Arrays.sort(this.entries, new Comparator<ScheduleEntry>() {
+			public int compare(ScheduleEntry e1, ScheduleEntry e2) {
+				int c = Double.compare(e1.getTime(), e2.getTime());
+				if (c == 0) {
+					c = Double.compare(e1.getDestinationTime(),
+							e2.getDestinationTime());
+				}
+				return c;
+			}
+		});
+
+		for (ScheduleEntry se : this.entries) {
+			nrofNodes = Math.max(nrofNodes,
+					Math.max(se.getFrom(), se.getTo()) + 1);
+		}
+		this.arrivals = new double[nrofNodes];
+		this.prevHops = new ScheduleEntry[nrofNodes];
+		this.source = -1;
+	}
+
+	/**
+	 * Finds the earliest arrival times from a node to all other nodes.
+	 * The results can be read with {@link #getArrivalTime(int)} and
+	 * {@link #getPath(int)} until the next sweep.
+	 * @param from The source node
+	 * @param time The time when the paths start
+	 */
+	public void sweep(int from, double time) {
+		assert time >= 0.0 : "Can't use negative start time";
+		Arrays.fill(arrivals, INFINITY);
+		Arrays.fill(prevHops, null);
+		this.source = from;
+		this.startTime = time;
+
+		if (from >= arrivals.length) {
+			return; // the node has no entries
+		}
+		arrivals[from] = time;
+
+		int i = ScheduleOracle.getFirstIndex(entries, time);
+		while (i < entries.length) {
+			/* entries that start at the same time; if one of them arrives
+			 * immediately, the others may continue from there */
+			double groupTime = entries[i].getTime();
+			int groupEnd = i;
+			while (groupEnd < entries.length &&
+					entries[groupEnd].getTime() == groupTime) {
+				groupEnd++;
+			}
+
+			boolean zeroHop;
+			do {
+				zeroHop = false;
+				for (int j = i; j < groupEnd; j++) {
+					ScheduleEntry se = entries[j];
+					int to = se.getTo();
+					double timeTo = se.getDestinationTime();
+					if (arrivals[se.getFrom()] <= groupTime &&
+							timeTo < arrivals[to]) {
+						arrivals[to] = timeTo;
+						prevHops[to] = se;
+						zeroHop |= (timeTo == groupTime);
+					}
+				}
+			} while (zeroHop);
+
+			i = groupEnd;
+		}
+	}
+
+	/**
+	 * Returns the earliest time when one can be at a node when starting
+	 * from the source of the last sweep
+	 * @param node The node
+	 * @return The arrival time or Double.MAX_VALUE if the node can't be
+	 * reached
+	 */
+	public double getArrivalTime(int node) {
+		if (node == source) {
+			return startTime;
+		}
+		return node < arrivals.length ? arrivals[node] : INFINITY;
+	}
+
+	/**
+	 * Returns the fastest path from the source of the last sweep to a node
+	 * @param to The destination of the path
+	 * @return the path as a list of schedule entries or an empty list if
+	 * such path is not available
+	 */
+	public List<ScheduleEntry> getPath(int to) {
+		List<ScheduleEntry> path = new ArrayList<ScheduleEntry>();
+
+		if (to == source || to >= prevHops.length || prevHops[to] == null) {
+			return path;
+		}
+
+		ScheduleEntry prev = prevHops[to];
+		while (prev.getFrom() != source) {
+			path.add(prev);
+			prev = prevHops[prev.getFrom()];
+		}
+		path.add(prev);
+		Collections.reverse(path);
+
+		return path;
+	}
+}
@@ -6,6 +6,9 @@ package routing.schedule;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -14,6 +17,9 @@ public class ScheduleOracle implements Serializable{
 	private static final long serialVersionUID = 42L;
 
 	Map<Integer, List<ScheduleEntry>> schedules;
+	/** schedule entries of the nodes sorted by their time (built when
+	 * needed) */
+	private transient Map<Integer, ScheduleEntry[]> sortedSchedules;
 
 	public ScheduleOracle() {
 		this.schedules = new HashMap<Integer, List<ScheduleEntry>>();
@@ -37,6 +43,9 @@ public class ScheduleOracle implements Serializable{
 		}
 
 		list.add(new ScheduleEntry(start, from, via, to, duration));
+		if (sortedSchedules != null) {
+			sortedSchedules.remove(from);
+		}
 	}
 
 	/**
@@ -52,26 +61,80 @@ public class ScheduleOracle implements Serializable{
 
 	/**
 	 * Returns a list of schedule entries for nodes reachable after given time
-	 * from the given node
+	 * from the given node. The entries are ordered by their time. The list
+	 * is a read-only view to the oracle's data.
 	 * @param from The source node
 	 * @param time Time to start
 	 * @return List of reachable nodes
 	 */
 	public List<ScheduleEntry> getConnected(int from, double time) {
-		List<ScheduleEntry> connected = new ArrayList<ScheduleEntry>();
-		List<ScheduleEntry> all = schedules.get(from);
+		ScheduleEntry[] all = getSchedule(from);
+		int first = getFirstIndex(all, time);
+
+		return Collections.unmodifiableList(
+				Arrays.asList(all).subList(first, all.length));
+	}
 
-		if (all == null) {
-			return connected;
+	/**
+	 * Returns the schedule entries of a node sorted by their time. The
+	 * returned array must not be modified.
+	 * @param from The source node of the entries
+	 * @return The entries (an empty array if the node has none)
+	 */
+	ScheduleEntry[] getSchedule(int from) {
+		if (sortedSchedules == null) {
+			sortedSchedules = new HashMap<Integer, ScheduleEntry[]>();
 		}
 
-		for (ScheduleEntry s : all) {
-			if (s.getTime() >= time) {
-				connected.add(s);
+		ScheduleEntry[] sorted = sortedSchedules.get(from);
+		if (sorted == null) {
+			List<ScheduleEntry> list = schedules.get(from);
+			if (list == null) {
+				return new ScheduleEntry[0];
+			}
+			sorted = list.toArray(new ScheduleEntry[list.size()]);
+			Arrays.sort(sorted, new Comparator<ScheduleEntry>() {
+				public int compare(ScheduleEntry e1, ScheduleEntry e2) {
+					return Double.compare(e1.getTime(), e2.getTime());
+				}
+			});
+			sortedSchedules.put(from, sorted);
+		}
+
+		return sorted;
+	}
+
+	/**
+	 * Finds the first entry whose time is at least the given time
+	 * @param sorted Entries sorted by their time
+	 * @param time The time
+	 * @return Index of the first such entry or the length of the array if
+	 * there is none
+	 */
+	static int getFirstIndex(ScheduleEntry[] sorted, double time) {
+		int low = 0;
+		int high = sorted.length;
+
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (sorted[mid].getTime() < time) {
+				low = mid + 1;
+			}
+			else {
+				high = mid;
 			}
 		}
 
-		return connected;
+		return low;
+	}
+
+	/**
+	 * Tells the oracle that the times of its entries have been changed
+	 * (see {@link ScheduleEntry#setDelta(double)}). The entries are sorted
+	 * again when they are needed.
+	 */
+	public void timesChanged() {
+		sortedSchedules = null;
 	}
 
 	/**
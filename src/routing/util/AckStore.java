@@ -0,0 +1,119 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import core.Message;
+import core.Settings;
+
+/**
+ * Set of acknowledged (i.e., delivered) messages of a router. The messages
+ * are identified by their handles (see {@link Message#getHandle()}), which
+ * are dense integer indexes shared by all the stores, so the stores can be
+ * kept as bitmaps (or other compact structures) and merged word by word.
+ * The store to use is selected with the {@link #ACK_STORE_S} setting; all
+ * the routers that exchange acknowledgements must use the same type of
+ * store.
+ */
+public abstract class AckStore {
+	/** Ack store class -setting id ({@value}). Name of the class (in the
+	 * package {@value #ACK_STORE_PACKAGE}) of the store to use. Default
+	 * value is {@link #DEF_ACK_STORE}. */
+	public static final String ACK_STORE_S = "ackStore";
+	/** Default ack store class ({@value}) */
+	public static final String DEF_ACK_STORE = "BitmapAckStore";
+	/** Package where the ack store classes are looked from ({@value}) */
+	public static final String ACK_STORE_PACKAGE = "routing.util.";
+
+	/**
+	 * Resets the message ID indexes (i.e., the message handles; see
+	 * {@link Message#reset()})
+	 */
+	public static void reset() {
+		Message.reset();
+	}
+
+	/**
+	 * Creates a new ack store of the type defined in the settings
+	 * @param s The settings where the {@link #ACK_STORE_S} setting is read
+	 * @return The new (empty) store
+	 */
+	public static AckStore createStore(Settings s) {
+		return (AckStore)s.createIntializedObject(ACK_STORE_PACKAGE +
+				s.getSetting(ACK_STORE_S, DEF_ACK_STORE));
+	}
+
+	/**
+	 * Returns the index of a message ID. A new index is given for IDs that
+	 * haven't been seen before.
+	 * @param id The message ID
+	 * @return The index of the ID
+	 */
+	public static int indexOf(String id) {
+		return Message.handleOf(id);
+	}
+
+	/**
+	 * Returns the message ID of an index
+	 * @param index The index
+	 * @return The message ID with the index
+	 */
+	public static String idOf(int index) {
+		return Message.idOf(index);
+	}
+
+	/**
+	 * Adds a message to the acknowledged messages
+	 * @param id ID of the message
+	 * @return true if the message wasn't acknowledged before
+	 */
+	public boolean add(String id) {
+		return add(indexOf(id));
+	}
+
+	/**
+	 * Returns true if the message is (or may be, depending on the store)
+	 * acknowledged
+	 * @param id ID of the message
+	 * @return true if the message is acknowledged
+	 */
+	public boolean contains(String id) {
+		int index = Message.findHandle(id);
+		return index >= 0 && contains(index);
+	}
+
+	/**
+	 * Adds a message index to the acknowledged messages
+	 * @param index Index of the message
+	 * @return true if the message wasn't (known to be) acknowledged before
+	 */
+	public abstract boolean add(int index);
+
+	/**
+	 * Returns true if the message index is (or may be) acknowledged
+	 * @param index Index of the message
+	 * @return true if the message is acknowledged
+	 */
+	public abstract boolean contains(int index);
+
+	/**
+	 * Returns true if no messages have been acknowledged
+	 * @return true if the store is empty
+	 */
+	public abstract boolean isEmpty();
+
+	/**
+	 * Adds all the acknowledgements of another store to this store
+	 * @param other The other store (must be of the same type)
+	 * @return Indexes of the messages that were acknowledged in the other
+	 * store but not in this one, or null if the store can't tell them
+	 */
+	public abstract int[] merge(AckStore other);
+
+	/**
+	 * Creates a new, empty, store with the same settings as this one
+	 * @return The new store
+	 */
+	public abstract AckStore replicate();
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import java.util.Arrays;
+
+import core.Settings;
+import core.SimError;
+
+/**
+ * Ack store that keeps the acknowledged message indexes in a bitmap. The
+ * bitmaps are merged with a word-wise OR, and the newly learned indexes are
+ * found from the words that changed.
+ */
+public class BitmapAckStore extends AckStore {
+	/** how many words the bitmap initially has */
+	private static final int INITIAL_WORDS = 4;
+
+	private long[] words;
+	/** number of words that have bits set (the rest are all zero) */
+	private int nrofWords;
+
+	/**
+	 * Constructor.
+	 * @param s The settings object (not used)
+	 */
+	public BitmapAckStore(Settings s) {
+		this();
+	}
+
+	/**
+	 * Creates an empty store
+	 */
+	public BitmapAckStore() {
+		this.words = new long[INITIAL_WORDS];
+		this.nrofWords = 0;
+	}
+
+	@Override
+	public boolean add(int index) {
+		int w = index >>> 6;
+		if (w >= nrofWords) {
+			ensureWords(w + 1);
+			nrofWords = w + 1;
+		}
+		long old = words[w];
+		words[w] |= 1L << index;
+		return words[w] != old;
+	}
+
+	@Override
+	public boolean contains(int index) {
+		int w = index >>> 6;
+		return w < nrofWords && (words[w] & (1L << index)) != 0;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return nrofWords == 0;
+	}
+
+	@Override
+	public int[] merge(AckStore other) {
+		if (!(other instanceof BitmapAckStore)) {
+			throw new SimError("Can't merge " + other.getClass().getName() +
+					" to " + getClass().getName());
+		}
+		BitmapAckStore o = (BitmapAckStore)other;
+		if (o.nrofWords > nrofWords) {
+			ensureWords(o.nrofWords);
+			nrofWords = o.nrofWords;
+		}
+
+		int[] learned = new int[0];
+		int nrofLearned = 0;
+		for (int w = 0; w < o.nrofWords; w++) {
+			long added = o.words[w] & ~words[w];
+			if (added == 0) {
+				continue;
+			}
+			words[w] |= added;
+
+			int needed = nrofLearned + Long.bitCount(added);
+			if (needed > learned.length) {
+				learned = Arrays.copyOf(learned,
+						Math.max(needed, learned.length * 2));
+			}
+			while (added != 0) {
+				learned[nrofLearned++] = (w << 6) +
+					Long.numberOfTrailingZeros(added);
+				added &= added - 1;
+			}
+		}
+
+		return nrofLearned == learned.length ? learned :
+			Arrays.copyOf(learned, nrofLearned);
+	}
+
+	@Override
+	public AckStore replicate() {
+		return new BitmapAckStore();
+	}
+
+	/**
+	 * Makes sure that the bitmap has room for the given number of words
+	 * @param size The number of words needed
+	 */
+	private void ensureWords(int size) {
+		if (size > words.length) {
+			words = Arrays.copyOf(words, Math.max(size, words.length * 2));
+		}
+	}
+}
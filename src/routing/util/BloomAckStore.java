@@ -0,0 +1,138 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import core.Settings;
+import core.SettingsError;
+import core.SimError;
+
+/**
+ * Ack store that keeps the acknowledged messages in a Bloom filter of fixed
+ * size. Unlike the {@link BitmapAckStore}, the size of the store doesn't grow
+ * with the number of messages, but the store can give false positives,
+ * i.e., report messages that weren't delivered as acknowledged (and so make
+ * the routers delete them). The probability of that grows with the number
+ * of acknowledged messages and can be tuned with the settings.
+ */
+public class BloomAckStore extends AckStore {
+	/** Bloom filter size -setting id ({@value}). Number of bits in the
+	 * filter. Default value is {@link #DEF_BLOOM_SIZE}. */
+	public static final String BLOOM_SIZE_S = "ackBloomSize";
+	/** Default Bloom filter size ({@value}) */
+	public static final int DEF_BLOOM_SIZE = 65536;
+
+	/** Number of hash functions -setting id ({@value}). Default value is
+	 * {@link #DEF_BLOOM_HASHES}. */
+	public static final String BLOOM_HASHES_S = "ackBloomHashes";
+	/** Default number of hash functions ({@value}) */
+	public static final int DEF_BLOOM_HASHES = 4;
+
+	private final int nrofHashes;
+	private final long[] words;
+	private boolean isEmpty;
+
+	/**
+	 * Constructor.
+	 * @param s The settings object
+	 */
+	public BloomAckStore(Settings s) {
+		this(s.getInt(BLOOM_SIZE_S, DEF_BLOOM_SIZE),
+				s.getInt(BLOOM_HASHES_S, DEF_BLOOM_HASHES));
+	}
+
+	/**
+	 * Creates an empty store
+	 * @param size Number of bits in the filter
+	 * @param nrofHashes Number of hash functions
+	 */
+	public BloomAckStore(int size, int nrofHashes) {
+		if (size < 64) {
+			throw new SettingsError("Too small Bloom filter size " + size);
+		}
+		if (nrofHashes < 1) {
+			throw new SettingsError("Invalid number of hash functions " +
+					nrofHashes);
+		}
+		this.words = new long[(size + 63) >>> 6];
+		this.nrofHashes = nrofHashes;
+		this.isEmpty = true;
+	}
+
+	@Override
+	public boolean add(int index) {
+		long h = hash(index);
+		int h1 = (int)h;
+		int h2 = (int)(h >>> 32) | 1;
+		int size = words.length << 6;
+		boolean changed = false;
+		for (int i = 0; i < nrofHashes; i++) {
+			int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % size;
+			long old = words[bit >>> 6];
+			words[bit >>> 6] |= 1L << bit;
+			changed |= words[bit >>> 6] != old;
+		}
+		isEmpty = false;
+		return changed;
+	}
+
+	@Override
+	public boolean contains(int index) {
+		long h = hash(index);
+		int h1 = (int)h;
+		int h2 = (int)(h >>> 32) | 1;
+		int size = words.length << 6;
+		for (int i = 0; i < nrofHashes; i++) {
+			int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % size;
+			if ((words[bit >>> 6] & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return isEmpty;
+	}
+
+	/**
+	 * {@inheritDoc} The filter can't tell which messages were learned, so
+	 * this always returns null.
+	 */
+	@Override
+	public int[] merge(AckStore other) {
+		if (!(other instanceof BloomAckStore) ||
+				((BloomAckStore)other).words.length != words.length ||
+				((BloomAckStore)other).nrofHashes != nrofHashes) {
+			throw new SimError("Can't merge Bloom filters of different types");
+		}
+		BloomAckStore o = (BloomAckStore)other;
+		for (int w = 0; w < words.length; w++) {
+			words[w] |= o.words[w];
+		}
+		isEmpty &= o.isEmpty;
+		return null;
+	}
+
+	@Override
+	public AckStore replicate() {
+		return new BloomAckStore(words.length << 6, nrofHashes);
+	}
+
+	/**
+	 * Mixes the bits of an index (the finalizer of the 64 bit MurmurHash3)
+	 * @param index The index to hash
+	 * @return The hash value
+	 */
+	private static long hash(int index) {
+		long h = index;
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
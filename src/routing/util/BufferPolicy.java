@@ -0,0 +1,213 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.TreeSet;
+
+import core.Message;
+import core.Settings;
+
+/**
+ * Buffer management policy of a router. The policy keeps the messages in
+ * the buffer ordered by a key that the policy gives to each message.
+ * Messages with the smallest key are removed first and sent last when the
+ * send queue mode is {@link routing.MessageRouter#STR_Q_MODE_POLICY}.
+ * Adding, removing and re-keying a message take O(log n) time, and the next
+ * message to remove is found without scanning the buffer. The policy is
+ * selected with the {@link #BUFFER_POLICY_S} setting.
+ */
+public abstract class BufferPolicy {
+	/** Buffer policy class -setting id ({@value}). Name of the class (in
+	 * the package {@value #BUFFER_POLICY_PACKAGE}) of the policy to use.
+	 * Default value is {@link #DEF_BUFFER_POLICY}. */
+	public static final String BUFFER_POLICY_S = "bufferPolicy";
+	/** Default buffer policy class ({@value}) */
+	public static final String DEF_BUFFER_POLICY = "FifoBufferPolicy";
+	/** Package where the buffer policy classes are looked from ({@value}) */
+	public static final String BUFFER_POLICY_PACKAGE = "routing.util.";
+
+	/** the messages in removal order */
+	private TreeSet<Entry> order;
+	/** the entries of the messages in the buffer */
+	private HashMap<Message, Entry> entries;
+
+	/**
+	 * Creates a new buffer policy of the type defined in the settings
+	 * @param s The settings where the {@link #BUFFER_POLICY_S} setting is
+	 * read
+	 * @return The new policy (without any messages)
+	 */
+	public static BufferPolicy createPolicy(Settings s) {
+		return (BufferPolicy)s.createIntializedObject(BUFFER_POLICY_PACKAGE +
+				s.getSetting(BUFFER_POLICY_S, DEF_BUFFER_POLICY));
+	}
+
+	/**
+	 * Constructor.
+	 */
+	protected BufferPolicy() {
+		this.order = new TreeSet<Entry>();
+		this.entries = new HashMap<Message, Entry>();
+	}
+
+	/**
+	 * Returns the key of a message. Messages with smaller keys are removed
+	 * first.
+	 * @param m The message
+	 * @return The key of the message
+	 */
+	protected abstract double getKey(Message m);
+
+	/**
+	 * Creates a new policy, without any messages, with the same settings
+	 * as this one
+	 * @return The new policy
+	 */
+	public abstract BufferPolicy replicate();
+
+	/**
+	 * Adds a message to the policy
+	 * @param m The message that was added to the buffer
+	 */
+	public void add(Message m) {
+		Entry e = new Entry(m, getKey(m));
+		Entry old = entries.put(m, e);
+		if (old != null) {
+			order.remove(old);
+		}
+		order.add(e);
+	}
+
+	/**
+	 * Removes a message from the policy
+	 * @param m The message that was removed from the buffer
+	 */
+	public void remove(Message m) {
+		Entry e = entries.remove(m);
+		if (e != null) {
+			order.remove(e);
+		}
+	}
+
+	/**
+	 * Reads the key of a message again. Must be called when something
+	 * that the key of the message depends on changes.
+	 * @param m The message whose key may have changed
+	 */
+	public void update(Message m) {
+		Entry e = entries.get(m);
+		if (e == null) {
+			return;
+		}
+		double key = getKey(m);
+		if (key != e.key) {
+			order.remove(e);
+			e.key = key;
+			order.add(e);
+		}
+	}
+
+	/**
+	 * Called when a copy of a message in the buffer has been sent to
+	 * another host. The default implementation does nothing.
+	 * @param m The message in the buffer
+	 */
+	public void messageForwarded(Message m) { }
+
+	/**
+	 * Compares two messages in the removal order. Messages with the same
+	 * key are ordered by their unique ID.
+	 * @param m1 The first message
+	 * @param m2 The second message
+	 * @return -1 if the first message should be removed first, 1 if the
+	 * second one should, or 0 if the messages are the same
+	 */
+	public int compare(Message m1, Message m2) {
+		Entry e1 = entries.get(m1);
+		Entry e2 = entries.get(m2);
+		return (e1 != null ? e1 : new Entry(m1, getKey(m1))).compareTo(
+				e2 != null ? e2 : new Entry(m2, getKey(m2)));
+	}
+
+	/**
+	 * Returns the messages in the order they should be removed
+	 * @return The messages, the one to remove first first
+	 */
+	public Iterable<Message> inRemovalOrder() {
+		return new Iterable<Message>() {
+			public Iterator<Message> iterator() {
+				return new MessageIterator(order.iterator());
+			}
+		};
+	}
+
+	/**
+	 * Returns the messages in the order they should be sent (reverse of
+	 * the removal order)
+	 * @return The messages, the one to send first first
+	 */
+	public Iterable<Message> inSendOrder() {
+		return new Iterable<Message>() {
+			public Iterator<Message> iterator() {
+				return new MessageIterator(order.descendingIterator());
+			}
+		};
+	}
+
+	/**
+	 * Returns the number of messages in the policy
+	 * @return The number of messages
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Key of a message in the removal order
+	 */
+	private static class Entry implements Comparable<Entry> {
+		private final Message msg;
+		private double key;
+
+		public Entry(Message msg, double key) {
+			this.msg = msg;
+			this.key = key;
+		}
+
+		public int compareTo(Entry e) {
+			int c = Double.compare(key, e.key);
+			if (c == 0) {
+				c = msg.getUniqueId() < e.msg.getUniqueId() ? -1 :
+					(msg.getUniqueId() > e.msg.getUniqueId() ? 1 : 0);
+			}
+			return c;
+		}
+	}
+
+	/**
+	 * Read-only iterator over the messages of entries
+	 */
+	private static class MessageIterator implements Iterator<Message> {
+		private Iterator<Entry> i;
+
+		public MessageIterator(Iterator<Entry> i) {
+			this.i = i;
+		}
+
+		public boolean hasNext() {
+			return i.hasNext();
+		}
+
+		public Message next() {
+			return i.next().msg;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import core.Connection;
+import core.Message;
+
+/**
+ * Queue of message-connection pairs that a router could forward, ordered by
+ * a key that is given for each candidate when it is added (largest key
+ * first). Candidates with equal keys are ordered by a message comparator
+ * and then by the order they were added, so the order is the same as with
+ * a stable sort. The candidates are ordered lazily with a binary heap:
+ * usually only the first few are needed before a transfer starts. The
+ * buffers are reused when the queue is cleared.
+ */
+public class CandidateQueue {
+	/** initial capacity of the buffers */
+	private static final int INITIAL_CAPACITY = 16;
+
+	private Comparator<Message> tieBreaker;
+	private Message[] messages;
+	private Connection[] connections;
+	private double[] keys;
+	private int size;
+
+	/** indexes of the candidates that haven't been polled, as a heap */
+	private int[] heap;
+	private int heapSize;
+	private boolean heapBuilt;
+
+	/**
+	 * Creates an empty queue
+	 * @param tieBreaker Comparator for the messages of candidates with equal
+	 * keys
+	 */
+	public CandidateQueue(Comparator<Message> tieBreaker) {
+		this.tieBreaker = tieBreaker;
+		this.messages = new Message[INITIAL_CAPACITY];
+		this.connections = new Connection[INITIAL_CAPACITY];
+		this.keys = new double[INITIAL_CAPACITY];
+		this.heap = new int[INITIAL_CAPACITY];
+		this.size = 0;
+		this.heapSize = 0;
+		this.heapBuilt = false;
+	}
+
+	/**
+	 * Removes all the candidates
+	 */
+	public void clear() {
+		Arrays.fill(messages, 0, size, null);
+		Arrays.fill(connections, 0, size, null);
+		size = 0;
+		heapSize = 0;
+		heapBuilt = false;
+	}
+
+	/**
+	 * Adds a candidate. Candidates can't be added after the first one has
+	 * been polled (until the queue is cleared).
+	 * @param m The message
+	 * @param con The connection to send the message to
+	 * @param key The key of the candidate (largest is polled first)
+	 */
+	public void add(Message m, Connection con, double key) {
+		assert !heapBuilt : "Candidate added after polling";
+		if (size == messages.length) {
+			int capacity = size * 2;
+			messages = Arrays.copyOf(messages, capacity);
+			connections = Arrays.copyOf(connections, capacity);
+			keys = Arrays.copyOf(keys, capacity);
+			heap = Arrays.copyOf(heap, capacity);
+		}
+		messages[size] = m;
+		connections[size] = con;
+		keys[size] = key;
+		size++;
+	}
+
+	/**
+	 * Returns the number of candidates in the queue (including the polled
+	 * ones)
+	 * @return The number of candidates
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Removes the best candidate that hasn't been polled yet from the queue
+	 * @return Index of the candidate or -1 if all have been polled
+	 */
+	public int poll() {
+		if (!heapBuilt) {
+			for (int i = 0; i < size; i++) {
+				heap[i] = i;
+			}
+			heapSize = size;
+			for (int i = heapSize / 2 - 1; i >= 0; i--) {
+				siftDown(i);
+			}
+			heapBuilt = true;
+		}
+		if (heapSize == 0) {
+			return -1;
+		}
+
+		int best = heap[0];
+		heapSize--;
+		if (heapSize > 0) {
+			heap[0] = heap[heapSize];
+			siftDown(0);
+		}
+		return best;
+	}
+
+	/**
+	 * Returns the message of a candidate
+	 * @param index Index of the candidate
+	 * @return The message
+	 */
+	public Message getMessage(int index) {
+		return messages[index];
+	}
+
+	/**
+	 * Returns the connection of a candidate
+	 * @param index Index of the candidate
+	 * @return The connection
+	 */
+	public Connection getConnection(int index) {
+		return connections[index];
+	}
+
+	/**
+	 * Compares two candidates
+	 * @return -1 if the first one should be polled first, 1 if the second
+	 */
+	private int compare(int i, int j) {
+		double diff = keys[j] - keys[i];
+		if (diff == 0) {
+			int c = tieBreaker.compare(messages[i], messages[j]);
+			if (c != 0) {
+				return c;
+			}
+			return i < j ? -1 : 1;
+		}
+		return diff < 0 ? -1 : 1;
+	}
+
+	/**
+	 * Moves a heap entry down until the heap property holds
+	 * @param pos Position of the entry in the heap
+	 */
+	private void siftDown(int pos) {
+		int entry = heap[pos];
+		while (true) {
+			int child = 2 * pos + 1;
+			if (child >= heapSize) {
+				break;
+			}
+			if (child + 1 < heapSize && compare(heap[child + 1],
+					heap[child]) < 0) {
+				child++;
+			}
+			if (compare(heap[child], entry) >= 0) {
+				break;
+			}
+			heap[pos] = heap[child];
+			pos = child;
+		}
+		heap[pos] = entry;
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import java.util.Arrays;
+
+import core.Settings;
+
+/**
+ * Encounter store that keeps the counts in a full matrix. Lookups are as
+ * fast as they get, but the matrix takes memory in proportion to the square
+ * of the number of hosts, so this store suits only small scenarios.
+ */
+public class DenseEncounterStore extends EncounterStore {
+	/** rows of the matrix (null for hosts without encounters) */
+	private int[][] counts;
+	private int[] totals;
+	private int[] nrofPartners;
+
+	/**
+	 * Constructor.
+	 * @param s The settings object (not used)
+	 */
+	public DenseEncounterStore(Settings s) {
+		this();
+	}
+
+	/**
+	 * Creates an empty store
+	 */
+	public DenseEncounterStore() {
+		this.counts = new int[0][];
+		this.totals = new int[0];
+		this.nrofPartners = new int[0];
+	}
+
+	@Override
+	public void addEncounter(int host, int partner) {
+		int size = Math.max(host, partner) + 1;
+		if (size > counts.length) {
+			counts = Arrays.copyOf(counts, size);
+			totals = Arrays.copyOf(totals, size);
+			nrofPartners = Arrays.copyOf(nrofPartners, size);
+		}
+		int[] row = counts[host];
+		if (row == null || row.length <= partner) {
+			row = row == null ? new int[counts.length] :
+				Arrays.copyOf(row, counts.length);
+			counts[host] = row;
+		}
+		if (row[partner]++ == 0) {
+			nrofPartners[host]++;
+		}
+		totals[host]++;
+	}
+
+	@Override
+	public int getEncounters(int host, int partner) {
+		if (host >= counts.length || counts[host] == null ||
+				partner >= counts[host].length) {
+			return 0;
+		}
+		return counts[host][partner];
+	}
+
+	@Override
+	public int getTotal(int host) {
+		return host < totals.length ? totals[host] : 0;
+	}
+
+	@Override
+	public int getNrofPartners(int host) {
+		return host < nrofPartners.length ? nrofPartners[host] : 0;
+	}
+
+	@Override
+	public int getTopPartners(int host, int k, int[] partners) {
+		if (host >= counts.length || counts[host] == null || k <= 0) {
+			return 0;
+		}
+		int[] row = counts[host];
+		int[] topCounts = new int[k];
+		int n = 0;
+		for (int i = 0; i < row.length; i++) {
+			if (row[i] > 0) {
+				n = addTopPartner(partners, topCounts, n, k, i, row[i]);
+			}
+		}
+		return n;
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import core.Settings;
+
+/**
+ * Counts of how many times every host has encountered every other host.
+ * Hosts are identified by their addresses. The store also keeps the total
+ * number of encounters of every host, which is always the sum of the
+ * host's counts, and can list the hosts a host has met most often. The
+ * store to use is selected with the {@link #ENCOUNTER_STORE_S} setting.
+ */
+public abstract class EncounterStore {
+	/** Encounter store class -setting id ({@value}). Name of the class (in
+	 * the package {@value #ENCOUNTER_STORE_PACKAGE}) of the store to use.
+	 * Default value is {@link #DEF_ENCOUNTER_STORE}. */
+	public static final String ENCOUNTER_STORE_S = "encounterStore";
+	/** Default encounter store class ({@value}) */
+	public static final String DEF_ENCOUNTER_STORE = "SparseEncounterStore";
+	/** Package where the encounter store classes are looked from
+	 * ({@value}) */
+	public static final String ENCOUNTER_STORE_PACKAGE = "routing.util.";
+
+	/**
+	 * Creates a new encounter store of the type defined in the settings
+	 * @param s The settings where the {@link #ENCOUNTER_STORE_S} setting is
+	 * read
+	 * @return The new (empty) store
+	 */
+	public static EncounterStore createStore(Settings s) {
+		return (EncounterStore)s.createIntializedObject(
+				ENCOUNTER_STORE_PACKAGE + s.getSetting(ENCOUNTER_STORE_S,
+						DEF_ENCOUNTER_STORE));
+	}
+
+	/**
+	 * Counts an encounter of a host with another host. Only the count (and
+	 * the total) of the first host is increased.
+	 * @param host Address of the host
+	 * @param partner Address of the host it encountered
+	 */
+	public abstract void addEncounter(int host, int partner);
+
+	/**
+	 * Returns the number of times a host has encountered another host
+	 * @param host Address of the host
+	 * @param partner Address of the other host
+	 * @return The number of encounters
+	 */
+	public abstract int getEncounters(int host, int partner);
+
+	/**
+	 * Returns the total number of encounters of a host
+	 * @param host Address of the host
+	 * @return The sum of the host's encounters with all other hosts
+	 */
+	public abstract int getTotal(int host);
+
+	/**
+	 * Returns the number of different hosts a host has encountered
+	 * @param host Address of the host
+	 * @return The number of encounter partners
+	 */
+	public abstract int getNrofPartners(int host);
+
+	/**
+	 * Finds the hosts a host has encountered most often. The partners are
+	 * ordered by their encounter count, largest first, and partners with
+	 * the same count by their address.
+	 * @param host Address of the host
+	 * @param k Maximum number of partners to return
+	 * @param partners Array where the addresses of the partners are put
+	 * (must have room for at least <CODE>k</CODE> addresses)
+	 * @return The number of partners put to the array
+	 */
+	public abstract int getTopPartners(int host, int k, int[] partners);
+
+	/**
+	 * Adds a partner to a list of top partners if it belongs there.
+	 * @param partners Addresses of the top partners so far
+	 * @param counts Encounter counts of the top partners so far
+	 * @param n Number of top partners so far
+	 * @param k Maximum number of top partners
+	 * @param partner Address of the partner to add
+	 * @param count Encounter count of the partner
+	 * @return The new number of top partners
+	 */
+	protected static int addTopPartner(int[] partners, int[] counts, int n,
+			int k, int partner, int count) {
+		int i = n;
+		while (i > 0 && (counts[i-1] < count ||
+				(counts[i-1] == count && partners[i-1] > partner))) {
+			i--;
+		}
+		if (i >= k) {
+			return n; /* not among the top k */
+		}
+		int last = Math.min(n, k - 1);
+		for (int j = last; j > i; j--) {
+			partners[j] = partners[j-1];
+			counts[j] = counts[j-1];
+		}
+		partners[i] = partner;
+		counts[i] = count;
+		return Math.min(n + 1, k);
+	}
+}
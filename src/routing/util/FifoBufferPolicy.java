@@ -0,0 +1,40 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import core.Message;
+import core.Settings;
+
+/**
+ * Buffer policy that removes the oldest (by receive time) message first.
+ * This is the default policy.
+ */
+public class FifoBufferPolicy extends BufferPolicy {
+
+	/**
+	 * Constructor.
+	 * @param s The settings object (not used)
+	 */
+	public FifoBufferPolicy(Settings s) {
+		super();
+	}
+
+	/**
+	 * Creates a policy without any messages
+	 */
+	public FifoBufferPolicy() {
+		super();
+	}
+
+	@Override
+	protected double getKey(Message m) {
+		return m.getReceiveTime();
+	}
+
+	@Override
+	public BufferPolicy replicate() {
+		return new FifoBufferPolicy();
+	}
+}
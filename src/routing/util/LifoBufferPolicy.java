@@ -0,0 +1,39 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import core.Message;
+import core.Settings;
+
+/**
+ * Buffer policy that removes the newest (by receive time) message first.
+ */
+public class LifoBufferPolicy extends BufferPolicy {
+
+	/**
+	 * Constructor.
+	 * @param s The settings object (not used)
+	 */
+	public LifoBufferPolicy(Settings s) {
+		super();
+	}
+
+	/**
+	 * Creates a policy without any messages
+	 */
+	public LifoBufferPolicy() {
+		super();
+	}
+
+	@Override
+	protected double getKey(Message m) {
+		return -m.getReceiveTime();
+	}
+
+	@Override
+	public BufferPolicy replicate() {
+		return new LifoBufferPolicy();
+	}
+}
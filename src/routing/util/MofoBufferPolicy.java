@@ -0,0 +1,59 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import java.util.HashMap;
+
+import core.Message;
+import core.Settings;
+
+/**
+ * MOFO (MOst FOrwarded first) buffer policy. Removes the message that this
+ * host has forwarded the most times first.
+ */
+public class MofoBufferPolicy extends BufferPolicy {
+	/** how many times each message in the buffer has been forwarded */
+	private HashMap<Message, Integer> forwards;
+
+	/**
+	 * Constructor.
+	 * @param s The settings object (not used)
+	 */
+	public MofoBufferPolicy(Settings s) {
+		this();
+	}
+
+	/**
+	 * Creates a policy without any messages
+	 */
+	public MofoBufferPolicy() {
+		super();
+		this.forwards = new HashMap<Message, Integer>();
+	}
+
+	@Override
+	protected double getKey(Message m) {
+		Integer count = forwards.get(m);
+		return count == null ? 0 : -count;
+	}
+
+	@Override
+	public void remove(Message m) {
+		super.remove(m);
+		forwards.remove(m);
+	}
+
+	@Override
+	public void messageForwarded(Message m) {
+		Integer count = forwards.get(m);
+		forwards.put(m, count == null ? 1 : count + 1);
+		update(m);
+	}
+
+	@Override
+	public BufferPolicy replicate() {
+		return new MofoBufferPolicy();
+	}
+}
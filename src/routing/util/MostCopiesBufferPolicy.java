@@ -0,0 +1,57 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import core.Message;
+import core.Settings;
+import routing.SprayAndWaitRouter;
+
+/**
+ * Buffer policy that removes the message with the most copies left (as
+ * given by an int slot property, e.g., the one of the Spray and Wait
+ * routers; see {@link Message#registerIntProperty(String)}) first.
+ * Messages without the property are removed last. The routers must tell
+ * the policy when the number of copies changes (see
+ * {@link BufferPolicy#update(Message)}).
+ */
+public class MostCopiesBufferPolicy extends BufferPolicy {
+	/** Number of copies property -setting id ({@value}). Key of the message
+	 * property that holds the number of copies. Default value is
+	 * {@link SprayAndWaitRouter#MSG_COUNT_PROPERTY}. */
+	public static final String COPIES_PROPERTY_S = "bufferPolicyCopies";
+
+	private String copiesProperty;
+	/** slot of the number of copies property */
+	private int copiesSlot;
+
+	/**
+	 * Constructor.
+	 * @param s The settings object
+	 */
+	public MostCopiesBufferPolicy(Settings s) {
+		this(s.getSetting(COPIES_PROPERTY_S,
+				SprayAndWaitRouter.MSG_COUNT_PROPERTY));
+	}
+
+	/**
+	 * Creates a policy without any messages
+	 * @param copiesProperty Key of the number of copies property
+	 */
+	public MostCopiesBufferPolicy(String copiesProperty) {
+		super();
+		this.copiesProperty = copiesProperty;
+		this.copiesSlot = Message.registerIntProperty(copiesProperty);
+	}
+
+	@Override
+	protected double getKey(Message m) {
+		return -m.getIntProperty(copiesSlot);
+	}
+
+	@Override
+	public BufferPolicy replicate() {
+		return new MostCopiesBufferPolicy(copiesProperty);
+	}
+}
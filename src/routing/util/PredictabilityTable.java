@@ -0,0 +1,194 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import java.util.Arrays;
+
+/**
+ * Delivery predictability table of the PRoPHET family of routers. The
+ * predictabilities are kept in an array indexed by host address. Ageing
+ * multiplies all the predictabilities by the same factor, so instead of
+ * touching every entry it only updates a common scale factor that the
+ * values are multiplied with when they are read.
+ */
+public class PredictabilityTable {
+	/** scale below which the scale is folded into the values (so that the
+	 * scale never underflows) */
+	private static final double MIN_SCALE = 1e-100;
+
+	/** the predictabilities divided by the scale */
+	private double[] values;
+	/** which hosts have an entry */
+	private boolean[] known;
+	private int size;
+	/** addresses of all the entries are below this */
+	private int nrofSlots;
+	/** factor all the values are multiplied with */
+	private double scale;
+	/** last time the table was aged */
+	private double lastAgeUpdate;
+
+	/**
+	 * Creates an empty table
+	 */
+	public PredictabilityTable() {
+		this.values = new double[0];
+		this.known = new boolean[0];
+		this.size = 0;
+		this.nrofSlots = 0;
+		this.scale = 1;
+		this.lastAgeUpdate = 0;
+	}
+
+	/**
+	 * Returns the predictability for a host
+	 * @param address Address of the host
+	 * @return The predictability or 0 if there's no entry for the host
+	 */
+	public double get(int address) {
+		if (address >= values.length) {
+			return 0;
+		}
+		return values[address] * scale;
+	}
+
+	/**
+	 * Sets the predictability for a host
+	 * @param address Address of the host
+	 * @param value The new predictability
+	 */
+	public void set(int address, double value) {
+		ensureCapacity(address + 1);
+		values[address] = value / scale;
+		if (!known[address]) {
+			known[address] = true;
+			size++;
+			nrofSlots = Math.max(nrofSlots, address + 1);
+		}
+	}
+
+	/**
+	 * Returns true if the table has an entry for a host
+	 * @param address Address of the host
+	 * @return true if the table has an entry for the host
+	 */
+	public boolean contains(int address) {
+		return address < known.length && known[address];
+	}
+
+	/**
+	 * Returns the number of hosts that have an entry
+	 * @return The number of entries
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Ages all the predictabilities.
+	 * <CODE>P(a,b) = P(a,b)_old * (gamma ^ k)</CODE>, where k is number of
+	 * time units that have elapsed since the last time the table was aged.
+	 * @param time The current time
+	 * @param gamma The ageing constant
+	 * @param secondsInTimeUnit How many seconds one time unit is
+	 */
+	public void age(double time, double gamma, double secondsInTimeUnit) {
+		double timeDiff = (time - this.lastAgeUpdate) / secondsInTimeUnit;
+
+		if (timeDiff == 0) {
+			return;
+		}
+
+		scale *= Math.pow(gamma, timeDiff);
+		if (scale < MIN_SCALE) {
+			for (int i = 0; i < nrofSlots; i++) {
+				values[i] *= scale;
+			}
+			scale = 1;
+		}
+
+		this.lastAgeUpdate = time;
+	}
+
+	/**
+	 * Updates transitive (A->B->C) delivery predictabilities from the
+	 * table of the host B.
+	 * <CODE>P(a,c) = P(a,c)_old + (1 - P(a,c)_old) * P(a,b) * P(b,c) * BETA
+	 * </CODE>
+	 * @param other The table of B
+	 * @param self Address of A (whose entry in B's table is skipped)
+	 * @param pForHost P(a,b)
+	 * @param beta The transitivity scaling constant
+	 */
+	public void updateTransitive(PredictabilityTable other, int self,
+			double pForHost, double beta) {
+		double[] otherValues = other.values;
+		boolean[] otherKnown = other.known;
+		double otherScale = other.scale;
+		int n = other.nrofSlots;
+		ensureCapacity(n);
+
+		for (int i = 0; i < n; i++) {
+			if (!otherKnown[i] || i == self) {
+				continue;
+			}
+			double pOld = values[i] * scale;
+			double pNew = pOld + (1 - pOld) * pForHost *
+				(otherValues[i] * otherScale) * beta;
+			values[i] = pNew / scale;
+			if (!known[i]) {
+				known[i] = true;
+				size++;
+			}
+		}
+		nrofSlots = Math.max(nrofSlots, n);
+	}
+
+	/**
+	 * Updates transitive (A->B->C) delivery predictabilities from the
+	 * table of the host B, keeping the larger of the old and the
+	 * transitive value (PRoPHETv2).
+	 * <CODE>P(a,c) = max(P(a,c)_old, P(a,b) * P(b,c) * BETA)</CODE>
+	 * @param other The table of B
+	 * @param self Address of A (whose entry in B's table is skipped)
+	 * @param pForHost P(a,b)
+	 * @param beta The transitivity scaling constant
+	 */
+	public void updateTransitiveMax(PredictabilityTable other, int self,
+			double pForHost, double beta) {
+		double[] otherValues = other.values;
+		boolean[] otherKnown = other.known;
+		double otherScale = other.scale;
+		int n = other.nrofSlots;
+		ensureCapacity(n);
+
+		for (int i = 0; i < n; i++) {
+			if (!otherKnown[i] || i == self) {
+				continue;
+			}
+			double pNew = pForHost * (otherValues[i] * otherScale) * beta;
+			if (pNew > values[i] * scale) {
+				values[i] = pNew / scale;
+				if (!known[i]) {
+					known[i] = true;
+					size++;
+					nrofSlots = Math.max(nrofSlots, i + 1);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Makes sure the arrays have room for the given number of hosts
+	 * @param capacity The number of hosts
+	 */
+	private void ensureCapacity(int capacity) {
+		if (capacity > values.length) {
+			int newSize = Math.max(capacity, values.length * 2);
+			values = Arrays.copyOf(values, newSize);
+			known = Arrays.copyOf(known, newSize);
+		}
+	}
+}
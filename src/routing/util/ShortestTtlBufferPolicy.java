@@ -0,0 +1,40 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import core.Message;
+import core.Settings;
+
+/**
+ * Buffer policy that removes the message that has the smallest TTL left
+ * (i.e., expires first) first. Messages with infinite TTL are removed last.
+ */
+public class ShortestTtlBufferPolicy extends BufferPolicy {
+
+	/**
+	 * Constructor.
+	 * @param s The settings object (not used)
+	 */
+	public ShortestTtlBufferPolicy(Settings s) {
+		super();
+	}
+
+	/**
+	 * Creates a policy without any messages
+	 */
+	public ShortestTtlBufferPolicy() {
+		super();
+	}
+
+	@Override
+	protected double getKey(Message m) {
+		return m.getExpiryTime();
+	}
+
+	@Override
+	public BufferPolicy replicate() {
+		return new ShortestTtlBufferPolicy();
+	}
+}
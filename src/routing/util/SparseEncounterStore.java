@@ -0,0 +1,156 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import java.util.Arrays;
+
+import core.Settings;
+
+/**
+ * Encounter store that keeps only the non-zero counts. Every host has its
+ * own open addressing hash table from partner addresses to counts, so the
+ * memory use grows with the number of different host pairs that have met
+ * instead of the square of the number of hosts. This is the default store.
+ */
+public class SparseEncounterStore extends EncounterStore {
+	/** initial capacity of a host's table (must be a power of two) */
+	private static final int INITIAL_CAPACITY = 8;
+
+	/** partner addresses + 1 of the hosts' tables (0 = empty slot) */
+	private int[][] keys;
+	/** encounter counts of the hosts' tables */
+	private int[][] counts;
+	private int[] totals;
+	private int[] nrofPartners;
+
+	/**
+	 * Constructor.
+	 * @param s The settings object (not used)
+	 */
+	public SparseEncounterStore(Settings s) {
+		this();
+	}
+
+	/**
+	 * Creates an empty store
+	 */
+	public SparseEncounterStore() {
+		this.keys = new int[0][];
+		this.counts = new int[0][];
+		this.totals = new int[0];
+		this.nrofPartners = new int[0];
+	}
+
+	@Override
+	public void addEncounter(int host, int partner) {
+		if (host >= keys.length) {
+			int size = Math.max(host + 1, keys.length * 2);
+			keys = Arrays.copyOf(keys, size);
+			counts = Arrays.copyOf(counts, size);
+			totals = Arrays.copyOf(totals, size);
+			nrofPartners = Arrays.copyOf(nrofPartners, size);
+		}
+		if (keys[host] == null) {
+			keys[host] = new int[INITIAL_CAPACITY];
+			counts[host] = new int[INITIAL_CAPACITY];
+		}
+
+		int[] k = keys[host];
+		int mask = k.length - 1;
+		int i = hash(partner) & mask;
+		while (k[i] != 0 && k[i] != partner + 1) {
+			i = (i + 1) & mask;
+		}
+		if (k[i] == 0) {
+			k[i] = partner + 1;
+			nrofPartners[host]++;
+		}
+		counts[host][i]++;
+		totals[host]++;
+
+		if (nrofPartners[host] * 4 > k.length * 3) {
+			resize(host, k.length * 2);
+		}
+	}
+
+	@Override
+	public int getEncounters(int host, int partner) {
+		if (host >= keys.length || keys[host] == null) {
+			return 0;
+		}
+		int[] k = keys[host];
+		int mask = k.length - 1;
+		for (int i = hash(partner) & mask; k[i] != 0; i = (i + 1) & mask) {
+			if (k[i] == partner + 1) {
+				return counts[host][i];
+			}
+		}
+		return 0;
+	}
+
+	@Override
+	public int getTotal(int host) {
+		return host < totals.length ? totals[host] : 0;
+	}
+
+	@Override
+	public int getNrofPartners(int host) {
+		return host < nrofPartners.length ? nrofPartners[host] : 0;
+	}
+
+	@Override
+	public int getTopPartners(int host, int k, int[] partners) {
+		if (host >= keys.length || keys[host] == null || k <= 0) {
+			return 0;
+		}
+		int[] hostKeys = keys[host];
+		int[] hostCounts = counts[host];
+		int[] topCounts = new int[k];
+		int n = 0;
+		for (int i = 0; i < hostKeys.length; i++) {
+			if (hostKeys[i] != 0) {
+				n = addTopPartner(partners, topCounts, n, k, hostKeys[i] - 1,
+						hostCounts[i]);
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Spreads the bits of an address
+	 * @param address The address
+	 * @return The hash of the address
+	 */
+	private static int hash(int address) {
+		int h = address * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Rehashes a host's table to a table of the new size
+	 * @param host Address of the host
+	 * @param capacity The new size (a power of two)
+	 */
+	private void resize(int host, int capacity) {
+		int[] oldKeys = keys[host];
+		int[] oldCounts = counts[host];
+		int[] newKeys = new int[capacity];
+		int[] newCounts = new int[capacity];
+		int mask = capacity - 1;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] == 0) {
+				continue;
+			}
+			int j = hash(oldKeys[i] - 1) & mask;
+			while (newKeys[j] != 0) {
+				j = (j + 1) & mask;
+			}
+			newKeys[j] = oldKeys[i];
+			newCounts[j] = oldCounts[i];
+		}
+		keys[host] = newKeys;
+		counts[host] = newCounts;
+	}
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+import routing.util.AckStore;
+import routing.util.BitmapAckStore;
+import routing.util.BloomAckStore;
+
+/**
+ * Tests for the AckStore classes
+ */
+public class AckStoreTest extends TestCase {
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		AckStore.reset();
+	}
+
+	public void testIndexes() {
+		int i1 = AckStore.indexOf("M1");
+		int i2 = AckStore.indexOf("M2");
+
+		assertEquals(0, i1);
+		assertEquals(1, i2);
+		assertEquals(i1, AckStore.indexOf("M1"));
+		assertEquals("M2", AckStore.idOf(i2));
+	}
+
+	public void testBitmap() {
+		AckStore s = new BitmapAckStore();
+		assertTrue(s.isEmpty());
+		assertFalse(s.contains("M1"));
+
+		s.add("M1");
+		s.add(200);
+		assertFalse(s.isEmpty());
+		assertTrue(s.contains("M1"));
+		assertTrue(s.contains(200));
+		assertFalse(s.contains(199));
+		assertFalse(s.contains(1000));
+	}
+
+	public void testBitmapMerge() {
+		AckStore s1 = new BitmapAckStore();
+		AckStore s2 = s1.replicate();
+		s1.add(3);
+		s1.add(70);
+		s2.add(3);
+		s2.add(64);
+		s2.add(300);
+		s2.add(5);
+
+		int[] learned = s1.merge(s2);
+		Arrays.sort(learned);
+		assertTrue(Arrays.equals(new int[] {5, 64, 300}, learned));
+		for (int i : new int[] {3, 5, 64, 70, 300}) {
+			assertTrue(s1.contains(i));
+		}
+
+		learned = s2.merge(s1);
+		assertTrue(Arrays.equals(new int[] {70}, learned));
+		assertEquals(0, s1.merge(s2).length);
+	}
+
+	public void testBloom() {
+		AckStore s1 = new BloomAckStore(1024, 3);
+		AckStore s2 = s1.replicate();
+		assertTrue(s1.isEmpty());
+		s1.add("M1");
+		s2.add("M2");
+		assertTrue(s1.contains("M1"));
+		assertFalse(s1.contains("M2"));
+
+		assertNull(s1.merge(s2));
+		assertTrue(s1.contains("M1"));
+		assertTrue(s1.contains("M2"));
+		assertFalse(s2.contains("M1"));
+	}
+}
@@ -50,6 +50,17 @@ public class AllTests {
 		suite.addTestSuite(MessageTest.class);
 		suite.addTestSuite(ModuleCommunicationBusTest.class);
 		suite.addTestSuite(DTNHostTest.class);
+		suite.addTestSuite(CompactConnectivityGridTest.class);
+		suite.addTestSuite(AckStoreTest.class);
+		suite.addTestSuite(BufferPolicyTest.class);
+		suite.addTestSuite(IntHashMapTest.class);
+		suite.addTestSuite(EncounterStoreTest.class);
+		suite.addTestSuite(PredictabilityTableTest.class);
+		suite.addTestSuite(CandidateQueueTest.class);
+		suite.addTestSuite(MeetingProbabilitySetTest.class);
+		suite.addTestSuite(ContactGraphTest.class);
+		suite.addTestSuite(TransferDoneQueueTest.class);
+		suite.addTestSuite(ParallelTransfersTest.class);
 		//$JUnit-END$
 		return suite;
 	}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import routing.util.BufferPolicy;
+import routing.util.FifoBufferPolicy;
+import routing.util.LifoBufferPolicy;
+import routing.util.MofoBufferPolicy;
+import routing.util.MostCopiesBufferPolicy;
+import routing.util.ShortestTtlBufferPolicy;
+import core.Message;
+import core.SimClock;
+
+/**
+ * Tests for the BufferPolicy classes
+ */
+public class BufferPolicyTest extends TestCase {
+	private static final String COPIES = "copies";
+
+	private SimClock clock;
+	private Message m1, m2, m3;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimClock.reset();
+		clock = SimClock.getInstance();
+
+		m1 = new Message(null, null, "M1", 10);
+		clock.advance(10);
+		m2 = new Message(null, null, "M2", 10);
+		m3 = new Message(null, null, "M3", 10);
+	}
+
+	private List<Message> removalOrder(BufferPolicy p) {
+		List<Message> list = new ArrayList<Message>();
+		for (Message m : p.inRemovalOrder()) {
+			list.add(m);
+		}
+		return list;
+	}
+
+	private void addAll(BufferPolicy p) {
+		p.add(m3);
+		p.add(m1);
+		p.add(m2);
+	}
+
+	public void testFifo() {
+		BufferPolicy p = new FifoBufferPolicy();
+		addAll(p);
+		assertEquals(3, p.size());
+		/* m2 and m3 have the same receive time; m2 was created first */
+		assertEquals(m1, removalOrder(p).get(0));
+		assertEquals(m2, removalOrder(p).get(1));
+		assertEquals(m3, p.inSendOrder().iterator().next());
+
+		p.remove(m1);
+		assertEquals(m2, removalOrder(p).get(0));
+		assertEquals(2, p.size());
+		assertTrue(p.compare(m2, m3) < 0);
+	}
+
+	public void testLifo() {
+		BufferPolicy p = new LifoBufferPolicy();
+		addAll(p);
+		assertEquals(m2, removalOrder(p).get(0));
+		assertEquals(m1, removalOrder(p).get(2));
+	}
+
+	public void testShortestTtl() {
+		BufferPolicy p = new ShortestTtlBufferPolicy();
+		m1.setTtl(5);
+		m2.setTtl(1);
+		addAll(p);
+		assertEquals(m2, removalOrder(p).get(0));
+		assertEquals(m1, removalOrder(p).get(1));
+		assertEquals(m3, removalOrder(p).get(2)); /* infinite TTL */
+	}
+
+	public void testMostCopies() {
+		BufferPolicy p = new MostCopiesBufferPolicy(COPIES);
+		m1.addProperty(COPIES, 2);
+		m2.addProperty(COPIES, 4);
+		m3.addProperty(COPIES, 3);
+		addAll(p);
+		assertEquals(m2, removalOrder(p).get(0));
+
+		m2.updateProperty(COPIES, 1);
+		assertEquals(m2, removalOrder(p).get(0)); /* not updated yet */
+		p.update(m2);
+		assertEquals(m3, removalOrder(p).get(0));
+		assertEquals(m1, removalOrder(p).get(1));
+		assertEquals(m2, removalOrder(p).get(2));
+	}
+
+	public void testMofo() {
+		BufferPolicy p = new MofoBufferPolicy();
+		addAll(p);
+		assertEquals(m1, removalOrder(p).get(0));
+
+		p.messageForwarded(m3);
+		p.messageForwarded(m2);
+		p.messageForwarded(m3);
+		assertEquals(m3, removalOrder(p).get(0));
+		assertEquals(m2, removalOrder(p).get(1));
+
+		/* forward counts are forgotten when the message is removed */
+		p.remove(m3);
+		p.add(m3);
+		assertEquals(m2, removalOrder(p).get(0));
+		assertEquals(m3, removalOrder(p).get(2));
+	}
+}
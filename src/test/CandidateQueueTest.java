@@ -0,0 +1,88 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import routing.util.CandidateQueue;
+import core.Message;
+
+/**
+ * Tests for the CandidateQueue class
+ */
+public class CandidateQueueTest extends TestCase {
+	/** orders messages by their size, smallest first */
+	private static final Comparator<Message> BY_SIZE =
+		new Comparator<Message>() {
+		public int compare(Message m1, Message m2) {
+			return m1.getSize() - m2.getSize();
+		}
+	};
+
+	public void testOrder() {
+		CandidateQueue q = new CandidateQueue(BY_SIZE);
+		Message m1 = new Message(null, null, "M1", 20);
+		Message m2 = new Message(null, null, "M2", 10);
+		Message m3 = new Message(null, null, "M3", 20);
+
+		assertEquals(-1, q.poll());
+		q.clear();
+
+		q.add(m1, null, 0.5);
+		q.add(m2, null, 0.5);
+		q.add(m3, null, 0.5);
+		q.add(m1, null, 0.75);
+		assertEquals(4, q.size());
+
+		assertEquals(3, q.poll()); /* largest key */
+		assertEquals(1, q.poll()); /* tie broken by the comparator */
+		assertEquals(m1, q.getMessage(q.poll())); /* then by insertion */
+		assertEquals(m3, q.getMessage(q.poll()));
+		assertEquals(-1, q.poll());
+		assertEquals(4, q.size());
+
+		q.clear();
+		assertEquals(0, q.size());
+		assertEquals(-1, q.poll());
+	}
+
+	public void testSameAsStableSort() {
+		Random rng = new Random(42);
+		final CandidateQueue q = new CandidateQueue(BY_SIZE);
+
+		for (int round = 0; round < 10; round++) {
+			q.clear();
+			final List<Integer> expected = new ArrayList<Integer>();
+			final double[] keys = new double[100];
+			final Message[] msgs = new Message[keys.length];
+			for (int i = 0; i < keys.length; i++) {
+				keys[i] = rng.nextInt(5) / 4.0;
+				msgs[i] = new Message(null, null, "M" + i, rng.nextInt(3));
+				q.add(msgs[i], null, keys[i]);
+				expected.add(i);
+			}
+
+			Collections.sort(expected, new Comparator<Integer>() {
+				public int compare(Integer i1, Integer i2) {
+					double diff = keys[i2] - keys[i1];
+					if (diff == 0) {
+						return BY_SIZE.compare(msgs[i1], msgs[i2]);
+					}
+					return diff < 0 ? -1 : 1;
+				}
+			});
+
+			for (int i : expected) {
+				assertEquals(i, q.poll());
+			}
+			assertEquals(-1, q.poll());
+		}
+	}
+}
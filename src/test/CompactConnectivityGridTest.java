@@ -0,0 +1,236 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import interfaces.CompactConnectivityGrid;
+import interfaces.ConnectivityOptimizer.InterfaceVisitor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import junit.framework.TestCase;
+import core.Coord;
+import core.DTNHost;
+import core.NetworkInterface;
+import core.SimClock;
+import core.World;
+
+/**
+ * Tests for the CompactConnectivityGrid class
+ */
+public class CompactConnectivityGridTest extends TestCase {
+	/* transmit range 1.0 and default multiplier 5 -> cell size 5 */
+	private static final double RANGE = 1.0;
+	private static final int CELL_SIZE = 5;
+
+	private SimClock clock;
+	private TestUtils utils;
+	private CompactConnectivityGrid grid;
+	private int gridKey = 0;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimClock.reset();
+		clock = SimClock.getInstance();
+		TestSettings ts = new TestSettings();
+		CompactConnectivityGrid.reset();
+		utils = new TestUtils(null, null, ts);
+		grid = newGrid();
+	}
+
+	private CompactConnectivityGrid newGrid() {
+		return CompactConnectivityGrid.CompactConnectivityGridFactory(
+				gridKey++, RANGE);
+	}
+
+	private NetworkInterface addHost(double x, double y) {
+		DTNHost h = utils.createHost(new Coord(x, y));
+		NetworkInterface ni = h.getInterfaces().get(0);
+		grid.addInterface(ni);
+		return ni;
+	}
+
+	private List<NetworkInterface> visit(NetworkInterface ni) {
+		return visit(ni, false);
+	}
+
+	private List<NetworkInterface> visit(NetworkInterface ni,
+			boolean candidates) {
+		final List<NetworkInterface> visited =
+			new ArrayList<NetworkInterface>();
+		InterfaceVisitor visitor = new InterfaceVisitor() {
+			public void visit(NetworkInterface near) {
+				visited.add(near);
+			}
+		};
+		if (candidates) {
+			grid.visitConnectCandidates(ni, visitor);
+		} else {
+			grid.visitNearInterfaces(ni, visitor);
+		}
+		return visited;
+	}
+
+	public void testNearInterfaces() {
+		NetworkInterface n1 = addHost(12, 12); /* cell (2,2) */
+		NetworkInterface n2 = addHost(16, 11); /* cell (3,2) */
+		NetworkInterface n3 = addHost(7, 7); /* cell (1,1) */
+		NetworkInterface n4 = addHost(22, 12); /* cell (4,2) */
+		NetworkInterface n5 = addHost(12, 28); /* cell (2,5) */
+
+		Collection<NetworkInterface> near = grid.getNearInterfaces(n1);
+		assertEquals(3, near.size());
+		assertTrue(near.contains(n1));
+		assertTrue(near.contains(n2));
+		assertTrue(near.contains(n3));
+
+		near = grid.getNearInterfaces(n2);
+		assertEquals(3, near.size());
+		assertTrue(near.contains(n4));
+		assertFalse(near.contains(n3));
+
+		assertEquals(1, grid.getNearInterfaces(n5).size());
+		assertEquals(5, grid.getAllInterfaces().size());
+	}
+
+	public void testVisitOrder() {
+		NetworkInterface n1 = addHost(2 * CELL_SIZE + 1, 2 * CELL_SIZE + 1);
+		NetworkInterface n2 = addHost(CELL_SIZE + 1, CELL_SIZE + 1);
+		NetworkInterface n3 = addHost(2 * CELL_SIZE + 2, 2 * CELL_SIZE + 2);
+		NetworkInterface n4 = addHost(3 * CELL_SIZE + 1, CELL_SIZE + 1);
+
+		List<NetworkInterface> visited = visit(n1);
+		/* row by row, and within a cell in the order of addition */
+		assertEquals(4, visited.size());
+		assertEquals(n2, visited.get(0));
+		assertEquals(n4, visited.get(1));
+		assertEquals(n1, visited.get(2));
+		assertEquals(n3, visited.get(3));
+		assertEquals(visited, grid.getNearInterfaces(n1));
+	}
+
+	public void testMovement() {
+		NetworkInterface n1 = addHost(12, 12);
+		NetworkInterface n2 = addHost(40, 40);
+
+		assertFalse(grid.getNearInterfaces(n1).contains(n2));
+
+		/* new location is taken into account in the next round */
+		n2.getHost().setLocation(new Coord(14, 14));
+		assertTrue(grid.isRelocated(n2));
+		clock.advance(1);
+		assertFalse(grid.isRelocated(n2));
+		assertTrue(grid.getNearInterfaces(n1).contains(n2));
+
+		/* ...or right away when the moved interface is updated */
+		n2.getHost().setLocation(new Coord(40, 40));
+		grid.updateLocation(n2);
+		assertFalse(grid.getNearInterfaces(n1).contains(n2));
+	}
+
+	public void testAddTwice() {
+		NetworkInterface n1 = addHost(12, 12);
+		grid.addInterface(n1);
+
+		assertEquals(1, grid.getAllInterfaces().size());
+		assertEquals(1, visit(n1).size());
+	}
+
+	public void testManyInterfaces() {
+		List<NetworkInterface> nis = new ArrayList<NetworkInterface>();
+		for (int i=0; i<200; i++) {
+			nis.add(addHost(1 + (i * 7) % 990, 1 + (i * 13) % 990));
+		}
+
+		for (NetworkInterface ni : nis) {
+			Collection<NetworkInterface> near = grid.getNearInterfaces(ni);
+			for (NetworkInterface other : nis) {
+				int dx = Math.abs((int)(ni.getLocation().getX() / CELL_SIZE) -
+						(int)(other.getLocation().getX() / CELL_SIZE));
+				int dy = Math.abs((int)(ni.getLocation().getY() / CELL_SIZE) -
+						(int)(other.getLocation().getY() / CELL_SIZE));
+				assertEquals(dx <= 1 && dy <= 1, near.contains(other));
+			}
+		}
+	}
+
+	public void testPairwiseCandidates() {
+		NetworkInterface n1 = addHost(12, 12);
+		NetworkInterface n2 = addHost(12.5, 12.5); /* in range of n1 */
+		NetworkInterface n3 = addHost(14, 12); /* near but out of range */
+		NetworkInterface n4 = addHost(12.2, 12.4); /* in range of n1 & n2 */
+
+		/* no pairwise scan done: all near interfaces are candidates */
+		assertEquals(4, visit(n1, true).size());
+
+		List<DTNHost> order = new ArrayList<DTNHost>();
+		order.add(n2.getHost());
+		order.add(n1.getHost());
+		order.add(n4.getHost());
+		order.add(n3.getHost());
+		CompactConnectivityGrid.preparePairs(order);
+
+		/* pairs are tried only by the host that is updated first */
+		List<NetworkInterface> c1 = visit(n1, true);
+		assertEquals(1, c1.size());
+		assertEquals(n4, c1.get(0));
+		List<NetworkInterface> c2 = visit(n2, true);
+		assertEquals(2, c2.size());
+		/* same order as the near interfaces */
+		assertEquals(n1, c2.get(0));
+		assertEquals(n4, c2.get(1));
+		assertEquals(0, visit(n3, true).size());
+		assertEquals(0, visit(n4, true).size());
+
+		/* next round (without a new scan): all near are candidates again */
+		clock.advance(1);
+		assertEquals(4, visit(n4, true).size());
+	}
+
+	public void testKineticConnectivity() {
+		TestSettings ts = new TestSettings();
+		ts.putSetting(World.OPTIMIZATION_SETTINGS_NS + "." +
+				CompactConnectivityGrid.COMPACT_GRID_S, "true");
+		ts.putSetting(World.OPTIMIZATION_SETTINGS_NS + "." +
+				CompactConnectivityGrid.KINETIC_CONNECTIVITY_S, "true");
+		CompactConnectivityGrid.reset();
+		utils = new TestUtils(null, null, ts);
+		grid = newGrid();
+
+		NetworkInterface n1 = addHost(12, 12);
+		NetworkInterface n2 = addHost(12.5, 12.5);
+		/* no prediction made yet */
+		assertFalse(grid.isConnectivityStable(n1));
+		grid.predictConnectivity(n1);
+		assertTrue(grid.isConnectivityStable(n1));
+		clock.advance(10);
+		assertTrue(grid.isConnectivityStable(n1));
+
+		/* a connection change invalidates the prediction */
+		grid.connectivityChanged(n1);
+		assertFalse(grid.isConnectivityStable(n1));
+		grid.predictConnectivity(n1);
+		assertTrue(grid.isConnectivityStable(n1));
+
+		/* ...as does an interface entering a neighboring cell */
+		NetworkInterface n3 = addHost(40, 40);
+		clock.advance(1);
+		grid.predictConnectivity(n1);
+		assertTrue(grid.isConnectivityStable(n1));
+		n3.getHost().setLocation(new Coord(16, 16));
+		clock.advance(1);
+		assertFalse(grid.isConnectivityStable(n1));
+	}
+
+	public void testSeparateGrids() {
+		NetworkInterface n1 = addHost(12, 12);
+		CompactConnectivityGrid other = newGrid();
+
+		assertNotSame(grid, other);
+		assertEquals(0, other.getAllInterfaces().size());
+		assertEquals(0, other.getNearInterfaces(n1).size());
+	}
+}
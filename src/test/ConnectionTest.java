@@ -153,6 +153,22 @@ public class ConnectionTest extends TestCase {
 	}
 
 
+	public void testControlData() {
+		/* c[3]: speed 200, no transfer yet */
+		c[3].addControlData(100); /* takes 0.5 seconds */
+		assertEquals(100, c[3].getTotalBytesTransferred());
+
+		clock.advance(0.25);
+		c[3].startTransfer(h[2], m[3]); /* 200 bytes start after control */
+		assertEquals(START_TIME + 1.5, c[3].getTransferDoneTime(), 0.0001);
+		assertEquals(size[3], c[3].getRemainingByteCount());
+
+		clock.advance(0.75);
+		assertEquals(size[3] - 100, c[3].getRemainingByteCount(), 1);
+		clock.advance(0.5);
+		assertTrue(c[3].isMessageTransferred());
+	}
+
 	public void testFinalizeTransfer() {
 		assertFalse(c[0].isMessageTransferred());
 		c[0].finalizeTransfer(); /* this doesn't check time */
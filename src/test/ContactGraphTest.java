@@ -0,0 +1,97 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.List;
+import java.util.Random;
+
+import routing.schedule.ContactGraph;
+import routing.schedule.ScheduleDijkstra;
+import routing.schedule.ScheduleEntry;
+import routing.schedule.ScheduleOracle;
+import junit.framework.TestCase;
+
+/**
+ * Tests for the ContactGraph class
+ */
+public class ContactGraphTest extends TestCase {
+
+	public void testSimplePaths() {
+		ScheduleOracle oracle = new ScheduleOracle();
+		oracle.addEntry(10, 1, 2, 10);
+		oracle.addEntry(20, 1, 3, 10);
+		oracle.addEntry(55, 2, 10, 5);
+		oracle.addEntry(35, 3, 10, 5);
+		oracle.addEntry(40, 3, 4, 0);
+		oracle.addEntry(40, 4, 5, 0); /* continues immediately */
+
+		ContactGraph g = new ContactGraph(oracle);
+		g.sweep(1, 0);
+		assertEquals(0.0, g.getArrivalTime(1));
+		assertEquals(20.0, g.getArrivalTime(2));
+		assertEquals(40.0, g.getArrivalTime(10));
+		assertEquals(40.0, g.getArrivalTime(5));
+		assertEquals(Double.MAX_VALUE, g.getArrivalTime(7));
+
+		List<ScheduleEntry> path = g.getPath(10);
+		assertEquals(2, path.size());
+		assertEquals(3, path.get(0).getTo());
+		assertEquals(10, path.get(1).getTo());
+		assertEquals(3, g.getPath(5).size());
+		assertEquals(0, g.getPath(7).size());
+
+		g.sweep(1, 15); /* misses the first entry */
+		assertEquals(Double.MAX_VALUE, g.getArrivalTime(2));
+		assertEquals(40.0, g.getArrivalTime(10));
+	}
+
+	public void testSameAsDijkstra() {
+		final int nrofNodes = 15;
+		Random rng = new Random(5);
+		ScheduleOracle oracle = new ScheduleOracle();
+		for (int i = 0; i < 300; i++) {
+			int from = rng.nextInt(nrofNodes);
+			int to = rng.nextInt(nrofNodes);
+			if (from != to) {
+				oracle.addEntry(rng.nextInt(1000), from, to,
+						1 + rng.nextInt(50));
+			}
+		}
+
+		ContactGraph g = new ContactGraph(oracle);
+		ScheduleDijkstra d = new ScheduleDijkstra(oracle);
+		for (int from = 0; from < nrofNodes; from++) {
+			double time = rng.nextInt(500);
+			g.sweep(from, time);
+			for (int to = 0; to < nrofNodes; to++) {
+				if (to == from) {
+					continue;
+				}
+				List<ScheduleEntry> path = d.getShortestPath(from, to, time);
+				List<ScheduleEntry> gPath = g.getPath(to);
+				assertEquals(path.size() == 0, gPath.size() == 0);
+				if (path.size() == 0) {
+					assertEquals(Double.MAX_VALUE, g.getArrivalTime(to));
+					continue;
+				}
+				double arrival = path.get(path.size() - 1).getDestinationTime();
+				assertEquals(arrival, g.getArrivalTime(to));
+				assertEquals(arrival,
+						gPath.get(gPath.size() - 1).getDestinationTime());
+
+				/* the path is continuous and in time */
+				double t = time;
+				int at = from;
+				for (ScheduleEntry se : gPath) {
+					assertEquals(at, se.getFrom());
+					assertTrue(se.getTime() >= t);
+					t = se.getDestinationTime();
+					at = se.getTo();
+				}
+				assertEquals(to, at);
+			}
+		}
+	}
+}
@@ -1,6 +1,7 @@
 package test;
 
 
+import core.Connection;
 import core.Coord;
 import core.DTNHost;
 import core.MessageListener;
@@ -18,6 +19,7 @@ import routing.MessageRouter;
 import routing.PassiveRouter;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import junit.framework.TestCase;
 
@@ -67,6 +69,53 @@ public class DTNHostTest extends TestCase {
     assertFalse("Radio reported as active.", host.isRadioActive());
   }
 
+  /**
+   * Tests the connection list and the connection index by the other host.
+   */
+  @Test
+  public void testConnectionView() {
+    final TestUtils utils = new TestUtils(null, null, new TestSettings());
+    final DTNHost h0 = utils.createHost(new Coord(0, 0));
+    final DTNHost h1 = utils.createHost(new Coord(0, 0));
+    final DTNHost h2 = utils.createHost(new Coord(0, 0));
+
+    assertEquals(0, h0.getConnections().size());
+    assertNull(h0.getConnectionTo(h1));
+
+    h0.connect(h1);
+    final List<Connection> view = h0.getConnections();
+    assertEquals(1, view.size());
+    assertSame(view, h0.getConnections());
+    assertSame(view.get(0), h0.getConnectionTo(h1));
+    assertSame(view.get(0), h1.getConnectionTo(h0));
+    assertEquals(1, h0.getNrofConnectionsTo(h1));
+    assertNull(h0.getConnectionTo(h2));
+    assertEquals(0, h0.getNrofConnectionsTo(h2));
+
+    try {
+      view.clear();
+      fail("Connection list was modifiable");
+    } catch (UnsupportedOperationException e) {
+      // expected
+    }
+
+    // Old list doesn't change when the connections change
+    h0.connect(h2);
+    assertEquals(1, view.size());
+    assertEquals(2, h0.getConnections().size());
+    assertSame(h0.getConnections().get(1), h0.getConnectionTo(h2));
+
+    // Disconnect h1 by moving it out of range
+    h1.setLocation(new Coord(1000, 1000));
+    h0.update(true);
+    assertEquals(1, h0.getConnections().size());
+    assertNull(h0.getConnectionTo(h1));
+    assertEquals(0, h0.getNrofConnectionsTo(h1));
+    assertNull(h1.getConnectionTo(h0));
+    assertEquals(0, h1.getConnections().size());
+    assertSame(h0.getConnections().get(0), h0.getConnectionTo(h2));
+  }
+
   private static MovementModel makeMovementModel() {
     return new MovementModel() {
       @Override
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+import routing.util.DenseEncounterStore;
+import routing.util.EncounterStore;
+import routing.util.SparseEncounterStore;
+
+/**
+ * Tests for the EncounterStore classes
+ */
+public class EncounterStoreTest extends TestCase {
+	private static final int NROF_HOSTS = 200;
+
+	private void checkStore(EncounterStore store) {
+		assertEquals(0, store.getTotal(5));
+		assertEquals(0, store.getEncounters(5, 1));
+		assertEquals(0, store.getTopPartners(5, 3, new int[3]));
+
+		store.addEncounter(5, 1);
+		store.addEncounter(5, 7);
+		store.addEncounter(5, 7);
+		store.addEncounter(5, 3);
+		store.addEncounter(5, 3);
+		store.addEncounter(1, 5);
+
+		assertEquals(2, store.getEncounters(5, 7));
+		assertEquals(0, store.getEncounters(7, 5));
+		assertEquals(1, store.getEncounters(1, 5));
+		assertEquals(5, store.getTotal(5));
+		assertEquals(3, store.getNrofPartners(5));
+
+		int[] top = new int[3];
+		assertEquals(2, store.getTopPartners(5, 2, top));
+		assertEquals(3, top[0]); /* same count as 7 but smaller address */
+		assertEquals(7, top[1]);
+		assertEquals(3, store.getTopPartners(5, 3, top));
+		assertEquals(1, top[2]);
+		assertEquals(1, store.getTopPartners(1, 3, top));
+		assertEquals(5, top[0]);
+	}
+
+	private void checkAgainstMatrix(EncounterStore store) {
+		int[][] ref = new int[NROF_HOSTS][NROF_HOSTS];
+		Random rng = new Random(1);
+
+		for (int i = 0; i < 20000; i++) {
+			int host = rng.nextInt(NROF_HOSTS);
+			int partner = rng.nextInt(NROF_HOSTS / 4) * 4 + host % 4;
+			store.addEncounter(host, partner);
+			ref[host][partner]++;
+		}
+
+		int[] top = new int[3];
+		for (int h = 0; h < NROF_HOSTS; h++) {
+			int total = 0;
+			int nrofPartners = 0;
+			for (int p = 0; p < NROF_HOSTS; p++) {
+				assertEquals(ref[h][p], store.getEncounters(h, p));
+				total += ref[h][p];
+				nrofPartners += ref[h][p] > 0 ? 1 : 0;
+			}
+			assertEquals(total, store.getTotal(h));
+			assertEquals(nrofPartners, store.getNrofPartners(h));
+
+			int n = store.getTopPartners(h, top.length, top);
+			assertEquals(Math.min(top.length, nrofPartners), n);
+			for (int i = 0; i < n; i++) {
+				/* no other partner is before the i:th top partner */
+				for (int p = 0; p < NROF_HOSTS; p++) {
+					boolean before = ref[h][p] > ref[h][top[i]] ||
+						(ref[h][p] == ref[h][top[i]] && p < top[i]);
+					boolean listed = false;
+					for (int j = 0; j < i; j++) {
+						listed |= top[j] == p;
+					}
+					assertTrue(!before || listed);
+				}
+			}
+		}
+	}
+
+	public void testSparse() {
+		checkStore(new SparseEncounterStore());
+		checkAgainstMatrix(new SparseEncounterStore());
+	}
+
+	public void testDense() {
+		checkStore(new DenseEncounterStore());
+		checkAgainstMatrix(new DenseEncounterStore());
+	}
+}
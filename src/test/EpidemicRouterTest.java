@@ -4,6 +4,7 @@
  */
 package test;
 
+import routing.ActiveRouter;
 import routing.EpidemicRouter;
 import routing.MessageRouter;
 import core.DTNHost;
@@ -195,6 +196,30 @@ public class EpidemicRouterTest extends AbstractRouterTest {
 
 	}
 
+	/**
+	 * Tests that deleted messages are not offered as deliverable messages
+	 */
+	public void testDeletedDeliverableMessage() {
+		Message m1 = new Message(h1,h2, msgId1, 1);
+		h1.createNewMessage(m1);
+		Message m2 = new Message(h1,h2, msgId2, 1);
+		h1.createNewMessage(m2);
+		Message m3 = new Message(h1,h3, msgId3, 1);
+		h1.createNewMessage(m3);
+		checkCreates(3);
+
+		h1.deleteMessage(msgId1, true);
+		assertTrue(mc.next());
+		assertEquals(mc.TYPE_DELETE, mc.getLastType());
+
+		h1.connect(h2);
+		updateAllNodes();
+		assertTrue(mc.next());
+		assertEquals(mc.TYPE_START, mc.getLastType());
+		assertEquals(h2, mc.getLastTo());
+		assertEquals(msgId2, mc.getLastMsg().getId());
+	}
+
 	/**
 	 * Tests aborting transfer when connections is disconnected during the
 	 * transfer
@@ -598,6 +623,37 @@ public class EpidemicRouterTest extends AbstractRouterTest {
 		return msgIds;
 	}
 
+	public void testNeedsUpdate() {
+		MessageRouter r1 = h1.getRouter();
+		clock.setTime(1);
+		/* no messages or connections */
+		assertFalse(r1.needsUpdate());
+
+		h1.createNewMessage(new Message(h1, h3, msgId1, 1));
+		assertFalse(r1.needsUpdate());
+
+		/* a transfer can be started */
+		h1.connect(h2);
+		assertTrue(r1.needsUpdate());
+		h1.update(true);
+		assertTrue(mc.next()); // create
+		assertTrue(mc.next());
+		assertEquals(mc.TYPE_START, mc.getLastType());
+
+		/* the transfer needs to be finalized */
+		disconnect(h2);
+		assertTrue(r1.needsUpdate());
+		h1.update(true);
+		assertFalse(r1.needsUpdate());
+		assertFalse(h2.getRouter().needsUpdate());
+
+		/* TTL check wakes up the router */
+		clock.advance(ActiveRouter.TTL_CHECK_INTERVAL);
+		assertTrue(r1.needsUpdate());
+		h1.update(true);
+		assertFalse(r1.needsUpdate());
+	}
+
 	public void testFifoSendingQ() throws Exception {
 		ts.putSetting(MessageRouter.SEND_QUEUE_MODE_S,
 				""+MessageRouter.Q_MODE_FIFO);
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import util.IntHashMap;
+
+/**
+ * Tests for the IntHashMap class
+ */
+public class IntHashMapTest extends TestCase {
+
+	public void testPutGetRemove() {
+		IntHashMap<String> map = new IntHashMap<String>();
+		assertTrue(map.isEmpty());
+		assertNull(map.put(1, "a"));
+		assertNull(map.put(-5, "b"));
+		assertEquals("a", map.put(1, "c"));
+		assertEquals(2, map.size());
+		assertEquals("c", map.get(1));
+		assertEquals("b", map.get(-5));
+		assertNull(map.get(2));
+		assertTrue(map.containsKey(-5));
+
+		assertEquals("b", map.remove(-5));
+		assertNull(map.remove(-5));
+		assertFalse(map.containsKey(-5));
+		assertEquals(1, map.size());
+		assertEquals("c", map.values().iterator().next());
+
+		map.clear();
+		assertTrue(map.isEmpty());
+		assertNull(map.get(1));
+	}
+
+	public void testPositionOf() {
+		IntHashMap<Integer> map = new IntHashMap<Integer>();
+		for (int i = 0; i < 100; i += 3) {
+			map.put(i, i);
+		}
+		map.remove(9);
+		assertEquals(-1, map.positionOf(9));
+		assertEquals(-1, map.positionOf(1));
+
+		/* positions follow the order of the values */
+		int prev = -1;
+		for (Integer value : map.values()) {
+			int pos = map.positionOf(value);
+			assertTrue(pos > prev);
+			prev = pos;
+		}
+	}
+
+	public void testMoveCount() {
+		IntHashMap<Integer> map = new IntHashMap<Integer>();
+		Random rng = new Random(1);
+		int[] positions = new int[500];
+		Arrays.fill(positions, -1);
+		int moves = map.getMoveCount();
+
+		for (int i = 0; i < 5000; i++) {
+			int key = rng.nextInt(500);
+			if (rng.nextInt(3) == 0) {
+				map.remove(key);
+			} else {
+				map.put(key, i);
+			}
+
+			/* the positions change only when the count changes */
+			boolean same = true;
+			for (int k = 0; k < positions.length; k++) {
+				int pos = map.positionOf(k);
+				if (pos != -1 && positions[k] != -1 && pos != positions[k]) {
+					same = false;
+				}
+				positions[k] = pos;
+			}
+			assertTrue(same || map.getMoveCount() != moves);
+			moves = map.getMoveCount();
+		}
+	}
+
+	public void testAgainstHashMap() {
+		IntHashMap<Integer> map = new IntHashMap<Integer>();
+		HashMap<Integer, Integer> ref = new HashMap<Integer, Integer>();
+		Random rng = new Random(1);
+
+		for (int i = 0; i < 20000; i++) {
+			int key = rng.nextInt(500);
+			if (rng.nextInt(3) == 0) {
+				assertEquals(ref.remove(key), map.remove(key));
+			} else {
+				assertEquals(ref.put(key, i), map.put(key, i));
+			}
+			assertEquals(ref.size(), map.size());
+		}
+
+		for (int key = 0; key < 500; key++) {
+			assertEquals(ref.get(key), map.get(key));
+		}
+		assertEquals(new HashSet<Integer>(ref.values()),
+				new HashSet<Integer>(map.values()));
+		assertEquals(ref.size(), map.values().size());
+	}
+}
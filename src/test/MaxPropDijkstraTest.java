@@ -9,6 +9,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 
 import junit.framework.TestCase;
@@ -154,4 +155,44 @@ public class MaxPropDijkstraTest extends TestCase {
 
 	}
 
+	/**
+	 * Tests that the cached costs are updated correctly when meeting
+	 * probabilities change and sets are replaced
+	 */
+	public void testCachedCostsFollowChanges() {
+		final int nrofNodes = 30;
+		Random rng = new Random(7);
+		Map<Integer, MeetingProbabilitySet> probs =
+			new HashMap<Integer, MeetingProbabilitySet>();
+		MaxPropDijkstra cached = new MaxPropDijkstra(probs);
+		MaxPropDijkstra fresh = new MaxPropDijkstra(probs);
+		Set<Integer> all = new HashSet<Integer>();
+		for (int i=0; i<nrofNodes; i++) {
+			all.add(i);
+		}
+
+		for (int round=0; round<300; round++) {
+			int node = rng.nextInt(nrofNodes);
+			MeetingProbabilitySet mps = probs.get(node);
+			if (mps == null || rng.nextInt(4) == 0) {
+				/* replace the set with a copy (as routers do) */
+				mps = (mps == null ? new MeetingProbabilitySet(
+						MeetingProbabilitySet.INFINITE_SET_SIZE, 1.0) :
+							mps.replicate());
+				probs.put(node, mps);
+			}
+			mps.updateMeetingProbFor(rng.nextInt(nrofNodes));
+			cached.probsChanged(node);
+
+			for (int from=0; from<3; from++) {
+				Map<Integer, Double> costs = fresh.getCosts(from, all);
+				for (int to=0; to<nrofNodes; to++) {
+					Double cost = costs.get(to);
+					assertEquals("Cost " + from + "->" + to + " at round " +
+							round, (cost == null ? Double.MAX_VALUE : cost),
+							cached.getCost(from, to), DELTA);
+				}
+			}
+		}
+	}
 }
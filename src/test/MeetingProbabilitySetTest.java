@@ -0,0 +1,110 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import routing.maxprop.MeetingProbabilitySet;
+
+/**
+ * Tests for the MeetingProbabilitySet class
+ */
+public class MeetingProbabilitySetTest extends TestCase {
+	private static final double DELTA = 1e-12;
+
+	public void testLimitedSize() {
+		MeetingProbabilitySet mps = new MeetingProbabilitySet(3, 1.0);
+		mps.updateMeetingProbFor(5);
+		mps.updateMeetingProbFor(2);
+		assertEquals(2, mps.size());
+		assertEquals(0.5, mps.getProbFor(5));
+		assertEquals(0.5, mps.getProbFor(2));
+
+		mps.updateMeetingProbFor(7); /* 2 and 5 have 0.25, 2 is dropped */
+		assertEquals(2, mps.size());
+		assertEquals(0.0, mps.getProbFor(2));
+		assertEquals(0.25, mps.getProbFor(5));
+		assertEquals(0.5, mps.getProbFor(7));
+		assertTrue(mps.indexOf(2) < 0);
+		assertEquals(5, mps.getNode(0)); /* entries in node index order */
+		assertEquals(7, mps.getNode(1));
+		assertEquals(0.5, mps.getProb(mps.indexOf(7)));
+	}
+
+	public void testReplicasAreIndependent() {
+		MeetingProbabilitySet mps = new MeetingProbabilitySet();
+		mps.updateMeetingProbFor(1);
+		mps.updateMeetingProbFor(2);
+
+		MeetingProbabilitySet replica = mps.replicate();
+		MeetingProbabilitySet replica2 = replica.replicate();
+		mps.updateMeetingProbFor(3);
+		assertEquals(0.25, mps.getProbFor(1));
+		assertEquals(0.5, replica.getProbFor(1));
+		assertEquals(0.0, replica.getProbFor(3));
+
+		replica.updateMeetingProbFor(1);
+		assertEquals(0.75, replica.getProbFor(1));
+		assertEquals(0.5, replica2.getProbFor(1));
+		assertEquals(0.25, mps.getProbFor(1));
+		assertEquals(2, replica2.size());
+	}
+
+	public void testAgainstMap() {
+		Random rng = new Random(3);
+		for (int maxSize : new int[] {5, 20,
+				MeetingProbabilitySet.INFINITE_SET_SIZE}) {
+			double alpha = 0.5;
+			MeetingProbabilitySet mps = new MeetingProbabilitySet(maxSize,
+					alpha);
+			Map<Integer, Double> ref = new HashMap<Integer, Double>();
+
+			for (int round = 0; round < 2000; round++) {
+				int node = rng.nextInt(30);
+				mps.updateMeetingProbFor(node);
+				updateRef(ref, node, alpha, maxSize);
+				if (rng.nextInt(10) == 0) {
+					mps = mps.replicate();
+				}
+
+				assertEquals(ref.size(), mps.size());
+				for (int i = 0; i < 30; i++) {
+					double expected = ref.containsKey(i) ? ref.get(i) : 0;
+					assertEquals("P for " + i + " at round " + round,
+							expected, mps.getProbFor(i), DELTA);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Updates the reference probabilities like the set should
+	 */
+	private void updateRef(Map<Integer, Double> ref, int node, double alpha,
+			int maxSize) {
+		if (ref.isEmpty()) {
+			ref.put(node, 1.0);
+			return;
+		}
+		Double old = ref.get(node);
+		ref.put(node, (old == null ? 0 : old) + alpha);
+
+		Integer smallest = null;
+		for (Map.Entry<Integer, Double> e : ref.entrySet()) {
+			e.setValue(e.getValue() / (1 + alpha));
+			if (smallest == null || e.getValue() < ref.get(smallest) ||
+					(e.getValue().equals(ref.get(smallest)) &&
+							e.getKey() < smallest)) {
+				smallest = e.getKey();
+			}
+		}
+		if (ref.size() >= maxSize) {
+			ref.remove(smallest);
+		}
+	}
+}
@@ -12,6 +12,7 @@ import org.junit.Test;
 import core.DTNHost;
 import core.Message;
 import core.SimClock;
+import core.SimError;
 
 public class MessageTest extends TestCase {
 
@@ -60,5 +61,87 @@ public class MessageTest extends TestCase {
 		assertEquals(value2, msg.getProperty("bar"));
 	}
 
+	@Test
+	public void testSlotProperties() {
+		int count = Message.registerIntProperty("MessageTest.count");
+		int weight = Message.registerDoubleProperty("MessageTest.weight");
+		int type = Message.registerObjectProperty("MessageTest.type");
+		assertEquals(count, Message.registerIntProperty("MessageTest.count"));
+
+		assertFalse(msg.hasProperty(count));
+		assertEquals(0, msg.getIntProperty(count));
+		assertNull(msg.getProperty("MessageTest.count"));
+
+		msg.setIntProperty(count, 5);
+		msg.setDoubleProperty(weight, 0.25);
+		msg.addProperty("MessageTest.type", "ping");
+		assertTrue(msg.hasProperty(count));
+		assertEquals(5, msg.getProperty("MessageTest.count"));
+		assertEquals(0.25, msg.getDoubleProperty(weight));
+		assertEquals("ping", msg.getObjectProperty(type));
+
+		/* string keyed updates go to the slots */
+		msg.updateProperty("MessageTest.count", 3);
+		assertEquals(3, msg.getIntProperty(count));
+		try {
+			msg.addProperty("MessageTest.count", 1);
+			fail("Adding an existing property should fail");
+		} catch (SimError e) {
+			// expected
+		}
+
+		/* replicates share the values until either one changes them */
+		Message rep = msg.replicate();
+		rep.setIntProperty(count, 7);
+		rep.clearProperty(type);
+		assertEquals(3, msg.getIntProperty(count));
+		assertEquals("ping", msg.getObjectProperty(type));
+		assertEquals(7, rep.getIntProperty(count));
+		assertEquals(0.25, rep.getDoubleProperty(weight));
+		assertFalse(rep.hasProperty(type));
+
+		try {
+			Message.registerDoubleProperty("MessageTest.count");
+			fail("Registering a property with another type should fail");
+		} catch (SimError e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testReplicate() {
+		TestUtils utils = new TestUtils(null, null, new TestSettings());
+		DTNHost h1 = utils.createHost();
+		DTNHost h2 = utils.createHost();
+		DTNHost h3 = utils.createHost();
+		msg.addProperty("foo", "value1");
+		msg.addNodeOnPath(h1);
+
+		Message rep = msg.replicate();
+		assertEquals(msg.getId(), rep.getId());
+		assertEquals(msg.getHandle(), rep.getHandle());
+		assertTrue(msg.getUniqueId() != rep.getUniqueId());
+		assertEquals(10, rep.getTtl());
+
+		/* changes to the replicate don't affect the original */
+		rep.addNodeOnPath(h2);
+		rep.updateProperty("foo", "value2");
+		rep.setTtl(20);
+		msg.addNodeOnPath(h3);
+
+		assertEquals(3, rep.getHops().size());
+		assertEquals(h2, rep.getHops().get(2));
+		assertTrue(rep.isOnPath(h1));
+		assertFalse(rep.isOnPath(h3));
+		assertEquals(2, msg.getHopCount());
+		assertEquals(h3, msg.getHops().get(2));
+		assertFalse(msg.isOnPath(h2));
+
+		assertEquals("value1", msg.getProperty("foo"));
+		assertEquals("value2", rep.getProperty("foo"));
+		assertEquals(10, msg.getTtl());
+		assertEquals(20, rep.getTtl());
+	}
+
 
 }
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import interfaces.SharedBandwidthInterface;
+import routing.ActiveRouter;
+import routing.EpidemicRouter;
+import routing.MessageRouter;
+import core.Connection;
+import core.DTNHost;
+import core.Message;
+import core.ModuleCommunicationBus;
+import core.NetworkInterface;
+import core.SimClock;
+
+/**
+ * Tests for the parallel transfers of {@link ActiveRouter} and the
+ * bandwidth sharing of {@link core.SharedBandwidthConnection}
+ */
+public class ParallelTransfersTest extends AbstractRouterTest {
+
+	@Override
+	public void setUp() throws Exception {
+		ts.setNameSpace(null);
+		ts.putSetting(MessageRouter.MSG_TTL_S, "300");
+		ts.putSetting(MessageRouter.B_SIZE_S, ""+BUFFER_SIZE);
+		ts.putSetting(ActiveRouter.MAX_PARALLEL_SENDS_S, "2");
+		ts.putSetting(ActiveRouter.MAX_PARALLEL_RECEIVES_S, "2");
+		setRouterProto(new EpidemicRouter(ts));
+		super.setUp();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		ts.setNameSpace(null);
+		ts.putSetting(ActiveRouter.MAX_PARALLEL_SENDS_S, "1");
+		ts.putSetting(ActiveRouter.MAX_PARALLEL_RECEIVES_S, "1");
+		super.tearDown();
+	}
+
+	public void testParallelSends() {
+		h1.createNewMessage(new Message(h1, h4, msgId1, 10));
+		h1.createNewMessage(new Message(h1, h5, msgId2, 10));
+		checkCreates(2);
+		h1.connect(h2);
+		h1.connect(h3);
+
+		h1.update(true);
+		assertTrue(mc.next());
+		assertEquals(mc.TYPE_START, mc.getLastType());
+		DTNHost first = mc.getLastTo();
+		assertFalse(mc.next());
+
+		/* one transfer doesn't block the other connection */
+		assertFalse(((ActiveRouter)h1.getRouter()).isTransferring());
+		h1.update(true);
+		assertTrue(mc.next());
+		assertEquals(mc.TYPE_START, mc.getLastType());
+		assertNotSame(first, mc.getLastTo());
+
+		/* the sends are at the maximum */
+		h1.connect(h6);
+		h1.update(true);
+		assertFalse(mc.next());
+	}
+
+	public void testParallelReceives() {
+		h2.createNewMessage(new Message(h2, h5, msgId1, 10));
+		h3.createNewMessage(new Message(h3, h5, msgId2, 10));
+		h4.createNewMessage(new Message(h4, h5, msgId3, 10));
+		checkCreates(3);
+		h1.connect(h2);
+		h1.connect(h3);
+		h1.connect(h4);
+
+		h2.update(true);
+		checkTransferStart(h2, h1, msgId1);
+		h3.update(true);
+		checkTransferStart(h3, h1, msgId2);
+
+		/* the receives are at the maximum */
+		h4.update(true);
+		assertFalse(mc.next());
+
+		clock.advance(1);
+		h2.update(true);
+		assertTrue(mc.next());
+		assertEquals(mc.TYPE_RELAY, mc.getLastType());
+		h4.update(true);
+		checkTransferStart(h4, h1, msgId3);
+	}
+
+	public void testSharedBandwidth() {
+		TestDTNHost[] hosts = createSharedBandwidthHosts();
+		NetworkInterface ni = hosts[0].getInterfaces().get(0);
+		Connection c1 = ni.getConnections().get(0);
+		Connection c2 = ni.getConnections().get(1);
+		assertEquals(0.0, SimClock.getTime());
+
+		c1.startTransfer(hosts[0], new Message(hosts[0], hosts[1], "M1", 100));
+		assertEquals(100.0, c1.getSpeed());
+		c2.startTransfer(hosts[0], new Message(hosts[0], hosts[2], "M2", 200));
+		assertEquals(50.0, c2.getSpeed());
+		assertEquals(50.0, c1.getSpeed());
+
+		clock.setTime(1);
+		c1.update();
+		c2.update();
+		assertEquals(50, c1.getRemainingByteCount());
+		assertEquals(150, c2.getRemainingByteCount());
+
+		clock.setTime(2);
+		c1.update();
+		c2.update();
+		assertTrue(c1.isMessageTransferred());
+		c1.finalizeTransfer();
+		assertEquals(100, c2.getRemainingByteCount());
+
+		/* the other transfer gets all the bandwidth */
+		c2.update();
+		assertEquals(100.0, c2.getSpeed());
+		clock.setTime(3);
+		c2.update();
+		assertTrue(c2.isMessageTransferred());
+	}
+
+	public void testSharedBandwidthChanges() {
+		TestDTNHost[] hosts = createSharedBandwidthHosts();
+		NetworkInterface ni = hosts[0].getInterfaces().get(0);
+		Connection c1 = ni.getConnections().get(0);
+		Connection c2 = ni.getConnections().get(1);
+
+		c1.startTransfer(hosts[0], new Message(hosts[0], hosts[1], "M1", 150));
+
+		/* c1 sent the first second alone */
+		clock.setTime(1);
+		c2.startTransfer(hosts[0], new Message(hosts[0], hosts[2], "M2", 200));
+		clock.setTime(2);
+		c1.update();
+		c2.update();
+		assertEquals(0, c1.getRemainingByteCount());
+		assertEquals(150, c2.getRemainingByteCount());
+
+		/* c2 sends the third second alone */
+		c1.finalizeTransfer();
+		clock.setTime(3);
+		c2.update();
+		assertEquals(50, c2.getRemainingByteCount());
+
+		/* aborted transfer gives back its share */
+		c1.startTransfer(hosts[0], new Message(hosts[0], hosts[1], "M3", 100));
+		clock.setTime(3.25);
+		c1.abortTransfer();
+		clock.setTime(3.5);
+		c2.update();
+		assertEquals(12, c2.getRemainingByteCount());
+	}
+
+	/**
+	 * Creates three hosts with shared bandwidth interfaces and connects the
+	 * first host to the two others
+	 * @return The hosts
+	 */
+	private TestDTNHost[] createSharedBandwidthHosts() {
+		TestSettings testSettings = new TestSettings();
+		testSettings.setNameSpace(TestUtils.IFACE_NS);
+		testSettings.putSetting(NetworkInterface.TRANSMIT_RANGE_S, "1.0");
+		testSettings.putSetting(NetworkInterface.TRANSMIT_SPEED_S, "100");
+
+		TestDTNHost[] hosts = new TestDTNHost[3];
+		for (int i=0; i<hosts.length; i++) {
+			List<NetworkInterface> li = new ArrayList<NetworkInterface>();
+			li.add(new SharedBandwidthInterface(testSettings));
+			hosts[i] = new TestDTNHost(li, new ModuleCommunicationBus(),
+					testSettings);
+		}
+		NetworkInterface ni = hosts[0].getInterfaces().get(0);
+		ni.createConnection(hosts[1].getInterfaces().get(0));
+		ni.createConnection(hosts[2].getInterfaces().get(0));
+		return hosts;
+	}
+}
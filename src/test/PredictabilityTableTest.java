@@ -0,0 +1,79 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import junit.framework.TestCase;
+import routing.util.PredictabilityTable;
+
+/**
+ * Tests for the PredictabilityTable class
+ */
+public class PredictabilityTableTest extends TestCase {
+	private static final double GAMMA = 0.98;
+	private static final double DELTA = 1e-12;
+
+	public void testSetAndAge() {
+		PredictabilityTable t = new PredictabilityTable();
+		assertEquals(0.0, t.get(3));
+		assertFalse(t.contains(3));
+
+		t.set(3, 0.75);
+		t.set(1, 0.5);
+		assertEquals(0.75, t.get(3));
+		assertEquals(2, t.size());
+		assertTrue(t.contains(1));
+		assertFalse(t.contains(2));
+
+		t.age(60, GAMMA, 30);
+		assertEquals(0.75 * Math.pow(GAMMA, 2), t.get(3), DELTA);
+		t.age(60, GAMMA, 30); /* no time has passed */
+		t.age(63, GAMMA, 30);
+		assertEquals(0.5 * Math.pow(GAMMA, 2.1), t.get(1), DELTA);
+
+		/* values set after ageing are not aged again */
+		t.set(1, 0.4);
+		assertEquals(0.4, t.get(1), DELTA);
+		assertEquals(0.0, t.get(2));
+	}
+
+	public void testLongAgeing() {
+		PredictabilityTable t = new PredictabilityTable();
+		t.set(0, 1.0);
+		t.set(1, 0.5);
+		for (int i = 1; i <= 100; i++) {
+			t.age(i * 1000.0, 0.5, 1);
+		}
+		/* the values have underflowed to zero but the table still works */
+		assertEquals(0.0, t.get(0));
+		t.set(0, 0.25);
+		assertEquals(0.25, t.get(0), DELTA);
+		t.age(100001, 0.5, 1);
+		assertEquals(0.125, t.get(0), DELTA);
+	}
+
+	public void testTransitive() {
+		PredictabilityTable a = new PredictabilityTable();
+		PredictabilityTable b = new PredictabilityTable();
+		double beta = 0.25;
+		a.set(1, 0.75); /* a met b (address 1) */
+		a.set(2, 0.5);
+		b.set(0, 0.75); /* b met a (address 0) */
+		b.set(2, 0.2);
+		b.set(5, 0.8);
+
+		a.updateTransitive(b, 0, 0.75, beta);
+		assertFalse(a.contains(0)); /* a's own entry is skipped */
+		assertEquals(0.5 + 0.5 * 0.75 * 0.2 * beta, a.get(2), DELTA);
+		assertEquals(0.75 * 0.8 * beta, a.get(5), DELTA);
+		assertEquals(3, a.size());
+
+		PredictabilityTable c = new PredictabilityTable();
+		c.set(2, 0.5);
+		c.updateTransitiveMax(b, 0, 0.75, beta);
+		assertEquals(0.5, c.get(2), DELTA); /* old value was larger */
+		assertEquals(0.75 * 0.8 * beta, c.get(5), DELTA);
+		assertFalse(c.contains(0));
+	}
+}
@@ -38,6 +38,11 @@ public class StationaryMovement extends MovementModel {
 		return true;
 	}
 
+	@Override
+	public boolean isPredictable() {
+		return true;
+	}
+
 	/**
 	 * Returns a single coordinate path (using the only possible coordinate)
 	 * @return a single coordinate path
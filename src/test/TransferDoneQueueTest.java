@@ -0,0 +1,101 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.TransferDoneQueue;
+import routing.EpidemicRouter;
+import routing.MessageRouter;
+import core.DTNHost;
+import core.Message;
+
+/**
+ * Tests for the scheduled transfer completions of {@link TransferDoneQueue}
+ */
+public class TransferDoneQueueTest extends AbstractRouterTest {
+	private TransferDoneQueue queue;
+
+	@Override
+	public void setUp() throws Exception {
+		ts.setNameSpace(null);
+		ts.putSetting(MessageRouter.MSG_TTL_S, "300");
+		ts.putSetting(MessageRouter.B_SIZE_S, ""+BUFFER_SIZE);
+		setRouterProto(new EpidemicRouter(ts));
+		super.setUp();
+		this.queue = new TransferDoneQueue();
+		for (DTNHost host : utils.getAllHosts()) {
+			host.setTransferDoneQueue(this.queue);
+		}
+	}
+
+	public void testExactCompletion() {
+		h1.createNewMessage(new Message(h1, h3, msgId1, 15));
+		checkCreates(1);
+		h1.connect(h2);
+
+		clock.setTime(0.05);
+		h1.update(true);
+		checkTransferStart(h1, h2, msgId1);
+		/* 15 bytes at 10 Bps */
+		assertEquals(1.55, queue.nextEventsTime(), 0.00001);
+
+		/* less than a byte left: only the event finalizes the transfer */
+		clock.setTime(1.5);
+		h1.update(true);
+		h2.update(true);
+		assertFalse(mc.next());
+
+		clock.setTime(queue.nextEventsTime());
+		queue.nextEvent().processEvent(null);
+		assertTrue(mc.next());
+		assertEquals(mc.TYPE_RELAY, mc.getLastType());
+		assertEquals(h1, mc.getLastFrom());
+		assertEquals(h2, mc.getLastTo());
+		assertTrue(h2.getRouter().hasMessage(msgId1));
+		assertEquals(Double.MAX_VALUE, queue.nextEventsTime());
+	}
+
+	public void testAbortedTransfer() {
+		h1.createNewMessage(new Message(h1, h3, msgId1, 15));
+		checkCreates(1);
+		h1.connect(h2);
+		h1.update(true);
+		checkTransferStart(h1, h2, msgId1);
+
+		clock.advance(1);
+		disconnect(h2);
+		h1.update(true);
+		assertTrue(mc.next());
+		assertEquals(mc.TYPE_ABORT, mc.getLastType());
+
+		/* completion of the aborted transfer does nothing */
+		clock.setTime(queue.nextEventsTime());
+		queue.nextEvent().processEvent(null);
+		assertFalse(mc.next());
+		assertFalse(h2.getRouter().hasMessage(msgId1));
+	}
+
+	public void testSimultaneousCompletions() {
+		h1.createNewMessage(new Message(h1, h3, msgId1, 10));
+		h2.createNewMessage(new Message(h2, h3, msgId2, 10));
+		checkCreates(2);
+		h1.connect(h4);
+		h2.connect(h5);
+		h1.update(true);
+		h2.update(true);
+		checkTransferStart(h1, h4, msgId1);
+		checkTransferStart(h2, h5, msgId2);
+
+		/* completions of the same time in the order they were scheduled */
+		double time = queue.nextEventsTime();
+		clock.setTime(time);
+		queue.nextEvent().processEvent(null);
+		assertTrue(mc.next());
+		assertEquals(msgId1, mc.getLastMsg().getId());
+		assertEquals(time, queue.nextEventsTime());
+		queue.nextEvent().processEvent(null);
+		assertTrue(mc.next());
+		assertEquals(msgId2, mc.getLastMsg().getId());
+	}
+}
@@ -101,6 +101,15 @@ public class ActivenessHandler {
 		return timesList;
 	}
 
+	/**
+	 * Returns true if neither active times nor active periods are defined,
+	 * i.e., the node is always active
+	 * @return true if the node is always active
+	 */
+	public boolean isAlwaysActive() {
+		return this.activeTimes == null && this.activePeriods == null;
+	}
+
 	/**
 	 * Returns true if node should be active at the moment
 	 * @return true if node should be active at the moment
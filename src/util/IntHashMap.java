@@ -0,0 +1,284 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package util;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Hash map with primitive int keys (e.g. message handles). Uses open
+ * addressing with linear probing so that lookups don't create key objects.
+ * Null values are not allowed.
+ * @param <V> Type of the values
+ */
+public class IntHashMap<V> {
+	/** initial capacity of the table (must be a power of two) */
+	private static final int INITIAL_CAPACITY = 16;
+
+	private int[] keys;
+	private Object[] values;
+	private int size;
+	/** number of modifications (for detecting concurrent modification) */
+	private int modCount;
+	/** number of times some keys have moved to other positions */
+	private int moveCount;
+
+	/**
+	 * Creates an empty map
+	 */
+	public IntHashMap() {
+		this.keys = new int[INITIAL_CAPACITY];
+		this.values = new Object[INITIAL_CAPACITY];
+		this.size = 0;
+	}
+
+	/**
+	 * Returns the value of a key
+	 * @param key The key
+	 * @return The value or null if the map doesn't contain the key
+	 */
+	@SuppressWarnings(value = "unchecked")
+	public V get(int key) {
+		int mask = keys.length - 1;
+		for (int i = hash(key) & mask; values[i] != null; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				return (V)values[i];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the position of a key in the map. The values are iterated in
+	 * the order of their positions. The positions may change when the map
+	 * is modified (see {@link #getMoveCount()}).
+	 * @param key The key
+	 * @return The position or -1 if the map doesn't contain the key
+	 */
+	public int positionOf(int key) {
+		int mask = keys.length - 1;
+		for (int i = hash(key) & mask; values[i] != null; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns a count that grows every time some keys of the map move to
+	 * other positions, i.e., when the map is resized or when removing a key
+	 * moves the keys after it. Adding or replacing a key doesn't move the
+	 * other keys. If the count hasn't changed, the positions of the keys
+	 * that are still in the map are the same as before.
+	 * @return The count of moves
+	 */
+	public int getMoveCount() {
+		return moveCount;
+	}
+
+	/**
+	 * Returns true if the map contains the key
+	 * @param key The key
+	 * @return true if the map contains the key
+	 */
+	public boolean containsKey(int key) {
+		return get(key) != null;
+	}
+
+	/**
+	 * Puts a value to the map
+	 * @param key The key
+	 * @param value The value (not null)
+	 * @return The previous value of the key or null if there was none
+	 */
+	@SuppressWarnings(value = "unchecked")
+	public V put(int key, V value) {
+		if (value == null) {
+			throw new NullPointerException("Null values are not allowed");
+		}
+		int mask = keys.length - 1;
+		int i = hash(key) & mask;
+		for (; values[i] != null; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				V old = (V)values[i];
+				values[i] = value;
+				return old;
+			}
+		}
+
+		keys[i] = key;
+		values[i] = value;
+		size++;
+		modCount++;
+		if (size * 4 > keys.length * 3) {
+			resize(keys.length * 2);
+		}
+		return null;
+	}
+
+	/**
+	 * Removes a key from the map
+	 * @param key The key
+	 * @return The value of the removed key or null if there was none
+	 */
+	@SuppressWarnings(value = "unchecked")
+	public V remove(int key) {
+		int mask = keys.length - 1;
+		int i = hash(key) & mask;
+		for (; values[i] != null; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				break;
+			}
+		}
+		if (values[i] == null) {
+			return null;
+		}
+
+		V old = (V)values[i];
+		size--;
+		modCount++;
+
+		/* shift the following entries of the probe sequence backwards so
+		 * that no "deleted" markers are needed */
+		int gap = i;
+		for (int j = (i + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+			int home = hash(keys[j]) & mask;
+			/* can the entry at j be moved to the gap? (is its home
+			 * cyclically outside of (gap, j]) */
+			if ((j > gap && (home <= gap || home > j)) ||
+					(j < gap && home <= gap && home > j)) {
+				keys[gap] = keys[j];
+				values[gap] = values[j];
+				gap = j;
+			}
+		}
+		if (gap != i) {
+			moveCount++;
+		}
+		values[gap] = null;
+		return old;
+	}
+
+	/**
+	 * Returns the number of keys in the map
+	 * @return The number of keys
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns true if the map is empty
+	 * @return true if the map is empty
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Removes all the keys from the map
+	 */
+	public void clear() {
+		Arrays.fill(values, null);
+		size = 0;
+		modCount++;
+	}
+
+	/**
+	 * Returns a (read-only) collection view of the values of the map
+	 * @return The values
+	 */
+	public Collection<V> values() {
+		return new AbstractCollection<V>() {
+			public Iterator<V> iterator() {
+				return new ValueIterator();
+			}
+
+			public int size() {
+				return size;
+			}
+		};
+	}
+
+	/**
+	 * Spreads the bits of a key
+	 * @param key The key
+	 * @return The hash of the key
+	 */
+	private static int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Rehashes the keys to a table of the new size
+	 * @param capacity The new size (a power of two)
+	 */
+	private void resize(int capacity) {
+		int[] oldKeys = keys;
+		Object[] oldValues = values;
+		keys = new int[capacity];
+		values = new Object[capacity];
+		moveCount++;
+		int mask = capacity - 1;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldValues[i] == null) {
+				continue;
+			}
+			int j = hash(oldKeys[i]) & mask;
+			while (values[j] != null) {
+				j = (j + 1) & mask;
+			}
+			keys[j] = oldKeys[i];
+			values[j] = oldValues[i];
+		}
+	}
+
+	/**
+	 * Iterator over the values of the map
+	 */
+	private class ValueIterator implements Iterator<V> {
+		private int next;
+		private final int expectedModCount;
+
+		public ValueIterator() {
+			this.expectedModCount = modCount;
+			this.next = findNext(0);
+		}
+
+		private int findNext(int i) {
+			while (i < values.length && values[i] == null) {
+				i++;
+			}
+			return i;
+		}
+
+		public boolean hasNext() {
+			return next < values.length;
+		}
+
+		@SuppressWarnings(value = "unchecked")
+		public V next() {
+			if (modCount != expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+			if (next >= values.length) {
+				throw new NoSuchElementException();
+			}
+			V v = (V)values[next];
+			next = findNext(next + 1);
+			return v;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+}